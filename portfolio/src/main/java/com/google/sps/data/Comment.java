@@ -14,4 +14,12 @@ public final class Comment {
     this.body = body;
     this.timestamp = timestamp;
   }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
 }
\ No newline at end of file
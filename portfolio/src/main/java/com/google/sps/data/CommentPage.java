@@ -0,0 +1,15 @@
+package com.google.sps.data;
+
+import java.util.List;
+
+/** One page of comments, and the cursor to fetch the page after it. */
+public final class CommentPage {
+
+  private final List<Comment> comments;
+  private final String nextCursor;
+
+  public CommentPage(List<Comment> comments, String nextCursor) {
+    this.comments = comments;
+    this.nextCursor = nextCursor;
+  }
+}
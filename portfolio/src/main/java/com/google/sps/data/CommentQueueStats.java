@@ -0,0 +1,34 @@
+package com.google.sps.data;
+
+/** The depth of the comment write queue, and how its flushes have gone. */
+public final class CommentQueueStats {
+
+  private final int depth;
+  private final int capacity;
+  private final long flushes;
+  private final long flushedComments;
+  private final long failedFlushes;
+  private final long rejectedComments;
+  private final int deadLetters;
+  private final long lostComments;
+  private final double lastFlushMillis;
+  private final double maxFlushMillis;
+  private final double meanFlushMillis;
+
+  public CommentQueueStats(int depth, int capacity, long flushes, long flushedComments,
+                           long failedFlushes, long rejectedComments, int deadLetters,
+                           long lostComments, double lastFlushMillis, double maxFlushMillis,
+                           double meanFlushMillis) {
+    this.depth = depth;
+    this.capacity = capacity;
+    this.flushes = flushes;
+    this.flushedComments = flushedComments;
+    this.failedFlushes = failedFlushes;
+    this.rejectedComments = rejectedComments;
+    this.deadLetters = deadLetters;
+    this.lostComments = lostComments;
+    this.lastFlushMillis = lastFlushMillis;
+    this.maxFlushMillis = maxFlushMillis;
+    this.meanFlushMillis = meanFlushMillis;
+  }
+}
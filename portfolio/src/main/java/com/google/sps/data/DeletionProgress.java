@@ -0,0 +1,21 @@
+package com.google.sps.data;
+
+/** How far a bulk deletion of comments has got. */
+public final class DeletionProgress {
+
+  private final long deleted;
+  private final boolean done;
+
+  public DeletionProgress(long deleted, boolean done) {
+    this.deleted = deleted;
+    this.done = done;
+  }
+
+  public long getDeleted() {
+    return deleted;
+  }
+
+  public boolean isDone() {
+    return done;
+  }
+}
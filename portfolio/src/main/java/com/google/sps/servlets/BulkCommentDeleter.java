@@ -0,0 +1,302 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.sps.data.DeletionProgress;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Deletes every comment by key, in batches that are sent concurrently. Whatever is left when the
+ * time budget runs out is handed to a background task, which carries on from there. Progress is
+ * kept in a single datastore entity so the comments page can poll it. Each deletion has a
+ * generation number there, and only the tasks of the latest generation carry on. Comments are
+ * deleted newest first, and the comments version is only bumped after a batch that may have held
+ * comments some instance's {@link OldestComments} keep, so the instances don't fill them again
+ * for every batch.
+ *
+ * <p>If the request that starts a deletion fails, a task is queued to carry on with it. A task that
+ * fails is retried by the task queue, so a deletion is never left without anything working on it.
+ */
+final class BulkCommentDeleter {
+
+  /** The URL of the background task that resumes a deletion. */
+  static final String TASK_URL = "/tasks/delete-comments";
+
+  // The datastore deletes at most 500 keys per call.
+  private static final int BATCH_SIZE = 500;
+
+  // How many delete calls may be waiting for the datastore at once.
+  private static final int MAX_IN_FLIGHT = 4;
+
+  // A running deletion saves its progress at least this often, since requests and tasks both stop
+  // well within it. One that hasn't is assumed to have died.
+  private static final long STALE_MILLIS = 15 * 60 * 1000;
+
+  private static final Key PROGRESS_KEY = KeyFactory.createKey("CommentDeletion", "progress");
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final AsyncDatastoreService asyncDatastore =
+      DatastoreServiceFactory.getAsyncDatastoreService();
+
+  /**
+   * Starts a new deletion and deletes comments for up to {@code budgetMillis}. If a deletion is
+   * already running, returns its progress without deleting anything, so that only one chain of
+   * tasks ever works on the comments.
+   */
+  DeletionProgress start(long budgetMillis) throws IOException {
+    long generation;
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      Entity entity = getProgressEntity(transaction);
+      if (entity != null && isRunning(entity)) {
+        return toProgress(entity);
+      }
+
+      generation = entity == null ? 1 : (long) entity.getProperty("generation") + 1;
+      datastore.put(transaction, toEntity(generation, new DeletionProgress(0, false),
+                                          System.currentTimeMillis()));
+      transaction.commit();
+    } catch (ConcurrentModificationException e) {
+      // Another request started a deletion at the same moment.
+      return getProgress();
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+
+    try {
+      return run(generation, 0, budgetMillis);
+    } catch (IOException | RuntimeException e) {
+      // Nothing would carry on with the deletion, and it would block new ones until it went stale.
+      handOff(generation);
+      throw e;
+    }
+  }
+
+  /**
+   * Carries on with deletion {@code generation} for up to {@code budgetMillis}. Does nothing if
+   * that deletion is done or has been replaced by a newer one. Returns the progress so far.
+   */
+  DeletionProgress resume(long generation, long budgetMillis) throws IOException {
+    Entity entity = getProgressEntity(null);
+    if (entity == null || (boolean) entity.getProperty("done")
+        || (long) entity.getProperty("generation") != generation) {
+      return entity == null ? new DeletionProgress(0, true) : toProgress(entity);
+    }
+    return run(generation, (long) entity.getProperty("deleted"), budgetMillis);
+  }
+
+  /**
+   * Returns the progress of the latest deletion.
+   */
+  DeletionProgress getProgress() {
+    Entity entity = getProgressEntity(null);
+    return entity == null ? new DeletionProgress(0, true) : toProgress(entity);
+  }
+
+  private DeletionProgress run(long generation, long deletedBefore, long budgetMillis)
+      throws IOException {
+    long deadline = System.currentTimeMillis() + budgetMillis;
+    long deleted = deletedBefore;
+    boolean done = true;
+
+    // Only the keys and times are needed, and fetching them a batch at a time keeps memory
+    // bounded. Deleting the newest comments first leaves the oldest ones, which every instance
+    // keeps in memory, until the end, so the other instances only need to fill them again then.
+    Query query = new Query("Comment")
+        .addProjection(new PropertyProjection("timestamp", Long.class))
+        .addSort("timestamp", SortDirection.DESCENDING);
+    FetchOptions fetchOptions = FetchOptions.Builder.withChunkSize(BATCH_SIZE)
+                                                    .prefetchSize(BATCH_SIZE);
+    OldestComments.get().refresh();
+
+    Deque<Future<Void>> inFlight = new ArrayDeque<>();
+    Deque<Integer> inFlightSizes = new ArrayDeque<>();
+    Deque<Long> inFlightOldest = new ArrayDeque<>();
+    List<Key> batch = new ArrayList<>(BATCH_SIZE);
+    long oldest = Long.MAX_VALUE;
+    for (Entity entity : datastore.prepare(query).asIterable(fetchOptions)) {
+      batch.add(entity.getKey());
+      oldest = Math.min(oldest, (long) entity.getProperty("timestamp"));
+      if (batch.size() < BATCH_SIZE) {
+        continue;
+      }
+
+      // Wait for the oldest batch before sending another, so at most MAX_IN_FLIGHT are pending.
+      if (inFlight.size() == MAX_IN_FLIGHT) {
+        await(inFlight.removeFirst());
+        deleted += inFlightSizes.removeFirst();
+        bumpIfKept(inFlightOldest.removeFirst());
+      }
+      inFlight.addLast(asyncDatastore.delete(batch));
+      inFlightSizes.addLast(batch.size());
+      inFlightOldest.addLast(oldest);
+      batch = new ArrayList<>(BATCH_SIZE);
+      oldest = Long.MAX_VALUE;
+
+      if (System.currentTimeMillis() >= deadline) {
+        done = false;
+        break;
+      }
+    }
+
+    if (done && !batch.isEmpty()) {
+      inFlight.addLast(asyncDatastore.delete(batch));
+      inFlightSizes.addLast(batch.size());
+      inFlightOldest.addLast(oldest);
+    }
+    while (!inFlight.isEmpty()) {
+      await(inFlight.removeFirst());
+      deleted += inFlightSizes.removeFirst();
+      bumpIfKept(inFlightOldest.removeFirst());
+    }
+
+    DeletionProgress progress = new DeletionProgress(deleted, done);
+    if (!saveProgress(generation, progress)) {
+      // A newer deletion took over, and carries on by itself.
+      return getProgress();
+    }
+    if (!done) {
+      queueResume(generation);
+    }
+    return progress;
+  }
+
+  /**
+   * Queues a task to carry on with deletion {@code generation} after the request that started it
+   * failed. If that fails too, marks the deletion as stale, so the next request may start a new one
+   * straight away instead of waiting STALE_MILLIS.
+   */
+  private void handOff(long generation) {
+    try {
+      queueResume(generation);
+    } catch (RuntimeException e) {
+      try {
+        Entity entity = getProgressEntity(null);
+        if (entity != null) {
+          saveProgress(generation, toProgress(entity), 0);
+        }
+      } catch (RuntimeException ignored) {
+        // The datastore is failing too, so the deletion goes stale after STALE_MILLIS instead.
+      }
+    }
+  }
+
+  private static void queueResume(long generation) {
+    QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(TASK_URL)
+        .param("generation", Long.toString(generation)));
+  }
+
+  /**
+   * Bumps the comments version if a deleted batch whose oldest comment is from {@code oldest} may
+   * have held comments that other instances keep in memory.
+   */
+  private static void bumpIfKept(long oldest) {
+    if (OldestComments.get().mayKeep(oldest, CommentsVersion.current())) {
+      CommentsVersion.bump();
+    }
+  }
+
+  /**
+   * Saves the progress of deletion {@code generation}, unless a newer deletion has taken over.
+   * Returns whether it was saved.
+   */
+  private boolean saveProgress(long generation, DeletionProgress progress) {
+    return saveProgress(generation, progress, System.currentTimeMillis());
+  }
+
+  private boolean saveProgress(long generation, DeletionProgress progress, long timestamp) {
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      Entity entity = getProgressEntity(transaction);
+      if (entity == null || (long) entity.getProperty("generation") != generation) {
+        return false;
+      }
+      datastore.put(transaction, toEntity(generation, progress, timestamp));
+      transaction.commit();
+      return true;
+    } catch (ConcurrentModificationException e) {
+      return false;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /**
+   * Returns whether a deletion is still running. One whose progress hasn't been saved for
+   * STALE_MILLIS died without finishing, and may be replaced.
+   */
+  private static boolean isRunning(Entity entity) {
+    return !(boolean) entity.getProperty("done")
+        && System.currentTimeMillis() - (long) entity.getProperty("timestamp") < STALE_MILLIS;
+  }
+
+  private Entity getProgressEntity(Transaction transaction) {
+    try {
+      return datastore.get(transaction, PROGRESS_KEY);
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static DeletionProgress toProgress(Entity entity) {
+    return new DeletionProgress((long) entity.getProperty("deleted"),
+                                (boolean) entity.getProperty("done"));
+  }
+
+  private static Entity toEntity(long generation, DeletionProgress progress, long timestamp) {
+    Entity entity = new Entity(PROGRESS_KEY);
+    entity.setProperty("generation", generation);
+    entity.setProperty("deleted", progress.getDeleted());
+    entity.setProperty("done", progress.isDone());
+    entity.setProperty("timestamp", timestamp);
+    return entity;
+  }
+
+  private static void await(Future<Void> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while deleting comments", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not delete comments", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,319 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.sps.data.CommentQueueStats;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects new comments in memory and writes them to the datastore in batches, either every
+ * FLUSH_INTERVAL_MILLIS or as soon as MAX_BATCH_SIZE comments are waiting. Each comment gets its
+ * key before it is queued, so retrying a failed batch never writes a comment twice. When the
+ * queue is full, new comments are turned away rather than held in memory without bound.
+ *
+ * <p>A batch that keeps failing is split in half, so one bad comment can't hold up the rest, and
+ * a single comment that keeps failing is set aside as a dead letter and retried now and then.
+ *
+ * <p>Queued comments are written when the app shuts down normally. They are lost if an instance
+ * dies without shutting down, so writes are not durable in that case.
+ */
+final class CommentWriteQueue {
+
+  private static final int CAPACITY = 10000;
+
+  // The datastore writes at most 500 entities per call.
+  private static final int MAX_BATCH_SIZE = 500;
+
+  private static final long FLUSH_INTERVAL_MILLIS = 250;
+
+  // How long a request waits for room in a full queue before giving up.
+  private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+  // How many times shutdown tries to write what is left before giving up.
+  private static final int SHUTDOWN_ATTEMPTS = 3;
+
+  // How many times a batch is tried before it is split, or set aside if it is a single comment.
+  private static final int MAX_ATTEMPTS = 5;
+
+  // The most comments set aside, and how often they are tried again.
+  private static final int DEAD_LETTER_CAPACITY = 1000;
+  private static final long DEAD_LETTER_RETRY_MILLIS = 60 * 1000;
+
+  // Keys are allocated in blocks so that most comments don't need a datastore call of their own.
+  private static final int KEY_BLOCK_SIZE = 100;
+
+  private static CommentWriteQueue instance;
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final BlockingQueue<Entity> queue = new ArrayBlockingQueue<>(CAPACITY);
+  private final ScheduledExecutorService flusher =
+      Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  private Iterator<Key> keys;
+
+  // Batches that failed to write, which are retried before anything else.
+  private final Deque<Batch> retries = new ArrayDeque<>();
+
+  // Comments that failed on their own MAX_ATTEMPTS times.
+  private final List<Entity> deadLetters = new ArrayList<>();
+  private long nextDeadLetterRetry = 0;
+
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong flushedComments = new AtomicLong();
+  private final AtomicLong failedFlushes = new AtomicLong();
+  private final AtomicLong rejectedComments = new AtomicLong();
+  private final AtomicLong lostComments = new AtomicLong();
+  private final AtomicLong totalFlushNanos = new AtomicLong();
+  private volatile long lastFlushNanos;
+  private volatile long maxFlushNanos;
+
+  private CommentWriteQueue() {
+    flusher.scheduleWithFixedDelay(
+        flushTask, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Starts the queue shared by every servlet. */
+  static synchronized void start() {
+    if (instance == null) {
+      instance = new CommentWriteQueue();
+    }
+  }
+
+  /** Returns the queue shared by every servlet. */
+  static synchronized CommentWriteQueue get() {
+    if (instance == null) {
+      throw new IllegalStateException("The comment write queue has not been started.");
+    }
+    return instance;
+  }
+
+  /** Returns a new key for a comment, which stays the same if its write has to be retried. */
+  synchronized Key allocateKey() {
+    if (keys == null || !keys.hasNext()) {
+      keys = datastore.allocateIds("Comment", KEY_BLOCK_SIZE).iterator();
+    }
+    return keys.next();
+  }
+
+  /**
+   * Queues a comment to be written. Returns false if the queue stayed full for too long, in which
+   * case the comment was not queued and the client should try again later.
+   */
+  boolean add(Entity comment) throws InterruptedException {
+    if (!queue.offer(comment, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      rejectedComments.incrementAndGet();
+      return false;
+    }
+
+    if (queue.size() >= MAX_BATCH_SIZE || flusher.isShutdown()) {
+      try {
+        flusher.execute(flushTask);
+      } catch (RejectedExecutionException e) {
+        // The queue is shutting down, so nothing else will flush this comment.
+        flush();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stops flushing on a timer and writes every comment that is still queued. Comments added after
+   * this are written straight away.
+   */
+  void shutdown() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Try a few times, in case a failure is transient.
+    synchronized (this) {
+      for (int attempt = 0; attempt < SHUTDOWN_ATTEMPTS; attempt++) {
+        nextDeadLetterRetry = 0;
+        if (flush() && deadLetters.isEmpty()) {
+          return;
+        }
+      }
+
+      List<Entity> left = new ArrayList<>(deadLetters);
+      left.addAll(queue);
+      for (Batch batch : retries) {
+        left.addAll(batch.comments);
+      }
+      lose(left);
+      System.err.println("Could not write " + left.size() + " comments before shutting down");
+    }
+  }
+
+  /** Returns the queue's depth and how its flushes have gone so far. */
+  CommentQueueStats getStats() {
+    long count = flushes.get();
+    int deadLetterCount;
+    synchronized (this) {
+      deadLetterCount = deadLetters.size();
+    }
+    return new CommentQueueStats(queue.size(), CAPACITY, count, flushedComments.get(),
+                                 failedFlushes.get(), rejectedComments.get(), deadLetterCount,
+                                 lostComments.get(),
+                                 toMillis(lastFlushNanos), toMillis(maxFlushNanos),
+                                 count == 0 ? 0 : toMillis(totalFlushNanos.get()) / count);
+  }
+
+  /**
+   * Writes every queued comment, a batch at a time, and tries the dead letters again if they are
+   * due. Returns whether every batch was written.
+   */
+  private synchronized boolean flush() {
+    retryDeadLetters();
+    while (true) {
+      Batch batch = retries.pollFirst();
+      if (batch == null) {
+        List<Entity> comments = new ArrayList<>();
+        queue.drainTo(comments, MAX_BATCH_SIZE);
+        if (comments.isEmpty()) {
+          return true;
+        }
+        batch = new Batch(comments);
+      }
+
+      if (!write(batch.comments)) {
+        retryLater(batch);
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Keeps a failed batch for the next flush; its keys are fixed, so a retry can't duplicate it.
+   * After MAX_ATTEMPTS, the batch is split in half, or set aside if it is a single comment.
+   */
+  private void retryLater(Batch batch) {
+    batch.attempts++;
+    if (batch.attempts < MAX_ATTEMPTS) {
+      retries.addFirst(batch);
+      return;
+    }
+
+    List<Entity> comments = batch.comments;
+    if (comments.size() > 1) {
+      int half = comments.size() / 2;
+      retries.addFirst(new Batch(new ArrayList<>(comments.subList(half, comments.size()))));
+      retries.addFirst(new Batch(new ArrayList<>(comments.subList(0, half))));
+    } else if (deadLetters.size() < DEAD_LETTER_CAPACITY) {
+      deadLetters.addAll(comments);
+    } else {
+      lose(comments);
+      System.err.println("Dropping a comment that could not be written: " + comments);
+    }
+  }
+
+  /** Counts {@code comments} as lost, and stops showing them. */
+  private void lose(Collection<Entity> comments) {
+    lostComments.addAndGet(comments.size());
+    for (Entity comment : comments) {
+      OldestComments.get().remove(comment.getKey().getId());
+    }
+  }
+
+  /** Tries each dead letter on its own, at most once every DEAD_LETTER_RETRY_MILLIS. */
+  private void retryDeadLetters() {
+    long now = System.currentTimeMillis();
+    if (deadLetters.isEmpty() || now < nextDeadLetterRetry) {
+      return;
+    }
+    nextDeadLetterRetry = now + DEAD_LETTER_RETRY_MILLIS;
+
+    for (Iterator<Entity> iterator = deadLetters.iterator(); iterator.hasNext(); ) {
+      if (write(Collections.singletonList(iterator.next()))) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Writes {@code comments} in one call. Returns whether they were written. */
+  private boolean write(List<Entity> comments) {
+    long start = System.nanoTime();
+    try {
+      datastore.put(comments);
+    } catch (RuntimeException e) {
+      failedFlushes.incrementAndGet();
+      System.err.println("Could not write " + comments.size() + " comments: " + e);
+      return false;
+    }
+    recordFlush(comments.size(), System.nanoTime() - start);
+
+    // Let other instances know the comments changed, unless every comment is too new to be among
+    // the oldest ones they keep. This instance added them already.
+    OldestComments oldestComments = OldestComments.get();
+    long current = CommentsVersion.current();
+    boolean mayBeKept = false;
+    List<Long> ids = new ArrayList<>(comments.size());
+    for (Entity comment : comments) {
+      ids.add(comment.getKey().getId());
+      mayBeKept |= oldestComments.mayKeep((long) comment.getProperty("timestamp"), current);
+    }
+    oldestComments.wrote(ids, mayBeKept ? CommentsVersion.bump() : CommentsVersion.UNKNOWN);
+    return true;
+  }
+
+  private void recordFlush(int size, long nanos) {
+    flushes.incrementAndGet();
+    flushedComments.addAndGet(size);
+    totalFlushNanos.addAndGet(nanos);
+    lastFlushNanos = nanos;
+    if (nanos > maxFlushNanos) {
+      maxFlushNanos = nanos;
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  /** Comments that are written together, and how many times that has failed. */
+  private static final class Batch {
+    final List<Entity> comments;
+    int attempts = 0;
+
+    Batch(List<Entity> comments) {
+      this.comments = comments;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.LifecycleManager;
+import com.google.appengine.api.LifecycleManager.ShutdownHook;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/** Starts the comment write queue with the app, and writes what is left in it on shutdown */
+@WebListener
+public class CommentWriteQueueListener implements ServletContextListener {
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    CommentWriteQueue.start();
+
+    // App Engine may stop an instance without destroying the context, so flush from its hook too.
+    LifecycleManager.getInstance().setShutdownHook(new ShutdownHook() {
+      @Override
+      public void shutdown() {
+        CommentWriteQueue.get().shutdown();
+      }
+    });
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    CommentWriteQueue.get().shutdown();
+  }
+}
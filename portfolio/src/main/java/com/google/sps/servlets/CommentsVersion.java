@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+/**
+ * A counter in memcache that every instance bumps after changing the comments in the datastore,
+ * so that the others can tell their {@link OldestComments} are out of date. Changes to comments
+ * newer than every kept one don't bump it, as {@link OldestComments#mayKeep} tells.
+ */
+final class CommentsVersion {
+
+  /** Returned when memcache can't be reached. */
+  static final long UNKNOWN = -1;
+
+  private static final String KEY = "comments-version";
+
+  private static final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
+  private CommentsVersion() {}
+
+  /** Records that the comments changed, and returns the new version. */
+  static long bump() {
+    // If memcache lost the counter, start again from the clock, so no old version comes back.
+    Long version = memcache.increment(KEY, 1, System.currentTimeMillis());
+    return version == null ? UNKNOWN : version;
+  }
+
+  /** Returns the current version. */
+  static long current() {
+    Object version = memcache.get(KEY);
+    if (!(version instanceof Number)) {
+      return bump();
+    }
+    return ((Number) version).longValue();
+  }
+}
@@ -14,13 +14,8 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
+import com.google.gson.Gson;
+import com.google.sps.data.DeletionProgress;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -31,19 +26,24 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/delete-comments")
 public class DeleteCommentServlet extends HttpServlet {
 
+  // How long a request spends deleting before a background task takes over the rest.
+  private static final long REQUEST_BUDGET_MILLIS = 20 * 1000;
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    new BulkCommentDeleter().start(REQUEST_BUDGET_MILLIS);
 
-    Query query = new Query("Comment");
+    response.sendRedirect("/comments.html");
+  }
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery results = datastore.prepare(query);
+  /** Reports how far the latest deletion has got. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    DeletionProgress progress = new BulkCommentDeleter().getProgress();
 
-    for (Entity entity : results.asIterable()) {
-      Key commentEntityKey = KeyFactory.createKey("Comment", entity.getKey().getId());
-      datastore.delete(commentEntityKey);
-    }
+    Gson gson = new Gson();
 
-    response.sendRedirect("/comments.html");
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(progress));
   }
-}
\ No newline at end of file
+}
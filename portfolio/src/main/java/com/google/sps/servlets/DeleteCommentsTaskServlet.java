@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Background task that carries on deleting comments where a request left off */
+@WebServlet(BulkCommentDeleter.TASK_URL)
+public class DeleteCommentsTaskServlet extends HttpServlet {
+
+  // Tasks may run for ten minutes; stop well before that and queue another task instead.
+  private static final long TASK_BUDGET_MILLIS = 5 * 60 * 1000;
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from outside requests, so only the task queue can get here.
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    // A task without a valid generation can't be resumed, and retrying it wouldn't help.
+    long generation;
+    try {
+      generation = Long.parseLong(request.getParameter("generation"));
+    } catch (NumberFormatException e) {
+      System.err.println("Ignoring a deletion task without a generation");
+      return;
+    }
+
+    new BulkCommentDeleter().resume(generation, TASK_BUDGET_MILLIS);
+  }
+}
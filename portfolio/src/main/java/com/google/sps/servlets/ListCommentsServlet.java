@@ -16,16 +16,26 @@ package com.google.sps.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
 import com.google.gson.Gson;
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -35,41 +45,222 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/list-comments")
 public class ListCommentsServlet extends HttpServlet {
 
-  private int maxComments = 1;
+  // The most comments a single page can hold, so every page costs about the same to fetch. Every
+  // page this size or smaller can be answered from OldestComments.
+  private static final int MAX_PAGE_SIZE = OldestComments.CAPACITY;
+
+  // The page sizes offered on the comments page, whose first pages are kept ready to send.
+  private static final List<Integer> FEED_SIZES = Arrays.asList(5, 10, 20, 50);
+
+  private final Map<Integer, Feed> feeds = new ConcurrentHashMap<>();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    maxComments = getMaxComments(request);
+    int maxComments = getMaxComments(request);
 
-    Query query = new Query("Comment").addSort("timestamp", SortDirection.ASCENDING);
+    // Pages are oldest first. A page served from memory ends with a cursor that holds the time of
+    // its last comment, while other pages use the datastore's own cursors.
+    String cursor = request.getParameter("cursor");
+    PageStart pageStart = PageStart.FIRST;
+    Cursor datastoreCursor = null;
+    try {
+      if (cursor != null && cursor.startsWith(PageStart.PREFIX)) {
+        pageStart = PageStart.parse(cursor);
+      } else if (cursor != null && !cursor.isEmpty()) {
+        datastoreCursor = Cursor.fromWebSafeString(cursor);
+      }
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor: " + cursor);
+      return;
+    }
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery results = datastore.prepare(query);
+    // The first page is usually sent as ready-made bytes, or not at all if the client has it.
+    if (cursor == null || cursor.isEmpty()) {
+      Feed feed = getFeed(maxComments);
+      if (feed != null) {
+        response.setHeader("Cache-Control", "no-cache");
+        if (feed.etag != null) {
+          response.setHeader("ETag", feed.etag);
+          if (matches(request.getHeader("If-None-Match"), feed.etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+          }
+        }
 
-    List<Comment> comments = new ArrayList<>();
-    for (Entity entity : results.asIterable()) {
-      if (comments.size() == maxComments) {
-        break;
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(feed.json.length);
+        response.getOutputStream().write(feed.json);
+        return;
       }
+    }
 
-      Comment comment = new Comment(entity.getKey().getId(), 
-                                    (String) entity.getProperty("name"),
-                                    (String) entity.getProperty("body"),
-                                    (long) entity.getProperty("timestamp"));
-      comments.add(comment);
+    CommentPage page;
+    if (datastoreCursor != null) {
+      page = getPageFromCursor(datastoreCursor, maxComments);
+    } else {
+      page = getPageFromStart(pageStart, maxComments);
     }
 
     Gson gson = new Gson();
 
     response.setContentType("application/json;");
-    response.getWriter().println(gson.toJson(comments));
+    response.getWriter().println(gson.toJson(page));
+  }
+
+  /**
+   * Returns the first page as JSON bytes, or null if OldestComments can't answer it. Pages of the
+   * usual sizes are only serialized again when the comments change.
+   *
+   * <p>The ETag is the shared comments version and the page size, so every instance gives the
+   * same page the same tag and a client's tag is good on any of them. A page with comments that
+   * haven't been written yet gets no tag, since other instances can't show it.
+   */
+  private Feed getFeed(int maxComments) {
+    OldestComments oldestComments = OldestComments.get();
+    if (!oldestComments.refresh()) {
+      return null;
+    }
+
+    // Hold the comments' lock so that the version and stamp belong to these comments.
+    long version;
+    long stamp;
+    synchronized (oldestComments) {
+      version = oldestComments.getVersion();
+      stamp = oldestComments.getStamp();
+    }
+    Feed feed = feeds.get(maxComments);
+    if (feed != null && feed.version == version && feed.stamp == stamp) {
+      return feed;
+    }
+
+    List<Comment> comments;
+    synchronized (oldestComments) {
+      version = oldestComments.getVersion();
+      stamp = oldestComments.getStamp();
+      comments = oldestComments.getPage(PageStart.FIRST.afterTimestamp,
+                                        PageStart.FIRST.excludedIds, maxComments);
+    }
+    if (comments == null) {
+      return null;
+    }
+
+    String nextCursor = null;
+    if (comments.size() == maxComments) {
+      nextCursor = PageStart.FIRST.next(comments).toString();
+    }
+    Gson gson = new Gson();
+    byte[] json = gson.toJson(new CommentPage(comments, nextCursor))
+        .getBytes(StandardCharsets.UTF_8);
+
+    String etag = null;
+    if (stamp != CommentsVersion.UNKNOWN) {
+      etag = "\"" + stamp + "-" + maxComments + "\"";
+    }
+    feed = new Feed(version, stamp, etag, json);
+    if (FEED_SIZES.contains(maxComments)) {
+      feeds.put(maxComments, feed);
+    }
+    return feed;
+  }
+
+  /** Returns whether an If-None-Match header names {@code etag}. */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals(etag) || tag.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the page that starts at {@code pageStart}, from OldestComments if it holds the whole
+   * page and from the datastore otherwise.
+   */
+  private CommentPage getPageFromStart(PageStart pageStart, int maxComments) {
+    OldestComments oldestComments = OldestComments.get();
+    List<Comment> comments = null;
+    if (oldestComments.refresh()) {
+      comments = oldestComments.getPage(
+          pageStart.afterTimestamp, pageStart.excludedIds, maxComments);
+    }
+
+    if (comments == null && pageStart == PageStart.FIRST) {
+      return getPageFromCursor(null, maxComments);
+    }
+
+    if (comments == null) {
+      // Fetch enough to make up for the excluded comments, which the filter can't leave out.
+      Query query = new Query("Comment")
+          .setFilter(new FilterPredicate(
+              "timestamp", FilterOperator.GREATER_THAN_OR_EQUAL, pageStart.afterTimestamp))
+          .addSort("timestamp", SortDirection.ASCENDING);
+      int limit = maxComments + pageStart.excludedIds.size();
+
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+      comments = new ArrayList<>(maxComments);
+      for (Entity entity : datastore.prepare(query).asList(
+          FetchOptions.Builder.withLimit(limit).chunkSize(limit))) {
+        Comment comment = OldestComments.toComment(entity);
+        if (comments.size() < maxComments && !pageStart.excludes(comment)) {
+          comments.add(comment);
+        }
+      }
+    }
+
+    // A short page is the last one, so there is nothing more to fetch.
+    String nextCursor = null;
+    if (comments.size() == maxComments) {
+      nextCursor = pageStart.next(comments).toString();
+    }
+    return new CommentPage(comments, nextCursor);
+  }
+
+  /**
+   * Returns the page that starts at {@code cursor}, or the first page if it is null, from the
+   * datastore.
+   */
+  private CommentPage getPageFromCursor(Cursor cursor, int maxComments) {
+    // Fetch exactly one page, starting where the previous page's cursor left off.
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(maxComments)
+                                                    .prefetchSize(maxComments)
+                                                    .chunkSize(maxComments);
+    if (cursor != null) {
+      fetchOptions.startCursor(cursor);
+    }
+
+    Query query = new Query("Comment").addSort("timestamp", SortDirection.ASCENDING);
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    PreparedQuery results = datastore.prepare(query);
+    QueryResultList<Entity> entities = results.asQueryResultList(fetchOptions);
+
+    List<Comment> comments = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      comments.add(OldestComments.toComment(entity));
+    }
+
+    // A short page is the last one, so there is nothing more to fetch.
+    String nextCursor = null;
+    if (entities.size() == maxComments) {
+      nextCursor = entities.getCursor().toWebSafeString();
+    }
+    return new CommentPage(comments, nextCursor);
   }
 
   private int getMaxComments(HttpServletRequest request) {
     // Get the input from the form.
     String maxCommentsString = request.getParameter("max-comments");
 
-    // Convert the input into an int (default is 5).
+    // Convert the input into an int (default is 5, at most MAX_PAGE_SIZE).
     int maxCommentsInt = 5;
 
     try {
@@ -77,7 +268,90 @@ public class ListCommentsServlet extends HttpServlet {
     } catch (NumberFormatException e) {
       System.err.println("Could not convert to int: " + maxCommentsString);
     }
-    
-    return maxCommentsInt;
+
+    if (maxCommentsInt <= 0) {
+      return 5;
+    }
+    return Math.min(maxCommentsInt, MAX_PAGE_SIZE);
+  }
+
+  /**
+   * Where a page starts: at comments no older than a time, except for the comments at exactly that
+   * time that were already on earlier pages. Written as {@code ~time~id.id...}.
+   */
+  private static final class PageStart {
+    static final String PREFIX = "~";
+    static final PageStart FIRST = new PageStart(Long.MIN_VALUE, Collections.<Long>emptyList());
+
+    final long afterTimestamp;
+    final List<Long> excludedIds;
+
+    PageStart(long afterTimestamp, List<Long> excludedIds) {
+      this.afterTimestamp = afterTimestamp;
+      this.excludedIds = excludedIds;
+    }
+
+    static PageStart parse(String cursor) {
+      String[] parts = cursor.substring(PREFIX.length()).split(PREFIX, -1);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Malformed cursor: " + cursor);
+      }
+
+      List<Long> excludedIds = new ArrayList<>();
+      if (!parts[1].isEmpty()) {
+        for (String id : parts[1].split("\\.")) {
+          excludedIds.add(Long.parseLong(id));
+        }
+      }
+      return new PageStart(Long.parseLong(parts[0]), excludedIds);
+    }
+
+    boolean excludes(Comment comment) {
+      return comment.getTimestamp() < afterTimestamp
+          || (comment.getTimestamp() == afterTimestamp
+              && excludedIds.contains(comment.getId()));
+    }
+
+    /** Returns where the page after {@code page}, which started here, starts. */
+    PageStart next(List<Comment> page) {
+      long last = page.get(page.size() - 1).getTimestamp();
+      List<Long> shown = new ArrayList<>();
+      if (last == afterTimestamp) {
+        shown.addAll(excludedIds);
+      }
+      for (Comment comment : page) {
+        if (comment.getTimestamp() == last) {
+          shown.add(comment.getId());
+        }
+      }
+      return new PageStart(last, shown);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder cursor = new StringBuilder(PREFIX).append(afterTimestamp).append(PREFIX);
+      for (int i = 0; i < excludedIds.size(); i++) {
+        cursor.append(i == 0 ? "" : ".").append(excludedIds.get(i));
+      }
+      return cursor.toString();
+    }
+  }
+
+  /**
+   * A first page of comments, serialized as JSON, and the version and stamp of the comments it
+   * came from. The ETag is null if the page holds comments that haven't been written yet.
+   */
+  private static final class Feed {
+    final long version;
+    final long stamp;
+    final String etag;
+    final byte[] json;
+
+    Feed(long version, long stamp, String etag, byte[] json) {
+      this.version = version;
+      this.stamp = stamp;
+      this.etag = etag;
+      this.json = json;
+    }
   }
 }
@@ -14,8 +14,6 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
@@ -49,14 +47,33 @@ public class NewCommentServlet extends HttpServlet {
     String body = getRequestParam(request, "text-input");
     long timestamp = System.currentTimeMillis();   
 
-    Entity commentEntity = new Entity("Comment");
+    CommentWriteQueue writeQueue = CommentWriteQueue.get();
+    Entity commentEntity = new Entity(writeQueue.allocateKey());
     commentEntity.setProperty("name", name);
     commentEntity.setProperty("body", body);
     commentEntity.setProperty("timestamp", timestamp);
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(commentEntity);
-    
+    // Show the comment straight away, even though it may not have been written yet. It is shown
+    // before it is queued, so that it is known to be unwritten until the queue writes it.
+    OldestComments oldestComments = OldestComments.get();
+    oldestComments.add(new Comment(commentEntity.getKey().getId(), name, body, timestamp));
+
+    // The comment is written in the background along with others; if too many are already
+    // waiting, ask the client to try again shortly.
+    boolean queued;
+    try {
+      queued = writeQueue.add(commentEntity);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      queued = false;
+    }
+    if (!queued) {
+      oldestComments.remove(commentEntity.getKey().getId());
+      response.setHeader("Retry-After", "1");
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many new comments");
+      return;
+    }
+
     response.sendRedirect("/comments.html");
   }
 
@@ -0,0 +1,292 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.Comment;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The oldest CAPACITY comments, which make up the first pages of /list-comments, so the comments
+ * page can be shown without reading the datastore. Each instance keeps its own copy. The copy
+ * remembers the {@link CommentsVersion} it was filled at, and is filled again from the datastore
+ * when another instance has changed the comments since. Comments added on this instance show up
+ * straight away, before they are written, and until then the comments don't match any version.
+ */
+final class OldestComments {
+
+  /** The most comments kept, which is also the largest page that can be answered from memory. */
+  static final int CAPACITY = 100;
+
+  private static final OldestComments instance = new OldestComments();
+
+  // The oldest comments, from oldest to newest.
+  private final Comment[] slots = new Comment[CAPACITY];
+  private int size = 0;
+
+  // Whether the comments have been filled, and whether they are every comment there is.
+  private boolean warm = false;
+  private boolean holdsAll = false;
+
+  // The comments version the comments were filled at.
+  private long stamp = CommentsVersion.UNKNOWN;
+
+  // Whether the datastore held more comments than fit when they were filled, and the time of the
+  // newest comment kept then. Writes only add comments, so every instance filled at a later
+  // version without other changes keeps no comment newer than that.
+  private boolean storedBeyondKept = false;
+  private long newestKept = Long.MIN_VALUE;
+
+  // Bumped by every change to what the comments answer.
+  private long version = 0;
+
+  // Comments added while filling, which the datastore query may have missed.
+  private List<Comment> addedWhileWarming;
+
+  // The ids of kept comments that were added on this instance and haven't been written yet.
+  private final Set<Long> unwritten = new HashSet<>();
+
+  private OldestComments() {}
+
+  /** Returns the comments shared by every servlet on this instance. */
+  static OldestComments get() {
+    return instance;
+  }
+
+  /**
+   * Makes sure the comments match the datastore, filling them again if the comments version has
+   * moved on. Returns false if they can't be trusted, for example because memcache is down or
+   * another request is already filling them, in which case the caller must ask the datastore.
+   */
+  boolean refresh() {
+    long current = CommentsVersion.current();
+    if (current == CommentsVersion.UNKNOWN) {
+      return false;
+    }
+
+    synchronized (this) {
+      if (warm && stamp == current) {
+        return true;
+      }
+      if (addedWhileWarming != null) {
+        return false;
+      }
+      addedWhileWarming = new ArrayList<>();
+    }
+
+    try {
+      warm(current);
+      return true;
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        addedWhileWarming = null;
+      }
+      System.err.println("Could not fill the oldest comments: " + e);
+      return false;
+    }
+  }
+
+  /** Fills the comments from the datastore, as of comments version {@code current}. */
+  private void warm(long current) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Query query = new Query("Comment").addSort("timestamp", SortDirection.ASCENDING);
+
+    // Fetch one more than fits, to tell whether every comment fits.
+    List<Entity> entities = datastore.prepare(query).asList(
+        FetchOptions.Builder.withLimit(CAPACITY + 1).chunkSize(CAPACITY + 1));
+
+    synchronized (this) {
+      List<Comment> added = addedWhileWarming;
+      addedWhileWarming = null;
+
+      size = Math.min(entities.size(), CAPACITY);
+      for (int i = 0; i < size; i++) {
+        slots[i] = toComment(entities.get(i));
+      }
+      holdsAll = entities.size() <= CAPACITY;
+      storedBeyondKept = !holdsAll;
+      newestKept = size == 0 ? Long.MIN_VALUE : slots[size - 1].getTimestamp();
+      warm = true;
+      stamp = current;
+      version++;
+      unwritten.clear();
+
+      for (Comment comment : added) {
+        if (!contains(comment.getId())) {
+          add(comment);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a number that changes whenever the pages the comments answer do, so callers can tell
+   * whether anything they built from them is still current.
+   */
+  synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the comments version the comments match, or {@link CommentsVersion#UNKNOWN} if they
+   * include comments that haven't been written yet. Every instance at the same version answers
+   * the same pages.
+   */
+  synchronized long getStamp() {
+    return unwritten.isEmpty() ? stamp : CommentsVersion.UNKNOWN;
+  }
+
+  /**
+   * Returns whether a comment at {@code timestamp} may be among the comments kept by an instance
+   * that is up to date with comments version {@code current}, so that writing or deleting it has
+   * to bump the version. Only a comment newer than every comment kept is known not to be.
+   */
+  synchronized boolean mayKeep(long timestamp, long current) {
+    return !warm || current == CommentsVersion.UNKNOWN || stamp != current || !storedBeyondKept
+        || timestamp <= newestKept;
+  }
+
+  /** Adds a comment made on this instance, which may not have been written yet. */
+  synchronized void add(Comment comment) {
+    if (!warm) {
+      if (addedWhileWarming != null) {
+        addedWhileWarming.add(comment);
+      }
+      return;
+    }
+
+    // A comment newer than all of a full set isn't among the oldest.
+    if (size == CAPACITY && comment.getTimestamp() >= slots[size - 1].getTimestamp()) {
+      holdsAll = false;
+      return;
+    }
+
+    if (size == CAPACITY) {
+      size--;
+      unwritten.remove(slots[size].getId());
+      holdsAll = false;
+    }
+
+    // Comments nearly always arrive newest last, so this rarely has to move anything.
+    int position = size;
+    while (position > 0 && slots[position - 1].getTimestamp() > comment.getTimestamp()) {
+      slots[position] = slots[position - 1];
+      position--;
+    }
+    slots[position] = comment;
+    size++;
+    version++;
+    unwritten.add(comment.getId());
+  }
+
+  /**
+   * Takes back a comment added on this instance that won't be written after all, because the
+   * write queue turned it away or gave up on it.
+   */
+  synchronized void remove(long id) {
+    if (addedWhileWarming != null) {
+      for (int i = 0; i < addedWhileWarming.size(); i++) {
+        if (addedWhileWarming.get(i).getId() == id) {
+          addedWhileWarming.remove(i);
+          break;
+        }
+      }
+    }
+
+    if (!unwritten.remove(id)) {
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      if (slots[i].getId() == id) {
+        System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+        size--;
+        slots[size] = null;
+        version++;
+
+        // The comment may have pushed out one that was written, so fill again on the next refresh.
+        stamp = CommentsVersion.UNKNOWN;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records that this instance wrote the comments with {@code ids} to the datastore, which moved
+   * the comments version on to {@code current}, or left it alone if {@code current} is
+   * {@link CommentsVersion#UNKNOWN}. If nothing else changed in between, the comments already
+   * match it.
+   */
+  synchronized void wrote(Collection<Long> ids, long current) {
+    unwritten.removeAll(ids);
+    if (warm && current != CommentsVersion.UNKNOWN && stamp == current - 1) {
+      stamp = current;
+    }
+  }
+
+  /**
+   * Returns up to {@code maxComments} comments, oldest first, that are no older than
+   * {@code afterTimestamp} and aren't in {@code excludedIds}. Returns null if the comments kept
+   * can't tell which comments those are, in which case the caller must ask the datastore. Call
+   * {@link #refresh} first.
+   */
+  synchronized List<Comment> getPage(long afterTimestamp, Collection<Long> excludedIds,
+                                     int maxComments) {
+    if (!warm) {
+      return null;
+    }
+
+    List<Comment> page = new ArrayList<>(maxComments);
+    for (int i = 0; i < size && page.size() < maxComments; i++) {
+      Comment comment = slots[i];
+      if (comment.getTimestamp() > afterTimestamp
+          || (comment.getTimestamp() == afterTimestamp
+              && !excludedIds.contains(comment.getId()))) {
+        page.add(comment);
+      }
+    }
+
+    // A short page is only right if no newer comments were left out.
+    if (page.size() < maxComments && !holdsAll) {
+      return null;
+    }
+    return page;
+  }
+
+  private boolean contains(long id) {
+    for (int i = 0; i < size; i++) {
+      if (slots[i].getId() == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Converts a comment entity from the datastore into a comment. */
+  static Comment toComment(Entity entity) {
+    return new Comment(entity.getKey().getId(), 
+                       (String) entity.getProperty("name"),
+                       (String) entity.getProperty("body"),
+                       (long) entity.getProperty("timestamp"));
+  }
+}
@@ -184,6 +184,9 @@ function setMarkers() {
   }
 }
 
+// How often the comments page checks for new comments.
+const COMMENTS_POLL_MILLIS = 10000;
+
 /** 
  * When the page loads, get from /login whether the user is logged in, and
  * update the Login/Logout url and display name accordingly. Then, get the
@@ -205,6 +208,14 @@ function loadPage() {
   });
 
   getComments();
+
+  // Check for new comments every so often; this costs the server almost nothing when there are
+  // none. Don't poll while later pages are shown, since refreshing would throw them away.
+  setInterval(() => {
+    if (!morePagesShown) {
+      getComments();
+    }
+  }, COMMENTS_POLL_MILLIS);
 }
 
 /**
@@ -225,22 +236,60 @@ function checkEmptyField() {
   }
 }
 
+// The ETag of the first page of comments on display, so the server can say it hasn't changed.
+let commentsEtag = null;
+
+// Whether pages after the first have been added with "Show more".
+let morePagesShown = false;
+
 /**
- * Fetches stats from the servers and adds them to the DOM.
+ * Fetches a page of comments from the server and adds them to the DOM. Without a cursor, the
+ * first page replaces the comments shown, unless the server says it hasn't changed; with one, the
+ * next page is added below them.
  */
-function getComments() {
-  fetch('/list-comments?max-comments=' + document.getElementById("max-comments").value)
-    .then(response => response.json())
-    .then((comments) => {
+function getComments(cursor) {
+  let url = '/list-comments?max-comments=' + document.getElementById("max-comments").value;
+  const headers = {};
+  if (cursor) {
+    url += '&cursor=' + encodeURIComponent(cursor);
+  } else if (commentsEtag) {
+    headers['If-None-Match'] = commentsEtag;
+  }
+
+  fetch(url, {headers: headers})
+    .then((response) => {
+      if (response.status == 304) {
+        return null;
+      }
+      if (!cursor) {
+        commentsEtag = response.headers.get('ETag');
+      }
+      return response.json();
+    })
+    .then((page) => {
+      if (!page) {
+        return;
+      }
+
       const commentsListElement = document.getElementById('comments-container');
-      commentsListElement.innerHTML = "";
+      if (cursor) {
+        morePagesShown = true;
+      } else {
+        commentsListElement.innerHTML = "";
+        morePagesShown = false;
+      }
 
-      comments.forEach((comment) => {
+      page.comments.forEach((comment) => {
         commentsListElement.appendChild(createCommentElement(comment));
       });
 
       document.getElementById('num-comments-title').innerText = 
-        comments.length + ' Comments';
+        commentsListElement.children.length + ' Comments';
+
+      // Only offer more comments if there is another page to fetch.
+      const moreCommentsButton = document.getElementById('more-comments-btn');
+      moreCommentsButton.hidden = !page.nextCursor;
+      moreCommentsButton.onclick = () => getComments(page.nextCursor);
   });
 }
 
@@ -277,5 +326,23 @@ function deleteComments() {
     .then(response => response.text())
     .then(() => {
       getComments();
+      checkDeletionProgress();
+  });
+}
+
+/**
+ * Large deletions carry on in the background, so keep refreshing the comments until the server
+ * reports that the deletion is done.
+ */
+function checkDeletionProgress() {
+  fetch('/delete-comments')
+    .then(response => response.json())
+    .then((progress) => {
+      if (!progress.done) {
+        setTimeout(() => {
+          getComments();
+          checkDeletionProgress();
+        }, 2000);
+      }
   });
 }
\ No newline at end of file
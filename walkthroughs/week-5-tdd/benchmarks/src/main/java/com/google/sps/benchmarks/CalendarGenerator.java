@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic calendars for benchmarks. The same seed and settings always produce the same
+ * events and requests, so runs can be compared with each other.
+ */
+public final class CalendarGenerator {
+  private static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  private final Random random;
+  private final int people;
+  private final int events;
+  private final int attendeesPerEvent;
+  private final int attendeesPerRequest;
+  private final double optionalRatio;
+  private final int meanEventDuration;
+
+  /**
+   * Creates a new generator.
+   *
+   * @param seed The seed for the random number generator.
+   * @param people How many different people appear on the calendar. Must be at least
+   *     {@code attendeesPerEvent} and {@code attendeesPerRequest}.
+   * @param events How many events to generate.
+   * @param attendeesPerEvent How many people attend each event.
+   * @param attendeesPerRequest How many people, mandatory and optional, are in each request.
+   * @param optionalRatio The fraction of each request's attendees who are optional, from 0 to 1.
+   * @param overlapDensity How busy each person is, as the expected number of their events that
+   *     cover any one minute of the day. Above 1, a person's events overlap each other.
+   */
+  public CalendarGenerator(long seed, int people, int events, int attendeesPerEvent,
+      int attendeesPerRequest, double optionalRatio, double overlapDensity) {
+    if (people < attendeesPerEvent || people < attendeesPerRequest) {
+      throw new IllegalArgumentException("people must cover every event and request");
+    }
+
+    if (optionalRatio < 0 || optionalRatio > 1) {
+      throw new IllegalArgumentException("optionalRatio must be between 0 and 1");
+    }
+
+    this.random = new Random(seed);
+    this.people = people;
+    this.events = events;
+    this.attendeesPerEvent = attendeesPerEvent;
+    this.attendeesPerRequest = attendeesPerRequest;
+    this.optionalRatio = optionalRatio;
+
+    // Each person attends events * attendeesPerEvent / people events on average, so pick the
+    // duration that makes them cover overlapDensity days in total.
+    double eventsPerPerson = Math.max(1.0, (double) events * attendeesPerEvent / people);
+    this.meanEventDuration = (int) Math.max(1,
+        Math.min(MINUTES_PER_DAY, overlapDensity * MINUTES_PER_DAY / eventsPerPerson));
+  }
+
+  /**
+   * Returns the name of the {@code index}th person on the calendar.
+   */
+  public static String person(int index) {
+    return "Person " + index;
+  }
+
+  /**
+   * Generates the events of the calendar.
+   */
+  public List<Event> events() {
+    List<Event> generated = new ArrayList<>(events);
+    for (int i = 0; i < events; i++) {
+      int duration = 1 + random.nextInt(2 * meanEventDuration);
+      duration = Math.min(duration, MINUTES_PER_DAY);
+      int start = random.nextInt(MINUTES_PER_DAY - duration + 1);
+      generated.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+          pickPeople(attendeesPerEvent)));
+    }
+    return generated;
+  }
+
+  /**
+   * Generates {@code count} meeting requests over the same people as the events.
+   */
+  public List<MeetingRequest> requests(int count, long duration) {
+    int optional = (int) Math.round(attendeesPerRequest * optionalRatio);
+    List<MeetingRequest> generated = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      List<String> attendees = new ArrayList<>(pickPeople(attendeesPerRequest));
+      MeetingRequest request =
+          new MeetingRequest(attendees.subList(optional, attendees.size()), duration);
+      for (String person : attendees.subList(0, optional)) {
+        request.addOptionalAttendee(person);
+      }
+      generated.add(request);
+    }
+    return generated;
+  }
+
+  private Set<String> pickPeople(int count) {
+    Set<String> picked = new HashSet<>();
+    while (picked.size() < count) {
+      picked.add(person(random.nextInt(people)));
+    }
+    return picked;
+  }
+}
@@ -0,0 +1,305 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks candidate meeting engines against {@link MeetingEngines#REFERENCE} on many small random
+ * calendars. Trial {@code i} of seed {@code s} always generates the same calendar, so any mismatch
+ * can be replayed. A mismatch is shrunk to a minimal case before it is reported: events,
+ * attendees and minutes are taken away for as long as the engines still disagree.
+ *
+ * <p>Run it from the command line with a seed and a number of trials:
+ *
+ * <pre>java -cp target/benchmarks.jar com.google.sps.benchmarks.DifferentialHarness 42 1000000
+ * </pre>
+ */
+public final class DifferentialHarness {
+  private static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  // A small pool of names, so that random events and requests share attendees often.
+  private static final String[] PEOPLE = {"A", "B", "C", "D", "E", "F", "G"};
+
+  /**
+   * One calendar and one request.
+   */
+  public static final class Case {
+    final List<Event> events;
+    final List<String> attendees;
+    final List<String> optionalAttendees;
+    final long duration;
+
+    Case(List<Event> events, List<String> attendees, List<String> optionalAttendees,
+         long duration) {
+      this.events = events;
+      this.attendees = attendees;
+      this.optionalAttendees = optionalAttendees;
+      this.duration = duration;
+    }
+
+    MeetingRequest request() {
+      MeetingRequest request = new MeetingRequest(attendees, duration);
+      for (String person : optionalAttendees) {
+        request.addOptionalAttendee(person);
+      }
+      return request;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder out = new StringBuilder();
+      out.append("attendees=").append(attendees).append(" optional=").append(optionalAttendees)
+          .append(" duration=").append(duration);
+      for (Event event : events) {
+        out.append("\n  ").append(event.getTitle()).append(' ').append(event.getWhen())
+            .append(' ').append(event.getAttendees());
+      }
+      return out.toString();
+    }
+  }
+
+  /**
+   * A case on which a candidate engine disagreed with the reference, shrunk as far as possible.
+   */
+  public static final class Mismatch {
+    public final String engine;
+    public final long seed;
+    public final long trial;
+    public final Case minimal;
+    public final List<TimeRange> expected;
+    public final List<TimeRange> actual;
+
+    Mismatch(String engine, long seed, long trial, Case minimal, List<TimeRange> expected,
+             List<TimeRange> actual) {
+      this.engine = engine;
+      this.seed = seed;
+      this.trial = trial;
+      this.minimal = minimal;
+      this.expected = expected;
+      this.actual = actual;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Engine %s disagrees with the reference (seed %d, trial %d).%n"
+          + "Minimal case: %s%nExpected: %s%nActual:   %s",
+          engine, seed, trial, minimal, expected, actual);
+    }
+  }
+
+  private final MeetingEngines.Engine reference;
+  private final Map<String, MeetingEngines.Engine> candidates;
+
+  /**
+   * Creates a harness that checks {@code candidates} against {@code reference}.
+   */
+  public DifferentialHarness(MeetingEngines.Engine reference,
+                             Map<String, MeetingEngines.Engine> candidates) {
+    if (reference == null || candidates == null) {
+      throw new IllegalArgumentException("reference and candidates cannot be null");
+    }
+
+    this.reference = reference;
+    this.candidates = candidates;
+  }
+
+  /**
+   * Runs {@code trials} random cases and returns the first mismatch found, shrunk, or null if
+   * every candidate agreed with the reference on every case.
+   */
+  public Mismatch run(long seed, long trials) {
+    for (long trial = 0; trial < trials; trial++) {
+      Case generated = generate(new Random(seed * 1000003 + trial));
+      for (Map.Entry<String, MeetingEngines.Engine> candidate : candidates.entrySet()) {
+        if (disagrees(candidate.getValue(), generated)) {
+          Case minimal = shrink(candidate.getValue(), generated);
+          return new Mismatch(candidate.getKey(), seed, trial, minimal,
+              answer(reference, minimal), answer(candidate.getValue(), minimal));
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Generates a random case. The sizes are kept small, so that corner cases such as empty events,
+   * events that end at midnight and requests longer than a day come up often.
+   */
+  static Case generate(Random random) {
+    int people = 1 + random.nextInt(PEOPLE.length);
+    int eventCount = random.nextInt(13);
+
+    List<Event> events = new ArrayList<>(eventCount);
+    for (int i = 0; i < eventCount; i++) {
+      int start = randomMinute(random);
+      int end = start + random.nextInt(MINUTES_PER_DAY - start + 1);
+      if (random.nextInt(8) == 0) {
+        end = random.nextBoolean() ? start : MINUTES_PER_DAY;
+      }
+      events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+          pickPeople(random, people, random.nextInt(4))));
+    }
+
+    List<String> everyone = pickPeople(random, people, random.nextInt(Math.min(people, 5) + 1));
+    int mandatory = random.nextInt(everyone.size() + 1);
+
+    long duration;
+    switch (random.nextInt(6)) {
+      case 0:
+        duration = 1;
+        break;
+      case 1:
+        duration = MINUTES_PER_DAY - random.nextInt(3) + random.nextInt(3);
+        break;
+      default:
+        duration = 1 + random.nextInt(240);
+    }
+
+    return new Case(events, new ArrayList<>(everyone.subList(0, mandatory)),
+        new ArrayList<>(everyone.subList(mandatory, everyone.size())), duration);
+  }
+
+  /**
+   * Greedily simplifies {@code failing} while {@code candidate} still disagrees with the reference
+   * on it, until no single step helps.
+   */
+  Case shrink(MeetingEngines.Engine candidate, Case failing) {
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+      for (Case smaller : simplifications(failing)) {
+        if (disagrees(candidate, smaller)) {
+          failing = smaller;
+          progress = true;
+          break;
+        }
+      }
+    }
+    return failing;
+  }
+
+  /**
+   * Returns every case that is one step simpler than {@code from}, simplest steps first.
+   */
+  private static List<Case> simplifications(Case from) {
+    List<Case> cases = new ArrayList<>();
+
+    // Drop an event.
+    for (int i = 0; i < from.events.size(); i++) {
+      List<Event> events = new ArrayList<>(from.events);
+      events.remove(i);
+      cases.add(new Case(events, from.attendees, from.optionalAttendees, from.duration));
+    }
+
+    // Drop a requested attendee.
+    for (int i = 0; i < from.attendees.size(); i++) {
+      List<String> attendees = new ArrayList<>(from.attendees);
+      attendees.remove(i);
+      cases.add(new Case(from.events, attendees, from.optionalAttendees, from.duration));
+    }
+    for (int i = 0; i < from.optionalAttendees.size(); i++) {
+      List<String> optionalAttendees = new ArrayList<>(from.optionalAttendees);
+      optionalAttendees.remove(i);
+      cases.add(new Case(from.events, from.attendees, optionalAttendees, from.duration));
+    }
+
+    // Drop an attendee from an event, or cut an event in half.
+    for (int i = 0; i < from.events.size(); i++) {
+      Event event = from.events.get(i);
+      for (String person : event.getAttendees()) {
+        List<String> attendees = new ArrayList<>(event.getAttendees());
+        attendees.remove(person);
+        cases.add(replaceEvent(from, i, new Event(event.getTitle(), event.getWhen(), attendees)));
+      }
+
+      TimeRange when = event.getWhen();
+      if (when.duration() > 1) {
+        int middle = when.start() + when.duration() / 2;
+        cases.add(replaceEvent(from, i, new Event(event.getTitle(),
+            TimeRange.fromStartEnd(when.start(), middle, false), event.getAttendees())));
+        cases.add(replaceEvent(from, i, new Event(event.getTitle(),
+            TimeRange.fromStartEnd(middle, when.end(), false), event.getAttendees())));
+      }
+    }
+
+    // Shorten the meeting.
+    if (from.duration > 1) {
+      cases.add(new Case(from.events, from.attendees, from.optionalAttendees, 1));
+      cases.add(new Case(from.events, from.attendees, from.optionalAttendees, from.duration / 2));
+    }
+    return cases;
+  }
+
+  private static Case replaceEvent(Case from, int index, Event event) {
+    List<Event> events = new ArrayList<>(from.events);
+    events.set(index, event);
+    return new Case(events, from.attendees, from.optionalAttendees, from.duration);
+  }
+
+  private boolean disagrees(MeetingEngines.Engine candidate, Case tested) {
+    return !answer(reference, tested).equals(answer(candidate, tested));
+  }
+
+  private static List<TimeRange> answer(MeetingEngines.Engine engine, Case tested) {
+    try {
+      return MeetingEngines.normalize(engine.prepare(tested.events).query(tested.request()));
+    } catch (RuntimeException e) {
+      // A crash counts as an answer of its own, so it gets shrunk and reported like any other
+      // mismatch.
+      return Collections.singletonList(null);
+    }
+  }
+
+  private static int randomMinute(Random random) {
+    // Favour the edges of the day, where off-by-one mistakes hide.
+    switch (random.nextInt(8)) {
+      case 0:
+        return 0;
+      case 1:
+        return MINUTES_PER_DAY - 1 - random.nextInt(2);
+      default:
+        return random.nextInt(MINUTES_PER_DAY);
+    }
+  }
+
+  private static List<String> pickPeople(Random random, int people, int count) {
+    List<String> pool = new ArrayList<>(Arrays.asList(PEOPLE).subList(0, people));
+    Collections.shuffle(pool, random);
+    return new ArrayList<>(pool.subList(0, Math.min(count, people)));
+  }
+
+  public static void main(String[] args) {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+    long trials = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+
+    Mismatch mismatch = new DifferentialHarness(MeetingEngines.REFERENCE,
+        MeetingEngines.candidates()).run(seed, trials);
+    if (mismatch != null) {
+      System.out.println(mismatch);
+      System.exit(1);
+    }
+    System.out.printf("All %d engines matched the reference on %d cases.%n",
+        MeetingEngines.candidates().size(), trials);
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures query throughput against an {@link EventStore} while one thread keeps adding and
+ * removing events. Queries read the store's published snapshot without locking, so their
+ * throughput should grow with the number of reader threads, which can be changed with
+ * {@code -tg 1,N}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventChurnBenchmark {
+  // A power of two, so the next request or event can be picked with a mask.
+  private static final int REQUESTS = 1024;
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"200"})
+  public int people;
+
+  @Param({"100000"})
+  public int events;
+
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+  private File directory;
+  private EventStore store;
+  private Event[] churn;
+  private MeetingRequest[] requests;
+  private int nextEvent = 0;
+
+  @Setup
+  public void setUp() throws IOException {
+    CalendarGenerator generator = new CalendarGenerator(seed, people, events, 3, 3, 0.34, 0.5);
+    List<Event> calendar = generator.events();
+    directory = Files.createTempDirectory("event-churn-benchmark").toFile();
+    store = new EventStore(directory);
+    for (Event event : calendar) {
+      store.add(event);
+    }
+
+    // The writer removes and re-adds the same events, so the calendar keeps its size.
+    churn = calendar.subList(0, REQUESTS).toArray(new Event[0]);
+    requests = generator.requests(REQUESTS, 30).toArray(new MeetingRequest[0]);
+  }
+
+  @TearDown
+  public void tearDown() {
+    store.close();
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @State(Scope.Thread)
+  public static class Reader {
+    int next = 0;
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(1)
+  public boolean write() throws IOException {
+    Event event = churn[nextEvent];
+    nextEvent = (nextEvent + 1) & (REQUESTS - 1);
+    boolean removed = store.remove(event);
+    store.add(event);
+    return removed;
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(3)
+  public Collection<TimeRange> query(Reader reader) {
+    reader.next = (reader.next + 1) & (REQUESTS - 1);
+    return findMeetingQuery.query(store.getIndex(), requests[reader.next]);
+  }
+}
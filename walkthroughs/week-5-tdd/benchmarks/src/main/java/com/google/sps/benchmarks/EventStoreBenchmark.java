@@ -0,0 +1,89 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to open an {@link EventStore} holding a synthetic calendar, either
+ * from the raw log or from a compacted snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EventStoreBenchmark {
+  @Param({"42"})
+  public long seed;
+
+  @Param({"10000"})
+  public int people;
+
+  @Param({"1000000"})
+  public int events;
+
+  @Param({"false", "true"})
+  public boolean snapshot;
+
+  private File directory;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("event-store-benchmark").toFile();
+    EventStore store = new EventStore(directory);
+    for (Event event : new CalendarGenerator(seed, people, events, 3, 3, 0, 1).events()) {
+      store.add(event);
+    }
+    if (snapshot) {
+      store.snapshot();
+    }
+    store.close();
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  public int replay() throws IOException {
+    EventStore store = new EventStore(directory);
+    int size = store.size();
+    store.close();
+    return size;
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.BitmapMeetingQuery;
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.QueryTrace;
+import com.google.sps.TimeRange;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many meeting queries each engine answers per second on a synthetic calendar. Each
+ * invocation answers the next request from a fixed, pre-generated list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FindMeetingQueryBenchmark {
+  // A power of two, so the next request can be picked with a mask.
+  private static final int REQUESTS = 1024;
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"200"})
+  public int people;
+
+  @Param({"1000", "100000"})
+  public int events;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"3"})
+  public int attendeesPerRequest;
+
+  @Param({"0.34"})
+  public double optionalRatio;
+
+  @Param({"0.5"})
+  public double overlapDensity;
+
+  @Param({"30"})
+  public long duration;
+
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+  private List<Event> calendar;
+  private EventIndex eventIndex;
+  private BitmapMeetingQuery bitmapMeetingQuery;
+  private MeetingRequest[] requests;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(seed, people, events, attendeesPerEvent,
+        attendeesPerRequest, optionalRatio, overlapDensity);
+    calendar = generator.events();
+    eventIndex = new EventIndex(calendar);
+    bitmapMeetingQuery = new BitmapMeetingQuery(calendar);
+    requests = generator.requests(REQUESTS, duration).toArray(new MeetingRequest[0]);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryAllEvents() {
+    return findMeetingQuery.query(calendar, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryAllEventsTraced() {
+    return findMeetingQuery.query(calendar, nextRequest(), new QueryTrace());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryEventIndex() {
+    return findMeetingQuery.query(eventIndex, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryFirstSlot() {
+    return findMeetingQuery.firstN(eventIndex, nextRequest(), 1);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryBitmap() {
+    return bitmapMeetingQuery.query(nextRequest());
+  }
+
+  private MeetingRequest nextRequest() {
+    next = (next + 1) & (REQUESTS - 1);
+    return requests[next];
+  }
+}
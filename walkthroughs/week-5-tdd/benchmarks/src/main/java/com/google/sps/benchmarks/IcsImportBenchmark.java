@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.IcsImporter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to import a synthetic {@code .ics} export into an empty
+ * {@link EventStore}, on one thread or several.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class IcsImportBenchmark {
+  private static final LocalDate DAY = LocalDate.of(2020, 6, 1);
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"10000"})
+  public int people;
+
+  @Param({"500000"})
+  public int events;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  @Param({"10000", "100000"})
+  public int batchSize;
+
+  private File export;
+  private File directory;
+
+  @Setup(Level.Trial)
+  public void writeExport() throws IOException {
+    export = File.createTempFile("ics-import-benchmark", ".ics");
+    try (Writer out = new BufferedWriter(Files.newBufferedWriter(export.toPath(),
+        StandardCharsets.UTF_8))) {
+      out.write("BEGIN:VCALENDAR\r\nVERSION:2.0\r\n");
+      for (Event event : new CalendarGenerator(seed, people, events, 3, 3, 0, 1).events()) {
+        int start = event.getWhen().start();
+        out.write("BEGIN:VEVENT\r\nSUMMARY:" + event.getTitle() + "\r\n");
+        out.write(String.format("DTSTART:20200601T%02d%02d00Z\r\n", start / 60, start % 60));
+        out.write("DURATION:PT" + event.getWhen().duration() + "M\r\n");
+        for (String person : event.getAttendees()) {
+          out.write("ATTENDEE;CN=" + person + ";PARTSTAT=ACCEPTED:mailto:"
+              + person.replace(' ', '.') + "@example.com\r\n");
+        }
+        out.write("END:VEVENT\r\n");
+      }
+      out.write("END:VCALENDAR\r\n");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteExport() {
+    export.delete();
+  }
+
+  @Setup(Level.Invocation)
+  public void createStore() throws IOException {
+    directory = Files.createTempDirectory("ics-import-benchmark").toFile();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteStore() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  public long importFile() throws IOException {
+    EventStore store = new EventStore(directory);
+    long added = new IcsImporter(store, DAY, ZoneOffset.UTC, batchSize).importFile(export, threads);
+    store.close();
+    return added;
+  }
+}
@@ -0,0 +1,257 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.BitmapMeetingQuery;
+import com.google.sps.EpochRange;
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.HorizonIndex;
+import com.google.sps.MeetingQueryCache;
+import com.google.sps.MeetingRequest;
+import com.google.sps.QueryTrace;
+import com.google.sps.Recurrence;
+import com.google.sps.RecurringEvent;
+import com.google.sps.RoomSearch;
+import com.google.sps.RoomSlot;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The meeting query engines that the differential harness and the regression check compare. The
+ * reference is {@link FindMeetingQuery#query(Collection, MeetingRequest)}, which reads a plain list
+ * of events. Every other engine must return exactly the same time ranges.
+ */
+public final class MeetingEngines {
+  /**
+   * An engine that can be set up once over a calendar and then asked many queries.
+   */
+  public interface Engine {
+    /** Does any indexing of {@code events} up front and returns the engine's query function. */
+    Query prepare(Collection<Event> events);
+  }
+
+  /**
+   * Answers meeting requests over one calendar.
+   */
+  public interface Query {
+    Collection<TimeRange> query(MeetingRequest request);
+  }
+
+  // The day the horizon engine is asked about, in days since the epoch. Its recurring events
+  // start on earlier days.
+  private static final long HORIZON_DAY = 20000;
+
+  // The rooms the room search engine searches. The booked room is busy all day, so only the free
+  // room's slots are answers.
+  private static final String FREE_ROOM = "Room (free)";
+  private static final String BOOKED_ROOM = "Room (booked)";
+
+  /** The engine every other engine is checked against. */
+  public static final Engine REFERENCE = new Engine() {
+    @Override
+    public Query prepare(final Collection<Event> events) {
+      final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+      return new Query() {
+        @Override
+        public Collection<TimeRange> query(MeetingRequest request) {
+          return findMeetingQuery.query(events, request);
+        }
+      };
+    }
+  };
+
+  private MeetingEngines() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns every candidate engine by name, in a fixed order.
+   */
+  public static Map<String, Engine> candidates() {
+    Map<String, Engine> engines = new LinkedHashMap<>();
+
+    engines.put("eventIndex", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        final EventIndex index = new EventIndex(events);
+        final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            return findMeetingQuery.query(index, request);
+          }
+        };
+      }
+    });
+
+    engines.put("iterator", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        final EventIndex index = new EventIndex(events);
+        final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            return findMeetingQuery.firstN(index, request, Integer.MAX_VALUE);
+          }
+        };
+      }
+    });
+
+    engines.put("bitmap", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        final BitmapMeetingQuery bitmapMeetingQuery = new BitmapMeetingQuery(events);
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            return bitmapMeetingQuery.query(request);
+          }
+        };
+      }
+    });
+
+    engines.put("cache", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        final MeetingQueryCache cache = new MeetingQueryCache(new EventIndex(events), 1024);
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            return cache.query(request);
+          }
+        };
+      }
+    });
+
+    engines.put("traced", new Engine() {
+      @Override
+      public Query prepare(final Collection<Event> events) {
+        final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            return findMeetingQuery.query(events, request, new QueryTrace());
+          }
+        };
+      }
+    });
+
+    engines.put("horizon", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        final HorizonIndex index = newHorizonIndex(events);
+        final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+        final EpochRange day = EpochRange.onDay(HORIZON_DAY, TimeRange.WHOLE_DAY);
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            List<TimeRange> answer = new ArrayList<>();
+            for (EpochRange range : findMeetingQuery.query(index, request, day)) {
+              answer.add(TimeRange.fromStartEnd((int) (range.start() - day.start()),
+                  (int) (range.end() - day.start()), false));
+            }
+            return answer;
+          }
+        };
+      }
+    });
+
+    engines.put("roomSearch", new Engine() {
+      @Override
+      public Query prepare(Collection<Event> events) {
+        List<Event> booked = new ArrayList<>(events);
+        booked.add(new Event("Booking", TimeRange.WHOLE_DAY, Arrays.asList(BOOKED_ROOM)));
+        final RoomSearch roomSearch =
+            new RoomSearch(booked, Arrays.asList(BOOKED_ROOM, FREE_ROOM));
+        return new Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            List<TimeRange> answer = new ArrayList<>();
+            for (RoomSlot slot : roomSearch.query(request)) {
+              answer.add(slot.getWhen());
+            }
+            return answer;
+          }
+        };
+      }
+    });
+
+    return Collections.unmodifiableMap(engines);
+  }
+
+  /**
+   * Returns a horizon index whose busy time on HORIZON_DAY matches {@code events}. Three in four
+   * events are stored as recurring events that started on an earlier day, each with a decoy that
+   * has no occurrence on the day, so queries go through the recurring event expansion.
+   */
+  private static HorizonIndex newHorizonIndex(Collection<Event> events) {
+    HorizonIndex index = new HorizonIndex();
+    long dayStart = HORIZON_DAY * EpochRange.MINUTES_PER_DAY;
+    int i = 0;
+    for (Event event : events) {
+      switch (i % 4) {
+        case 0:
+          index.add(event, HORIZON_DAY);
+          break;
+        case 1:
+          // Daily since a few days ago, next to a weekly event that skips the day.
+          index.add(recurring(event, HORIZON_DAY - 1 - i % 5,
+              new Recurrence(Recurrence.Frequency.DAILY, 1)));
+          index.add(recurring(event, HORIZON_DAY - 3,
+              new Recurrence(Recurrence.Frequency.WEEKLY, 1)));
+          break;
+        case 2:
+          // Every other week, next to a series that ended the day before.
+          index.add(recurring(event, HORIZON_DAY - 14,
+              new Recurrence(Recurrence.Frequency.WEEKLY, 2)));
+          index.add(recurring(event, HORIZON_DAY - 5, new Recurrence(Recurrence.Frequency.DAILY, 1,
+              5, Recurrence.NO_UNTIL, Collections.<Long>emptyList())));
+          break;
+        default:
+          // Ten days that include the day, next to a daily event cancelled on the day.
+          index.add(recurring(event, HORIZON_DAY - 3, new Recurrence(Recurrence.Frequency.DAILY, 1,
+              10, Recurrence.NO_UNTIL, Collections.<Long>emptyList())));
+          index.add(recurring(event, HORIZON_DAY - 2, new Recurrence(Recurrence.Frequency.DAILY, 1,
+              Recurrence.NO_COUNT, Recurrence.NO_UNTIL,
+              Arrays.asList(dayStart + event.getWhen().start()))));
+          break;
+      }
+      i++;
+    }
+    return index;
+  }
+
+  private static RecurringEvent recurring(Event event, long firstDay, Recurrence recurrence) {
+    return new RecurringEvent(event.getTitle(), EpochRange.onDay(firstDay, event.getWhen()),
+        event.getAttendees(), recurrence);
+  }
+
+  /**
+   * Returns the answer as a list, so answers from different engines can be compared with
+   * {@code equals} whatever collection type they came in.
+   */
+  static List<TimeRange> normalize(Collection<TimeRange> answer) {
+    return new ArrayList<TimeRange>(answer);
+  }
+}
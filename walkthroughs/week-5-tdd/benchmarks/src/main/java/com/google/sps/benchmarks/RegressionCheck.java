@@ -0,0 +1,286 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.MeetingRequest;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Measures the per-query latency and allocation of every meeting engine on a seeded calendar, and
+ * compares each candidate with a recorded baseline. Machines differ in speed, so candidates are
+ * measured relative to {@link MeetingEngines#REFERENCE} run in the same process, and the baseline
+ * holds those ratios. A candidate fails if its ratio grows past the baseline by more than the
+ * tolerance.
+ *
+ * <p>To measure the current code and write a new baseline, run:
+ *
+ * <pre>java -cp target/benchmarks.jar com.google.sps.benchmarks.RegressionCheck \
+ *     src/test/resources/regression-baseline.properties
+ * </pre>
+ */
+public final class RegressionCheck {
+  private static final String REFERENCE = "reference";
+
+  /**
+   * What one engine costs per query.
+   */
+  public static final class Result {
+    public final long medianNanos;
+    public final long p99Nanos;
+    public final double bytesPerQuery;
+
+    Result(long medianNanos, long p99Nanos, double bytesPerQuery) {
+      this.medianNanos = medianNanos;
+      this.p99Nanos = p99Nanos;
+      this.bytesPerQuery = bytesPerQuery;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("median %d ns, p99 %d ns, %.0f bytes/query", medianNanos, p99Nanos,
+          bytesPerQuery);
+    }
+  }
+
+  /** The latency tolerance used when none is given. */
+  public static final double DEFAULT_LATENCY_TOLERANCE = 0.25;
+
+  /** The allocation tolerance used when none is given. */
+  public static final double DEFAULT_ALLOCATION_TOLERANCE = 0.10;
+
+  private final List<Event> events;
+  private final MeetingRequest[] requests;
+  private final int warmupRounds;
+  private final int rounds;
+
+  /**
+   * Creates a check over a calendar from {@link CalendarGenerator}.
+   *
+   * @param seed The seed of the calendar and requests.
+   * @param events How many events the calendar has.
+   * @param requests How many requests each round asks.
+   * @param warmupRounds How many rounds to run before measuring, so the JIT has settled.
+   * @param rounds How many rounds to measure.
+   */
+  public RegressionCheck(long seed, int events, int requests, int warmupRounds, int rounds) {
+    CalendarGenerator generator = new CalendarGenerator(seed, 200, events, 3, 3, 0.34, 0.5);
+    this.events = generator.events();
+    this.requests = generator.requests(requests, 30).toArray(new MeetingRequest[0]);
+    this.warmupRounds = warmupRounds;
+    this.rounds = rounds;
+  }
+
+  /**
+   * Returns the check that the recorded baseline was measured with. Ratios depend on the size of
+   * the calendar, so a baseline is only comparable with this same check.
+   */
+  public static RegressionCheck standard() {
+    return new RegressionCheck(42, 5000, 512, 3, 5);
+  }
+
+  /**
+   * Measures the reference, under the name {@code reference}, and every candidate.
+   */
+  public Map<String, Result> measure() {
+    Map<String, MeetingEngines.Query> queries = new LinkedHashMap<>();
+    queries.put(REFERENCE, MeetingEngines.REFERENCE.prepare(events));
+    for (Map.Entry<String, MeetingEngines.Engine> entry : MeetingEngines.candidates().entrySet()) {
+      queries.put(entry.getKey(), entry.getValue().prepare(events));
+    }
+
+    for (int round = 0; round < warmupRounds; round++) {
+      for (MeetingEngines.Query query : queries.values()) {
+        for (MeetingRequest request : requests) {
+          query.query(request);
+        }
+      }
+    }
+
+    // Run the engines in turn within each round, so they all see the same background noise.
+    Map<String, long[]> latencies = new LinkedHashMap<>();
+    Map<String, long[]> allocations = new LinkedHashMap<>();
+    for (String name : queries.keySet()) {
+      latencies.put(name, new long[rounds * requests.length]);
+      allocations.put(name, new long[rounds]);
+    }
+    for (int round = 0; round < rounds; round++) {
+      for (Map.Entry<String, MeetingEngines.Query> entry : queries.entrySet()) {
+        long[] nanos = latencies.get(entry.getKey());
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < requests.length; i++) {
+          long start = System.nanoTime();
+          entry.getValue().query(requests[i]);
+          nanos[round * requests.length + i] = System.nanoTime() - start;
+        }
+        allocations.get(entry.getKey())[round] = allocatedBytes() - allocatedBefore;
+      }
+    }
+
+    Map<String, Result> results = new LinkedHashMap<>();
+    for (String name : queries.keySet()) {
+      long[] nanos = latencies.get(name);
+      Arrays.sort(nanos);
+      long[] bytes = allocations.get(name);
+      Arrays.sort(bytes);
+      results.put(name, new Result(nanos[nanos.length / 2], nanos[nanos.length * 99 / 100],
+          (double) bytes[bytes.length / 2] / requests.length));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the ratios of each candidate to the reference, as a baseline to check later runs
+   * against.
+   */
+  public static Properties toBaseline(Map<String, Result> results) {
+    Result reference = results.get(REFERENCE);
+    Properties baseline = new Properties();
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      if (entry.getKey().equals(REFERENCE)) {
+        continue;
+      }
+      baseline.setProperty(entry.getKey() + ".latencyRatio",
+          String.format("%.4f", latencyRatio(entry.getValue(), reference)));
+      baseline.setProperty(entry.getKey() + ".allocationRatio",
+          String.format("%.4f", allocationRatio(entry.getValue(), reference)));
+    }
+    return baseline;
+  }
+
+  /**
+   * Returns a description of every candidate whose latency or allocation ratio grew past its
+   * baseline by more than the given tolerance, such as 0.25 for 25%. A candidate without a
+   * baseline fails too, since it could otherwise regress unnoticed; record one with
+   * {@code --update}.
+   */
+  public static List<String> findRegressions(Map<String, Result> results, Properties baseline,
+                                             double latencyTolerance,
+                                             double allocationTolerance) {
+    Result reference = results.get(REFERENCE);
+    List<String> regressions = new ArrayList<>();
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      String name = entry.getKey();
+      if (name.equals(REFERENCE)) {
+        continue;
+      }
+      checkRatio(regressions, name + ".latencyRatio", latencyRatio(entry.getValue(), reference),
+          baseline, latencyTolerance);
+      checkRatio(regressions, name + ".allocationRatio",
+          allocationRatio(entry.getValue(), reference), baseline, allocationTolerance);
+    }
+    return regressions;
+  }
+
+  private static void checkRatio(List<String> regressions, String key, double ratio,
+                                 Properties baseline, double tolerance) {
+    String recorded = baseline.getProperty(key);
+    if (recorded == null) {
+      regressions.add(key + " has no baseline");
+      return;
+    }
+
+    double limit = Double.parseDouble(recorded) * (1 + tolerance);
+    if (ratio > limit) {
+      regressions.add(String.format("%s is %.4f, above the baseline of %s plus %.0f%%", key,
+          ratio, recorded, tolerance * 100));
+    }
+  }
+
+  private static double latencyRatio(Result candidate, Result reference) {
+    return (double) Math.max(1, candidate.medianNanos) / Math.max(1, reference.medianNanos);
+  }
+
+  private static double allocationRatio(Result candidate, Result reference) {
+    // Add a byte to both sides so an engine that allocates nothing doesn't divide by zero.
+    return (candidate.bytesPerQuery + 1) / (reference.bytesPerQuery + 1);
+  }
+
+  /**
+   * Loads a baseline written by {@link #main}.
+   */
+  public static Properties loadBaseline(InputStream in) throws IOException {
+    Properties baseline = new Properties();
+    baseline.load(in);
+    return baseline;
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread so far, or 0 if the JVM can't tell.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  /**
+   * Prints the cost of every engine. If a file is given, checks against the baseline in it, or
+   * writes a new baseline there if it doesn't exist yet or {@code --update} is also given.
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, Result> results = standard().measure();
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      System.out.printf("%-12s %s%n", entry.getKey(), entry.getValue());
+    }
+    if (args.length == 0) {
+      return;
+    }
+
+    File file = new File(args[0]);
+    boolean update = args.length > 1 && args[1].equals("--update");
+    if (!file.exists() || update) {
+      // Write the keys in order, so that baselines diff cleanly.
+      Properties baseline = toBaseline(results);
+      try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+        out.println("# Candidate cost relative to the reference engine, from RegressionCheck.");
+        for (String key : new TreeSet<>(baseline.stringPropertyNames())) {
+          out.println(key + "=" + baseline.getProperty(key));
+        }
+      }
+      System.out.println("Wrote " + file);
+      return;
+    }
+
+    Properties baseline;
+    try (InputStream in = new FileInputStream(file)) {
+      baseline = loadBaseline(in);
+    }
+    List<String> regressions = findRegressions(results, baseline, DEFAULT_LATENCY_TOLERANCE,
+        DEFAULT_ALLOCATION_TOLERANCE);
+    for (String regression : regressions) {
+      System.out.println(regression);
+    }
+    if (!regressions.isEmpty()) {
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.RoomSearch;
+import com.google.sps.RoomSlot;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures finding a meeting time and a free room together, once with {@link RoomSearch} and once
+ * by running {@link FindMeetingQuery} for every room with the room added as an attendee.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RoomSearchBenchmark {
+  // A power of two, so the next request can be picked with a mask.
+  private static final int REQUESTS = 256;
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"2000"})
+  public int rooms;
+
+  @Param({"4"})
+  public int bookingsPerRoom;
+
+  @Param({"60"})
+  public long duration;
+
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+  private List<String> roomNames;
+  private EventIndex eventIndex;
+  private RoomSearch roomSearch;
+  private MeetingRequest[] requests;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(seed, 200, 1000, 3, 3, 0.34, 0.5);
+    List<Event> calendar = new ArrayList<>(generator.events());
+
+    // Book each room for a few meetings of up to two hours.
+    Random random = new Random(seed);
+    roomNames = new ArrayList<>(rooms);
+    for (int r = 0; r < rooms; r++) {
+      String room = "Room " + r;
+      roomNames.add(room);
+      for (int b = 0; b < bookingsPerRoom; b++) {
+        int length = 15 + random.nextInt(106);
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - length);
+        calendar.add(new Event("Booking " + r + "-" + b,
+            TimeRange.fromStartDuration(start, length), Arrays.asList(room)));
+      }
+    }
+
+    eventIndex = new EventIndex(calendar);
+    roomSearch = new RoomSearch(calendar, roomNames);
+    requests = generator.requests(REQUESTS, duration).toArray(new MeetingRequest[0]);
+  }
+
+  @Benchmark
+  public List<RoomSlot> roomSearch() {
+    return roomSearch.query(nextRequest());
+  }
+
+  @Benchmark
+  public List<RoomSlot> queryPerRoom() {
+    MeetingRequest request = nextRequest();
+    List<RoomSlot> slots = new ArrayList<>();
+    for (String room : roomNames) {
+      List<String> attendees = new ArrayList<>(request.getAttendees());
+      attendees.add(room);
+      MeetingRequest withRoom = new MeetingRequest(attendees, request.getDuration());
+      for (String person : request.getOptionalAttendees()) {
+        withRoom.addOptionalAttendee(person);
+      }
+      for (TimeRange range : findMeetingQuery.query(eventIndex, withRoom)) {
+        slots.add(new RoomSlot(range, room));
+      }
+    }
+    return slots;
+  }
+
+  private MeetingRequest nextRequest() {
+    next = (next + 1) & (REQUESTS - 1);
+    return requests[next];
+  }
+}
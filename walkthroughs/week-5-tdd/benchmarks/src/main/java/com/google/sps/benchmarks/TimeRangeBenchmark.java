@@ -0,0 +1,81 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.TimeRange;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of comparing two {@link TimeRange}s. Each invocation compares the next pair
+ * from a fixed, pre-generated list of random ranges.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TimeRangeBenchmark {
+  // A power of two, so the next range can be picked with a mask.
+  private static final int RANGES = 4096;
+
+  @Param({"42"})
+  public long seed;
+
+  private final TimeRange[] ranges = new TimeRange[RANGES];
+  private final int[] points = new int[RANGES];
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(seed);
+    int minutes = TimeRange.WHOLE_DAY.duration();
+    for (int i = 0; i < RANGES; i++) {
+      int start = random.nextInt(minutes);
+      ranges[i] = TimeRange.fromStartEnd(start, start + random.nextInt(minutes - start + 1), false);
+      points[i] = random.nextInt(minutes);
+    }
+  }
+
+  @Benchmark
+  public boolean overlaps() {
+    next = (next + 1) & (RANGES - 1);
+    return ranges[next].overlaps(ranges[(next + 1) & (RANGES - 1)]);
+  }
+
+  @Benchmark
+  public boolean containsRange() {
+    next = (next + 1) & (RANGES - 1);
+    return ranges[next].contains(ranges[(next + 1) & (RANGES - 1)]);
+  }
+
+  @Benchmark
+  public boolean containsPoint() {
+    next = (next + 1) & (RANGES - 1);
+    return ranges[next].contains(points[next]);
+  }
+}
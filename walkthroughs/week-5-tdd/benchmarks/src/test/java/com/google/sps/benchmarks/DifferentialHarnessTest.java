@@ -0,0 +1,80 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks every engine against the reference. Set {@code -Ddifferential.trials} to run more cases,
+ * for example a few million before merging a new engine.
+ */
+@RunWith(JUnit4.class)
+public final class DifferentialHarnessTest {
+  private static final long SEED = Long.getLong("differential.seed", 42);
+  private static final long TRIALS = Long.getLong("differential.trials", 50000);
+
+  @Test
+  public void everyEngineMatchesTheReference() {
+    DifferentialHarness.Mismatch mismatch = new DifferentialHarness(MeetingEngines.REFERENCE,
+        MeetingEngines.candidates()).run(SEED, TRIALS);
+
+    Assert.assertNull(String.valueOf(mismatch), mismatch);
+  }
+
+  @Test
+  public void mismatchesAreShrunk() {
+    // An engine that forgets the last free range disagrees whenever there is one, so the minimal
+    // case has nothing left in it.
+    MeetingEngines.Engine broken = new MeetingEngines.Engine() {
+      @Override
+      public MeetingEngines.Query prepare(final Collection<Event> events) {
+        final MeetingEngines.Query reference = MeetingEngines.REFERENCE.prepare(events);
+        return new MeetingEngines.Query() {
+          @Override
+          public Collection<TimeRange> query(MeetingRequest request) {
+            List<TimeRange> answer = new ArrayList<>(reference.query(request));
+            if (!answer.isEmpty()) {
+              answer.remove(answer.size() - 1);
+            }
+            return answer;
+          }
+        };
+      }
+    };
+
+    Map<String, MeetingEngines.Engine> candidates =
+        Collections.singletonMap("broken", broken);
+    DifferentialHarness.Mismatch mismatch =
+        new DifferentialHarness(MeetingEngines.REFERENCE, candidates).run(SEED, 1000);
+
+    Assert.assertNotNull(mismatch);
+    Assert.assertEquals("broken", mismatch.engine);
+    Assert.assertTrue(mismatch.minimal.events.isEmpty());
+    Assert.assertTrue(mismatch.minimal.attendees.isEmpty());
+    Assert.assertTrue(mismatch.minimal.optionalAttendees.isEmpty());
+    Assert.assertEquals(1, mismatch.minimal.duration);
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Fails the build if a candidate engine got slower or allocates more, relative to the reference,
+ * than the recorded baseline allows. Timing on a shared machine is noisy, so the latency tolerance
+ * can be loosened with {@code -Dregression.latencyTolerance}, and the whole check skipped with
+ * {@code -Dregression.skip=true}.
+ */
+@RunWith(JUnit4.class)
+public final class RegressionCheckTest {
+  @Test
+  public void noEngineRegressedPastItsBaseline() throws IOException {
+    if (Boolean.getBoolean("regression.skip")) {
+      return;
+    }
+
+    Properties baseline;
+    try (InputStream in = getClass().getResourceAsStream("/regression-baseline.properties")) {
+      baseline = RegressionCheck.loadBaseline(in);
+    }
+
+    Map<String, RegressionCheck.Result> results = RegressionCheck.standard().measure();
+    List<String> regressions = RegressionCheck.findRegressions(results, baseline,
+        Double.parseDouble(System.getProperty("regression.latencyTolerance",
+            String.valueOf(RegressionCheck.DEFAULT_LATENCY_TOLERANCE))),
+        Double.parseDouble(System.getProperty("regression.allocationTolerance",
+            String.valueOf(RegressionCheck.DEFAULT_ALLOCATION_TOLERANCE))));
+
+    Assert.assertTrue(results + "\n" + regressions, regressions.isEmpty());
+  }
+
+  @Test
+  public void candidateWithoutBaselineFails() {
+    Map<String, RegressionCheck.Result> results = new LinkedHashMap<>();
+    results.put("reference", new RegressionCheck.Result(100, 200, 1000));
+    results.put("unrecorded", new RegressionCheck.Result(10, 20, 100));
+
+    List<String> regressions = RegressionCheck.findRegressions(results, new Properties(),
+        RegressionCheck.DEFAULT_LATENCY_TOLERANCE, RegressionCheck.DEFAULT_ALLOCATION_TOLERANCE);
+
+    Assert.assertEquals(2, regressions.size());
+    Assert.assertTrue(regressions.get(0).startsWith("unrecorded.latencyRatio"));
+    Assert.assertTrue(regressions.get(1).startsWith("unrecorded.allocationRatio"));
+  }
+}
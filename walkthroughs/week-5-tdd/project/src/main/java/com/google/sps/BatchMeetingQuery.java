@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates many meeting requests in parallel on a fork-join pool. Every request in a batch is
+ * answered against the same {@link EventIndex}, which must not be modified while the batch runs.
+ */
+public final class BatchMeetingQuery {
+  // Batches smaller than this are answered on the calling thread without forking.
+  private static final int SEQUENTIAL_THRESHOLD = 4;
+
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a batch query that runs on the common fork-join pool.
+   */
+  public BatchMeetingQuery() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a batch query that runs on the given pool.
+   *
+   * @param pool The pool to evaluate requests on. Must be non-null.
+   */
+  public BatchMeetingQuery(ForkJoinPool pool) {
+    if (pool == null) {
+      throw new IllegalArgumentException("pool cannot be null");
+    }
+
+    this.pool = pool;
+  }
+
+  /**
+   * Answers every request against {@code index}. The results are in the same order as
+   * {@code requests}.
+   */
+  public List<Result> query(EventIndex index, List<MeetingRequest> requests) {
+    Result[] results = new Result[requests.size()];
+    pool.invoke(new QueryTask(index, requests, results, 0, results.length));
+    return Arrays.asList(results);
+  }
+
+  /**
+   * The answer to one request in a batch.
+   */
+  public static final class Result {
+    private final Collection<TimeRange> timeRanges;
+    private final long elapsedNanos;
+
+    private Result(Collection<TimeRange> timeRanges, long elapsedNanos) {
+      this.timeRanges = timeRanges;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the available time ranges for the request.
+     */
+    public Collection<TimeRange> getTimeRanges() {
+      return timeRanges;
+    }
+
+    /**
+     * Returns how long the request took to answer, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+  }
+
+  /**
+   * Answers the requests in {@code [from, to)}, splitting the range in half until it is small.
+   */
+  private final class QueryTask extends RecursiveAction {
+    private final EventIndex index;
+    private final List<MeetingRequest> requests;
+    private final Result[] results;
+    private final int from;
+    private final int to;
+
+    QueryTask(EventIndex index, List<MeetingRequest> requests, Result[] results, int from, int to) {
+      this.index = index;
+      this.requests = requests;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          long start = System.nanoTime();
+          Collection<TimeRange> timeRanges = findMeetingQuery.query(index, requests.get(i));
+          results[i] = new Result(timeRanges, System.nanoTime() - start);
+        }
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new QueryTask(index, requests, results, from, middle),
+          new QueryTask(index, requests, results, middle, to));
+    }
+  }
+}
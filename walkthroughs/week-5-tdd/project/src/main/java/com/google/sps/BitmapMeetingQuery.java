@@ -0,0 +1,211 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds meeting times the same way as {@link FindMeetingQuery}, but keeps each attendee's busy time
+ * as a {@link MinuteMask}. A query ORs together the masks of the requested attendees and scans the
+ * result for free runs, so apart from the returned ranges it does not allocate.
+ *
+ * <p>An engine over a collection of events builds every attendee's mask up front. An engine over
+ * an {@link EventIndex} snapshot builds each attendee's mask from their busy time the first time
+ * a query asks for them, so creating one for every new snapshot is cheap.
+ */
+public final class BitmapMeetingQuery {
+  // Scratch masks reused by every query made on the same thread.
+  private static final ThreadLocal<long[][]> SCRATCH = new ThreadLocal<long[][]>() {
+    @Override
+    protected long[][] initialValue() {
+      return new long[][] {MinuteMask.create(), MinuteMask.create()};
+    }
+  };
+
+  // The snapshot to read busy time from, or null if every mask was built from a collection.
+  private final EventIndex index;
+  private final Map<String, long[]> busyMasks;
+
+  /**
+   * Creates a query engine over a fixed collection of events.
+   *
+   * @param events The events to find meeting times around. Must be non-null.
+   */
+  public BitmapMeetingQuery(Collection<Event> events) {
+    this(events, Collections.<String, WorkingHours>emptyMap());
+  }
+
+  /**
+   * Creates a query engine over a fixed collection of events, where attendees are also busy
+   * outside their working hours. Each attendee's hours are folded into their busy mask once here,
+   * so queries pay nothing extra for them.
+   *
+   * @param events The events to find meeting times around. Must be non-null.
+   * @param workingHours The working hours of each attendee who has them. Must be non-null.
+   */
+  public BitmapMeetingQuery(Collection<Event> events, Map<String, WorkingHours> workingHours) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    if (workingHours == null) {
+      throw new IllegalArgumentException("workingHours cannot be null");
+    }
+
+    this.index = null;
+    this.busyMasks = new HashMap<>();
+    for (Event event : events) {
+      for (String person : event.getAttendees()) {
+        MinuteMask.setRange(getBusyMask(person), event.getWhen());
+      }
+    }
+
+    for (Map.Entry<String, WorkingHours> entry : workingHours.entrySet()) {
+      entry.getValue().addOffHours(getBusyMask(entry.getKey()));
+    }
+  }
+
+  /**
+   * Creates a query engine over a snapshot of an index. Queries only read the snapshot, so they
+   * never wait for changes to the index it was taken from.
+   *
+   * @param index The snapshot to find meeting times around. Must be non-null and read-only.
+   */
+  public BitmapMeetingQuery(EventIndex index) {
+    if (index == null) {
+      throw new IllegalArgumentException("index cannot be null");
+    }
+
+    if (!index.isReadOnly()) {
+      throw new IllegalArgumentException("index must be a snapshot");
+    }
+
+    this.index = index;
+    this.busyMasks = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the snapshot this engine reads, or null if it was created from a collection of events.
+   */
+  public EventIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the same time ranges as {@link FindMeetingQuery#query} would for the events and working
+   * hours this engine was created with.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) {
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return new ArrayList<TimeRange>();
+    }
+
+    long[][] scratch = SCRATCH.get();
+    long[] mandatory = scratch[0];
+    long[] combined = scratch[1];
+    MinuteMask.clear(mandatory);
+    MinuteMask.clear(combined);
+
+    boolean hasMandatoryEvents = orBusyMasks(mandatory, request.getAttendees());
+    boolean hasOptionalEvents = orBusyMasks(combined, request.getOptionalAttendees());
+
+    // Return with the full day if none of the events or working hours affect the requested
+    // attendees.
+    if (!hasMandatoryEvents && !hasOptionalEvents) {
+      return Arrays.asList(TimeRange.WHOLE_DAY);
+    }
+
+    // If there are no mandatory attendees, only the optional attendees' calendars matter.
+    if (request.getAttendees().isEmpty()) {
+      return freeRanges(combined, request.getDuration());
+    }
+
+    // Only use the optional attendees if doing so still leaves at least one slot.
+    MinuteMask.or(combined, mandatory);
+    if (hasOptionalEvents && MinuteMask.hasFreeRange(combined, request.getDuration())) {
+      return freeRanges(combined, request.getDuration());
+    }
+    return freeRanges(mandatory, request.getDuration());
+  }
+
+  /**
+   * Sets {@code out} to the combined busy mask of every given attendee.
+   */
+  void getBusyMask(Collection<String> attendees, long[] out) {
+    MinuteMask.clear(out);
+    orBusyMasks(out, attendees);
+  }
+
+  private long[] getBusyMask(String person) {
+    long[] mask = busyMasks.get(person);
+    if (mask == null) {
+      mask = MinuteMask.create();
+      busyMasks.put(person, mask);
+    }
+    return mask;
+  }
+
+  /**
+   * ORs the busy masks of every given attendee into {@code target}. Returns whether any of the
+   * attendees have events.
+   */
+  private boolean orBusyMasks(long[] target, Collection<String> attendees) {
+    boolean found = false;
+    for (String person : attendees) {
+      long[] mask = index == null ? busyMasks.get(person) : getIndexedBusyMask(person);
+      if (mask != null) {
+        MinuteMask.or(target, mask);
+        found = true;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Returns the busy mask of {@code person} in the snapshot, or null if they have no events. Two
+   * threads may both build a missing mask, but they build the same one.
+   */
+  private long[] getIndexedBusyMask(String person) {
+    long[] mask = busyMasks.get(person);
+    if (mask != null) {
+      return mask;
+    }
+
+    if (index.getEvents(person).isEmpty()) {
+      return null;
+    }
+
+    TimeRangeList busyTime = new TimeRangeList();
+    index.getBusyTime(Collections.singletonList(person), busyTime);
+    mask = MinuteMask.create();
+    for (int i = 0; i < busyTime.size(); i++) {
+      MinuteMask.setRange(mask, busyTime.start(i), busyTime.end(i));
+    }
+    busyMasks.put(person, mask);
+    return mask;
+  }
+
+  private static ArrayList<TimeRange> freeRanges(long[] mask, long duration) {
+    ArrayList<TimeRange> ranges = new ArrayList<TimeRange>();
+    MinuteMask.addFreeRanges(mask, duration, ranges);
+    return ranges;
+  }
+}
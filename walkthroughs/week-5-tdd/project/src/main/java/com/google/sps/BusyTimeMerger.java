@@ -0,0 +1,114 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * Combines several merged {@link TimeRangeList}s into one merged sequence of ranges with a k-way
+ * heap merge. Ranges are produced one at a time by {@link #advance}, so a caller that only needs
+ * the start of the day stops paying as soon as it stops asking.
+ */
+final class BusyTimeMerger {
+  private final TimeRangeList[] lists;
+  private final int[] positions;
+
+  // A min-heap of list indices, ordered by the start of each list's next range.
+  private final int[] heap;
+  private int heapSize;
+
+  private int start;
+  private int end;
+
+  /**
+   * Creates a merger over the first {@code count} lists of {@code lists}, none of which may be
+   * empty.
+   */
+  BusyTimeMerger(TimeRangeList[] lists, int count) {
+    this.lists = lists;
+    this.positions = new int[count];
+    this.heap = new int[count];
+    for (int i = 0; i < count; i++) {
+      heap[i] = i;
+    }
+    heapSize = count;
+    for (int i = count / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  /**
+   * Moves to the next merged range. Returns false once every range has been produced.
+   */
+  boolean advance() {
+    if (heapSize == 0) {
+      return false;
+    }
+
+    start = nextStart(heap[0]);
+    end = start;
+
+    // Keep taking the earliest range while it overlaps or touches the one being built.
+    while (heapSize > 0 && nextStart(heap[0]) <= end) {
+      int top = heap[0];
+      end = Math.max(end, lists[top].end(positions[top]));
+      positions[top]++;
+      if (positions[top] == lists[top].size()) {
+        heap[0] = heap[--heapSize];
+      }
+      if (heapSize > 0) {
+        siftDown(0);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the start of the current range.
+   */
+  int start() {
+    return start;
+  }
+
+  /**
+   * Returns the exclusive end of the current range.
+   */
+  int end() {
+    return end;
+  }
+
+  private void siftDown(int i) {
+    int list = heap[i];
+    int listStart = nextStart(list);
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      int right = child + 1;
+      if (right < heapSize && nextStart(heap[right]) < nextStart(heap[child])) {
+        child = right;
+      }
+      if (nextStart(heap[child]) >= listStart) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = list;
+  }
+
+  private int nextStart(int list) {
+    return lists[list].start(positions[list]);
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Comparator;
+
+/**
+ * Class representing a span of time that is not tied to a single day. Times are measured in
+ * minutes since the epoch, and the end of the range is always exclusive.
+ */
+public final class EpochRange {
+  public static final int MINUTES_PER_DAY = 24 * 60;
+
+  /**
+   * A comparator for sorting ranges by their start time in ascending order.
+   */
+  public static final Comparator<EpochRange> ORDER_BY_START = new Comparator<EpochRange>() {
+    @Override
+    public int compare(EpochRange a, EpochRange b) {
+      return Long.compare(a.start, b.start);
+    }
+  };
+
+  private final long start;
+  private final long end;
+
+  private EpochRange(long start, long end) {
+    if (end < start) {
+      throw new IllegalArgumentException("end cannot come before start");
+    }
+
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the start of the range in minutes since the epoch.
+   */
+  public long start() {
+    return start;
+  }
+
+  /**
+   * Returns the end of the range in minutes since the epoch. This is the closing exclusive bound.
+   */
+  public long end() {
+    return end;
+  }
+
+  /**
+   * Returns the number of minutes between the start and end.
+   */
+  public long duration() {
+    return end - start;
+  }
+
+  /**
+   * Checks if two ranges overlap. This means that at least some part of one range falls within the
+   * bounds of another range.
+   */
+  public boolean overlaps(EpochRange other) {
+    return start < other.end && other.start < end;
+  }
+
+  /**
+   * Checks if the point falls within this range.
+   */
+  public boolean contains(long point) {
+    return start <= point && point < end;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof EpochRange
+        && start == ((EpochRange) other).start && end == ((EpochRange) other).end;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(start) ^ Long.hashCode(end);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Range: [%d, %d)", start, end);
+  }
+
+  /**
+   * Creates an {@code EpochRange} from {@code start} (inclusive) to {@code end} (exclusive).
+   */
+  public static EpochRange fromStartEnd(long start, long end) {
+    return new EpochRange(start, end);
+  }
+
+  /**
+   * Creates an {@code EpochRange} starting at {@code start} with a duration equal to
+   * {@code duration}.
+   */
+  public static EpochRange fromStartDuration(long start, long duration) {
+    return new EpochRange(start, start + duration);
+  }
+
+  /**
+   * Creates an {@code EpochRange} covering {@code range} on the day {@code epochDay} days after the
+   * epoch.
+   */
+  public static EpochRange onDay(long epochDay, TimeRange range) {
+    long dayStart = epochDay * MINUTES_PER_DAY;
+    return new EpochRange(dayStart + range.start(), dayStart + range.end());
+  }
+}
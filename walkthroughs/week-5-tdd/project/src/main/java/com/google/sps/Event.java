@@ -14,9 +14,11 @@
 
 package com.google.sps;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 /**
@@ -26,7 +28,14 @@ import java.util.Set;
 public final class Event {
   private final String title;
   private final TimeRange when;
-  private final Set<String> attendees = new HashSet<>();
+  // The attendees, sorted and without duplicates. A sorted array takes far less memory than a
+  // hash set, and Gson writes it out as the same JSON array.
+  private final String[] attendees;
+
+  // The hash codes of the attendees' names, sorted. A request's attendees are matched against
+  // these first, so most events are ruled out by comparing ints, with no dictionary shared
+  // between events. Left out of the JSON.
+  private final transient int[] attendeeHashes;
 
   /**
    * Creates a new event.
@@ -50,7 +59,8 @@ public final class Event {
 
     this.title = title;
     this.when = when;
-    this.attendees.addAll(attendees);
+    this.attendees = sortedUnique(attendees);
+    this.attendeeHashes = hashAttendees(this.attendees);
   }
 
   /**
@@ -71,9 +81,74 @@ public final class Event {
    * Returns a read-only set of required attendees for this event.
    */
   public Set<String> getAttendees() {
-    // Return the attendees as an unmodifiable set so that the caller can't change our
-    // internal data.
-    return Collections.unmodifiableSet(attendees);
+    // Return a read-only view of the attendees so that the caller can't change our internal
+    // data.
+    return new AttendeeSet(attendees);
+  }
+
+  /**
+   * Returns the attendees, sorted and without duplicates, without wrapping them in a set view.
+   * The array is the event's own, so callers must not change it.
+   */
+  String[] getAttendeeArray() {
+    return attendees;
+  }
+
+  /**
+   * Returns whether any of the attendees of this event are in {@code sortedAttendees}, whose
+   * sorted hash codes are {@code sortedHashes}. Use {@link #sortAttendees} and
+   * {@link #hashAttendees} to build them once per request. The hash codes are intersected first,
+   * and names are only compared when a hash code is shared.
+   */
+  public boolean hasAnyAttendee(String[] sortedAttendees, int[] sortedHashes) {
+    int i = 0;
+    int j = 0;
+    while (i < attendeeHashes.length && j < sortedHashes.length) {
+      if (attendeeHashes[i] < sortedHashes[j]) {
+        i++;
+      } else if (attendeeHashes[i] > sortedHashes[j]) {
+        j++;
+      } else {
+        if (hasAttendeeWithHash(attendeeHashes[i], sortedAttendees)) {
+          return true;
+        }
+        i++;
+        j++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns {@code attendees} sorted and without duplicates, as {@link #hasAnyAttendee} expects.
+   */
+  public static String[] sortAttendees(Collection<String> attendees) {
+    return sortedUnique(attendees);
+  }
+
+  /**
+   * Returns the sorted hash codes of {@code attendees}, as {@link #hasAnyAttendee} expects.
+   */
+  public static int[] hashAttendees(String[] attendees) {
+    int[] hashes = new int[attendees.length];
+    for (int i = 0; i < attendees.length; i++) {
+      hashes[i] = attendees[i].hashCode();
+    }
+    Arrays.sort(hashes);
+    return hashes;
+  }
+
+  /**
+   * Returns whether one of this event's attendees whose name has hash code {@code hash} is in
+   * {@code sortedAttendees}. Different names may share a hash code, so every such name is checked.
+   */
+  private boolean hasAttendeeWithHash(int hash, String[] sortedAttendees) {
+    for (String person : attendees) {
+      if (person.hashCode() == hash && Arrays.binarySearch(sortedAttendees, person) >= 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -89,8 +164,47 @@ public final class Event {
   }
 
   private static boolean equals(Event a, Event b) {
-    // {@code attendees} must be a set for equals to work as expected. According to the {@code Set}
-    // interface documentation, equals will check for set-equality across all set implementations.
-    return a.title.equals(b.title) && a.when.equals(b.when) && a.attendees.equals(b.attendees);
+    // {@code attendees} is sorted and has no duplicates, so comparing the arrays checks for
+    // set-equality.
+    return a.title.equals(b.title) && a.when.equals(b.when)
+        && Arrays.equals(a.attendees, b.attendees);
+  }
+
+  private static String[] sortedUnique(Collection<String> attendees) {
+    String[] sorted = attendees.toArray(new String[0]);
+    Arrays.sort(sorted);
+    int unique = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (unique == 0 || !sorted[unique - 1].equals(sorted[i])) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+  }
+
+  /**
+   * A read-only set view of a sorted array of attendees.
+   */
+  private static final class AttendeeSet extends AbstractSet<String> {
+    private final String[] attendees;
+
+    AttendeeSet(String[] attendees) {
+      this.attendees = attendees;
+    }
+
+    @Override
+    public boolean contains(Object other) {
+      return other instanceof String && Arrays.binarySearch(attendees, other) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return Collections.unmodifiableList(Arrays.asList(attendees)).iterator();
+    }
+
+    @Override
+    public int size() {
+      return attendees.length;
+    }
   }
 }
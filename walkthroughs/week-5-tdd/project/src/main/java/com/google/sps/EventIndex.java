@@ -0,0 +1,487 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index from each attendee to the events they attend, sorted by start time. Looking up
+ * a handful of attendees only touches their own events, no matter how many other events are
+ * indexed. The index is not thread-safe; callers that modify it concurrently with queries must
+ * either synchronize externally or give the readers a {@link #snapshot}.
+ *
+ * <p>Each attendee's busy time is also kept as a merged {@link TimeRangeList} that is updated as
+ * events are added and removed, so a query can combine several attendees' busy time with a k-way
+ * merge instead of sorting their events again.
+ *
+ * <p>Every change bumps a version counter, and each attendee remembers the version of the last
+ * change to their calendar, so callers can tell whether anything they read has changed since.
+ *
+ * <p>The attendees are spread over a fixed number of shards. A snapshot shares every shard and
+ * calendar with the index it was taken from, and the index copies a shard or calendar the first
+ * time it changes one afterwards. Taking a snapshot is therefore cheap, and a change after it only
+ * copies one shard and the calendars of the event's attendees.
+ */
+public final class EventIndex {
+  private static final int SHARD_BITS = 6;
+  private static final int SHARDS = 1 << SHARD_BITS;
+
+  private final boolean readOnly;
+  private final Shard[] shards;
+  private int size = 0;
+  private long version = 0;
+
+  // Identifies the shards and calendars this index may change in place. Replaced by every
+  // snapshot, so that everything the snapshot shares is copied before it is changed.
+  private Object owner = new Object();
+
+  /**
+   * Creates an empty index.
+   */
+  public EventIndex() {
+    this.readOnly = false;
+    this.shards = new Shard[SHARDS];
+    for (int i = 0; i < SHARDS; i++) {
+      shards[i] = new Shard(owner, new HashMap<String, Calendar>());
+    }
+  }
+
+  /**
+   * Creates an index containing every event in {@code events}.
+   */
+  public EventIndex(Collection<Event> events) {
+    this();
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    addAll(events);
+  }
+
+  private EventIndex(EventIndex other) {
+    this.readOnly = true;
+    this.shards = other.shards.clone();
+    this.size = other.size;
+    this.version = other.version;
+    this.owner = null;
+  }
+
+  /**
+   * Returns a read-only copy of the index as it is now. The copy never changes, so any number of
+   * threads can read it without locking while this index keeps changing.
+   */
+  public EventIndex snapshot() {
+    if (readOnly) {
+      return this;
+    }
+
+    EventIndex snapshot = new EventIndex(this);
+    owner = new Object();
+    return snapshot;
+  }
+
+  /**
+   * Returns whether this index is a read-only snapshot.
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Adds an event to the calendar of each of its attendees.
+   */
+  public void add(Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+    checkWritable();
+
+    version++;
+    for (String person : event.getAttendees()) {
+      Calendar calendar = getWritableCalendar(person);
+      calendar.events.add(insertionPoint(calendar.events, event.getWhen().start()), event);
+      calendar.busyTime.insertMerged(event.getWhen().start(), event.getWhen().end());
+      calendar.version = version;
+    }
+    size++;
+  }
+
+  /**
+   * Adds every event in {@code events}, with the same result as adding them one at a time. Each
+   * attendee's new events are sorted on their own and then merged with the events and busy time
+   * they already have, which is much faster when loading a large calendar in batches.
+   */
+  public void addAll(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+    checkWritable();
+
+    // Group the new events by attendee, so each event only costs one lookup per attendee.
+    Map<String, List<Event>> added = new HashMap<>();
+    for (Event event : events) {
+      for (String person : event.getAttendeeArray()) {
+        List<Event> personEvents = added.get(person);
+        if (personEvents == null) {
+          personEvents = new ArrayList<>();
+          added.put(person, personEvents);
+        }
+        personEvents.add(event);
+      }
+    }
+
+    size += events.size();
+    version += events.size();
+    for (Map.Entry<String, List<Event>> entry : added.entrySet()) {
+      List<Event> newEvents = entry.getValue();
+      sortByStart(newEvents);
+
+      // The merge builds new lists, so a calendar shared with a snapshot is never copied first.
+      Calendar calendar = getCalendar(entry.getKey());
+      List<Event> oldEvents =
+          calendar == null ? Collections.<Event>emptyList() : calendar.events;
+      TimeRangeList oldBusyTime = calendar == null ? new TimeRangeList(0) : calendar.busyTime;
+      getWritableShard(entry.getKey()).calendars.put(entry.getKey(), new Calendar(owner,
+          mergeByStart(oldEvents, newEvents), mergeBusyTime(oldBusyTime, newEvents), version));
+    }
+  }
+
+  /**
+   * Removes an event from the calendar of each of its attendees. Returns whether the event was in
+   * the index.
+   */
+  public boolean remove(Event event) {
+    if (event == null) {
+      return false;
+    }
+    checkWritable();
+
+    boolean removed = false;
+    for (String person : event.getAttendees()) {
+      Calendar calendar = getCalendar(person);
+      int position = calendar == null ? -1 : indexOf(calendar.events, event);
+      if (position < 0) {
+        continue;
+      }
+
+      if (!removed) {
+        version++;
+        removed = true;
+      }
+      calendar = getWritableCalendar(person);
+      calendar.events.remove(position);
+      calendar.version = version;
+
+      // Other events may cover part of the removed one, so rebuild from the sorted events.
+      calendar.busyTime.clear();
+      for (Event remaining : calendar.events) {
+        calendar.busyTime.appendMerged(remaining.getWhen().start(), remaining.getWhen().end());
+      }
+    }
+
+    if (removed) {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Returns a read-only list of the events {@code person} attends, sorted by start time.
+   */
+  public List<Event> getEvents(String person) {
+    Calendar calendar = getCalendar(person);
+    if (calendar == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(calendar.events);
+  }
+
+  /**
+   * Adds every event attended by at least one of {@code attendees} to {@code out}. An event
+   * attended by several of them may be added more than once.
+   */
+  public void addEventsWithAttendees(Collection<String> attendees, Collection<Event> out) {
+    for (String person : attendees) {
+      Calendar calendar = getCalendar(person);
+      if (calendar != null) {
+        out.addAll(calendar.events);
+      }
+    }
+  }
+
+  /**
+   * Replaces the contents of {@code out} with the merged busy time of {@code attendees}. Each
+   * attendee's busy time is already merged, so they are combined with a k-way merge in
+   * O(n log k) for n busy ranges across k attendees.
+   */
+  public void getBusyTime(Collection<String> attendees, TimeRangeList out) {
+    getBusyTime(attendees, Collections.<String, WorkingHours>emptyMap(), out);
+  }
+
+  /**
+   * Replaces the contents of {@code out} with the merged busy time of {@code attendees}, counting
+   * the time outside each attendee's working hours as busy.
+   */
+  public void getBusyTime(Collection<String> attendees, Map<String, WorkingHours> workingHours,
+                          TimeRangeList out) {
+    out.clear();
+    BusyTimeMerger merger = mergeBusyTime(attendees, workingHours);
+    while (merger.advance()) {
+      out.add(merger.start(), merger.end());
+    }
+  }
+
+  /**
+   * Returns a merger that produces the merged busy time of {@code attendees} one range at a time,
+   * including the time outside their working hours.
+   */
+  BusyTimeMerger mergeBusyTime(Collection<String> attendees,
+                               Map<String, WorkingHours> workingHours) {
+    // Off hours are already merged, so they join the k-way merge as one more list per attendee.
+    TimeRangeList[] lists = new TimeRangeList[2 * attendees.size()];
+    int count = 0;
+    for (String person : attendees) {
+      Calendar calendar = getCalendar(person);
+      if (calendar != null && !calendar.busyTime.isEmpty()) {
+        lists[count++] = calendar.busyTime;
+      }
+      WorkingHours hours = workingHours.get(person);
+      if (hours != null && !hours.getOffHours().isEmpty()) {
+        lists[count++] = hours.getOffHours();
+      }
+    }
+    return new BusyTimeMerger(lists, count);
+  }
+
+  /**
+   * Returns the number of events in the index.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the version of the index, which increases every time an event is added or removed.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the version of the index when {@code person}'s calendar last changed, or 0 if it never
+   * has.
+   */
+  public long getVersion(String person) {
+    Calendar calendar = getCalendar(person);
+    return calendar == null ? 0 : calendar.version;
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("A snapshot of an index cannot be changed.");
+    }
+  }
+
+  private Calendar getCalendar(String person) {
+    return shards[shardOf(person)].calendars.get(person);
+  }
+
+  /**
+   * Returns {@code person}'s calendar, creating it if needed, after copying it and its shard if
+   * they are shared with a snapshot.
+   */
+  private Calendar getWritableCalendar(String person) {
+    Shard shard = getWritableShard(person);
+    Calendar calendar = shard.calendars.get(person);
+    if (calendar == null) {
+      calendar = new Calendar(owner, new ArrayList<Event>(), new TimeRangeList(), 0);
+      shard.calendars.put(person, calendar);
+    } else if (calendar.owner != owner) {
+      TimeRangeList busyTime = new TimeRangeList(calendar.busyTime.size());
+      busyTime.addAll(calendar.busyTime);
+      calendar = new Calendar(
+          owner, new ArrayList<Event>(calendar.events), busyTime, calendar.version);
+      shard.calendars.put(person, calendar);
+    }
+    return calendar;
+  }
+
+  /**
+   * Returns the shard that holds {@code person}'s calendar, after copying it if it is shared with
+   * a snapshot.
+   */
+  private Shard getWritableShard(String person) {
+    int shardIndex = shardOf(person);
+    Shard shard = shards[shardIndex];
+    if (shard.owner != owner) {
+      shard = new Shard(owner, new HashMap<String, Calendar>(shard.calendars));
+      shards[shardIndex] = shard;
+    }
+    return shard;
+  }
+
+  private static int shardOf(String person) {
+    // Take the top bits of a multiplicative hash. Each shard's HashMap buckets by the low bits, so
+    // if the shard came from those too, every name in a shard would share a few buckets.
+    return (person.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - SHARD_BITS);
+  }
+
+  /**
+   * Returns the position of {@code event} in a list sorted by start time, or -1 if it is not
+   * there.
+   */
+  private static int indexOf(List<Event> events, Event event) {
+    // Only the events with the same start time need to be checked.
+    int start = event.getWhen().start();
+    for (int i = firstIndexAtOrAfter(events, start);
+        i < events.size() && events.get(i).getWhen().start() == start; i++) {
+      if (events.get(i).equals(event)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Sorts {@code events} by start time, keeping events with the same start time in their current
+   * order. Sorting packed {@code long} keys avoids following a pointer to each event's time range
+   * on every comparison.
+   */
+  private static void sortByStart(List<Event> events) {
+    int size = events.size();
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = (long) events.get(i).getWhen().start() << 32 | i;
+    }
+    Arrays.sort(keys);
+
+    Event[] sorted = new Event[size];
+    for (int i = 0; i < size; i++) {
+      sorted[i] = events.get((int) keys[i]);
+    }
+    for (int i = 0; i < size; i++) {
+      events.set(i, sorted[i]);
+    }
+  }
+
+  /**
+   * Merges two lists of events sorted by start time into a new sorted list. Of events with the
+   * same start time, those of {@code first} come first.
+   */
+  private static List<Event> mergeByStart(List<Event> first, List<Event> second) {
+    List<Event> merged = new ArrayList<>(first.size() + second.size());
+    int i = 0;
+    int j = 0;
+    while (i < first.size() && j < second.size()) {
+      if (second.get(j).getWhen().start() < first.get(i).getWhen().start()) {
+        merged.add(second.get(j++));
+      } else {
+        merged.add(first.get(i++));
+      }
+    }
+    merged.addAll(first.subList(i, first.size()));
+    merged.addAll(second.subList(j, second.size()));
+    return merged;
+  }
+
+  /**
+   * Returns a new merged list of the ranges of {@code busyTime}, which is merged, and the time
+   * ranges of {@code events}, which are sorted by start time.
+   */
+  private static TimeRangeList mergeBusyTime(TimeRangeList busyTime, List<Event> events) {
+    TimeRangeList merged = new TimeRangeList(busyTime.size() + events.size());
+    int i = 0;
+    int j = 0;
+    while (i < busyTime.size() || j < events.size()) {
+      if (j == events.size()
+          || (i < busyTime.size() && busyTime.start(i) <= events.get(j).getWhen().start())) {
+        merged.appendMerged(busyTime.start(i), busyTime.end(i));
+        i++;
+      } else {
+        TimeRange when = events.get(j++).getWhen();
+        merged.appendMerged(when.start(), when.end());
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Returns the index after the last event starting at or before {@code start}, so that events
+   * with the same start time stay in insertion order.
+   */
+  private static int insertionPoint(List<Event> events, int start) {
+    int low = 0;
+    int high = events.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (events.get(middle).getWhen().start() <= start) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first event starting at or after {@code start}.
+   */
+  private static int firstIndexAtOrAfter(List<Event> events, int start) {
+    int low = 0;
+    int high = events.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (events.get(middle).getWhen().start() < start) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static final class Shard {
+    final Object owner;
+    final Map<String, Calendar> calendars;
+
+    Shard(Object owner, Map<String, Calendar> calendars) {
+      this.owner = owner;
+      this.calendars = calendars;
+    }
+  }
+
+  /**
+   * One attendee's events, busy time and version.
+   */
+  private static final class Calendar {
+    final Object owner;
+    final List<Event> events;
+    final TimeRangeList busyTime;
+    long version;
+
+    Calendar(Object owner, List<Event> events, TimeRangeList busyTime, long version) {
+      this.owner = owner;
+      this.events = events;
+      this.busyTime = busyTime;
+      this.version = version;
+    }
+  }
+}
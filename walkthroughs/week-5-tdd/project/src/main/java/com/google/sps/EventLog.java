@@ -0,0 +1,527 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of event inserts and deletes, split into fixed-size segment files that are
+ * memory-mapped for writing. A snapshot file holds every live event as of the start of a segment,
+ * so the segments before it can be deleted and replay only reads the snapshot and the segments
+ * after it.
+ *
+ * <p>Each record is a 4-byte payload length, a 4-byte CRC32 of the payload and the payload itself.
+ * The length is written last, and new segments are zero-filled, so replay stops cleanly at a
+ * record that was only partly written. A snapshot is written in full before it replaces the old
+ * one, so one that doesn't end with a complete record is corrupt and fails replay.
+ *
+ * <p>Only one log may be open on a directory at a time, since two writers would overwrite each
+ * other's records. The log holds a lock on a file in the directory until it is closed, and opening
+ * a second log there fails, whether in this process or another.
+ *
+ * <p>The log is not thread-safe.
+ */
+final class EventLog implements Closeable {
+  static final byte INSERT = 1;
+  static final byte DELETE = 2;
+
+  /**
+   * Receives the records of the log as it is replayed.
+   */
+  interface Visitor {
+    void visit(byte type, Event event);
+  }
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".dat";
+  private static final String LOCK_FILE = "lock";
+  private static final int HEADER_SIZE = 8;
+
+  private final File directory;
+  private final int segmentSize;
+  private final FileChannel lockChannel;
+  private final CRC32 crc = new CRC32();
+  private ByteBuffer scratch = ByteBuffer.allocate(256);
+  private byte[] stringBytes = new byte[64];
+
+  // Attendee names seen during replay, so that every event shares one copy of each name.
+  private StringTable names;
+
+  // The snapshot covers every segment numbered below this, or is -1 if there is no snapshot.
+  private long snapshotNumber = -1;
+
+  private long segmentNumber = 0;
+  private MappedByteBuffer segment;
+  private int position = 0;
+
+  /**
+   * Opens the log in {@code directory}, creating the directory if needed. Call {@link #replay}
+   * before appending.
+   */
+  EventLog(File directory, int segmentSize) throws IOException {
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("segmentSize is too small");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.lockChannel = lock(directory);
+  }
+
+  /**
+   * Takes the lock on {@code directory}, and returns the channel that holds it.
+   */
+  private static FileChannel lock(File directory) throws IOException {
+    FileChannel channel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock lock = null;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // This process already holds the lock.
+    } finally {
+      if (lock == null) {
+        channel.close();
+      }
+    }
+    if (lock == null) {
+      throw new IOException(directory + " is already open in another event log");
+    }
+    return channel;
+  }
+
+  /**
+   * Passes every record in the newest snapshot and the segments after it to {@code visitor}, in
+   * order, and leaves the log ready to append after the last complete record.
+   */
+  void replay(Visitor visitor) throws IOException {
+    names = new StringTable();
+    try {
+      replayFiles(visitor);
+    } finally {
+      names = null;
+    }
+  }
+
+  private void replayFiles(Visitor visitor) throws IOException {
+    List<Long> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+    if (!snapshots.isEmpty()) {
+      snapshotNumber = snapshots.get(snapshots.size() - 1);
+      File snapshotFile = snapshotFile(snapshotNumber);
+      try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r")) {
+        MappedByteBuffer buffer =
+            file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        int end;
+        try {
+          end = readRecords(buffer, (int) file.length(), visitor);
+        } finally {
+          unmap(buffer);
+        }
+        if (end != file.length()) {
+          throw new IOException("Snapshot " + snapshotFile + " is corrupt at byte " + end);
+        }
+      }
+    }
+
+    // Anything older than the snapshot was left behind by a crash during compaction.
+    deleteOlderThan(Math.max(snapshotNumber, 0));
+
+    List<Long> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+    segmentNumber = Math.max(snapshotNumber, 0);
+    if (segments.isEmpty()) {
+      openSegment(segmentNumber);
+      return;
+    }
+
+    for (long number : segments) {
+      openSegment(number);
+      position = readRecords(segment, segmentSize, visitor);
+    }
+
+    // Zero out a partly written record at the end, so that it can't be mistaken for a record
+    // once new ones are written over it.
+    if (position + HEADER_SIZE <= segmentSize
+        && (segment.getInt(position) != 0 || segment.getInt(position + 4) != 0)) {
+      for (int i = position; i < segmentSize; i++) {
+        segment.put(i, (byte) 0);
+      }
+    }
+  }
+
+  /**
+   * Appends a record to the current segment, starting a new segment if it doesn't fit.
+   */
+  void append(byte type, Event event) throws IOException {
+    ByteBuffer payload = encode(type, event);
+    int length = payload.remaining();
+    if (HEADER_SIZE + length > segmentSize) {
+      throw new IllegalArgumentException("event is too large for a log segment");
+    }
+    if (position + HEADER_SIZE + length > segmentSize) {
+      roll();
+    }
+
+    crc.reset();
+    crc.update(payload.array(), 0, length);
+    segment.putInt(position + 4, (int) crc.getValue());
+    segment.position(position + HEADER_SIZE);
+    segment.put(payload.array(), 0, length);
+    segment.putInt(position, length);
+    position += HEADER_SIZE + length;
+  }
+
+  /**
+   * Returns how many segments have been started since the last snapshot.
+   */
+  long segmentsSinceSnapshot() {
+    return segmentNumber - Math.max(snapshotNumber, 0);
+  }
+
+  /**
+   * Writes {@code events} as a snapshot of everything appended so far, then deletes the segments
+   * and snapshots it replaces.
+   */
+  void snapshot(Collection<Event> events) throws IOException {
+    if (position > 0) {
+      roll();
+    }
+
+    File temporary = new File(directory, SNAPSHOT_PREFIX + "tmp");
+    try (RandomAccessFile file = new RandomAccessFile(temporary, "rw")) {
+      file.setLength(0);
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      for (Event event : events) {
+        ByteBuffer payload = encode(INSERT, event);
+        crc.reset();
+        crc.update(payload.array(), 0, payload.remaining());
+        header.clear();
+        header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+        while (payload.hasRemaining()) {
+          channel.write(payload);
+        }
+      }
+      channel.force(true);
+    }
+
+    Files.move(temporary.toPath(), snapshotFile(segmentNumber).toPath(),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    snapshotNumber = segmentNumber;
+    deleteOlderThan(snapshotNumber);
+  }
+
+  /**
+   * Forces the current segment to disk.
+   */
+  void sync() {
+    segment.force();
+  }
+
+  /**
+   * Forces the current segment to disk and unmaps it. The log can't be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (segment != null) {
+      segment.force();
+      unmap(segment);
+      segment = null;
+    }
+    try {
+      // Closing the channel releases the lock.
+      lockChannel.close();
+    } catch (IOException e) {
+      // The lock is released when the process exits anyway.
+    }
+  }
+
+  private void roll() throws IOException {
+    segment.force();
+    openSegment(segmentNumber + 1);
+  }
+
+  private void openSegment(long number) throws IOException {
+    if (segment != null) {
+      unmap(segment);
+      segment = null;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile(number), "rw")) {
+      // Mapping past the end of the file grows it with zeros. The mapping outlives the file.
+      segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+    segmentNumber = number;
+    position = 0;
+  }
+
+  /**
+   * Passes every complete record in {@code buffer} before {@code limit} to {@code visitor} and
+   * returns the position after the last one.
+   */
+  private int readRecords(ByteBuffer buffer, int limit, Visitor visitor) {
+    int position = 0;
+    while (position + HEADER_SIZE <= limit) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || length > limit - position - HEADER_SIZE) {
+        break;
+      }
+
+      ByteBuffer payload = buffer.duplicate();
+      payload.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+      crc.reset();
+      crc.update(payload);
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        break;
+      }
+
+      payload.position(position + HEADER_SIZE);
+      byte type = payload.get();
+      visitor.visit(type, decode(payload));
+      position += HEADER_SIZE + length;
+    }
+    return position;
+  }
+
+  private ByteBuffer encode(byte type, Event event) {
+    byte[] title = event.getTitle().getBytes(StandardCharsets.UTF_8);
+    List<byte[]> attendees = new ArrayList<>(event.getAttendees().size());
+    int size = 1 + 4 + 4 + 4 + title.length + 4;
+    for (String person : event.getAttendees()) {
+      byte[] name = person.getBytes(StandardCharsets.UTF_8);
+      attendees.add(name);
+      size += 4 + name.length;
+    }
+
+    if (scratch.capacity() < size) {
+      scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+    }
+    scratch.clear();
+    scratch.put(type);
+    scratch.putInt(event.getWhen().start());
+    scratch.putInt(event.getWhen().duration());
+    scratch.putInt(title.length).put(title);
+    scratch.putInt(attendees.size());
+    for (byte[] name : attendees) {
+      scratch.putInt(name.length).put(name);
+    }
+    scratch.flip();
+    return scratch;
+  }
+
+  private Event decode(ByteBuffer payload) {
+    int start = payload.getInt();
+    int duration = payload.getInt();
+    String title = readString(payload);
+    int count = payload.getInt();
+    List<String> attendees = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int length = payload.getInt();
+      attendees.add(names.get(payload, payload.position(), length));
+      payload.position(payload.position() + length);
+    }
+    return new Event(title, TimeRange.fromStartDuration(start, duration), attendees);
+  }
+
+  private String readString(ByteBuffer payload) {
+    int length = payload.getInt();
+    if (stringBytes.length < length) {
+      stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+    }
+    payload.get(stringBytes, 0, length);
+    return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Releases the mapping of {@code buffer} now, rather than whenever it is garbage collected, so
+   * that closing the log frees its address space and its files can be deleted straight away. The
+   * buffer must not be used afterwards. If the JVM doesn't allow this, the mapping is left to the
+   * garbage collector.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      // Java 9 and later.
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (NoSuchMethodException e) {
+      // Java 8, where direct buffers have a cleaner of their own.
+      try {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+      } catch (ReflectiveOperationException | RuntimeException ignored) {
+        // Left to the garbage collector.
+      }
+    } catch (ReflectiveOperationException | RuntimeException ignored) {
+      // Left to the garbage collector.
+    }
+  }
+
+  private void deleteOlderThan(long number) throws IOException {
+    for (long older : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+      if (older < number) {
+        Files.deleteIfExists(segmentFile(older).toPath());
+      }
+    }
+    for (long older : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+      if (older < number) {
+        Files.deleteIfExists(snapshotFile(older).toPath());
+      }
+    }
+  }
+
+  /**
+   * Returns the numbers of the files named {@code prefix + number + suffix}, in ascending order.
+   */
+  private List<Long> listFiles(String prefix, String suffix) {
+    List<Long> numbers = new ArrayList<>();
+    String[] names = directory.list();
+    if (names == null) {
+      return numbers;
+    }
+
+    for (String name : names) {
+      if (name.startsWith(prefix) && name.endsWith(suffix)) {
+        try {
+          numbers.add(Long.parseLong(
+              name.substring(prefix.length(), name.length() - suffix.length())));
+        } catch (NumberFormatException e) {
+          // Not one of ours.
+        }
+      }
+    }
+    Long[] sorted = numbers.toArray(new Long[0]);
+    Arrays.sort(sorted);
+    return Arrays.asList(sorted);
+  }
+
+  private File segmentFile(long number) {
+    return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  private File snapshotFile(long number) {
+    return new File(directory,
+        String.format("%s%020d%s", SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+  }
+
+  /**
+   * Interns strings by their UTF-8 bytes, so that a string seen before is found without decoding
+   * it or hashing a new copy. Replay reads the same attendee names over and over.
+   */
+  private static final class StringTable {
+    private byte[][] keys = new byte[1024][];
+    private String[] values = new String[1024];
+    private int size = 0;
+
+    /**
+     * Returns the string encoded by the {@code length} bytes at {@code offset} in {@code buffer}.
+     */
+    String get(ByteBuffer buffer, int offset, int length) {
+      int mask = keys.length - 1;
+      int slot = hash(buffer, offset, length) & mask;
+      while (keys[slot] != null) {
+        if (matches(keys[slot], buffer, offset, length)) {
+          return values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      byte[] key = new byte[length];
+      for (int i = 0; i < length; i++) {
+        key[i] = buffer.get(offset + i);
+      }
+      String value = new String(key, StandardCharsets.UTF_8);
+      keys[slot] = key;
+      values[slot] = value;
+      if (++size * 2 > keys.length) {
+        grow();
+      }
+      return value;
+    }
+
+    private void grow() {
+      byte[][] oldKeys = keys;
+      String[] oldValues = values;
+      keys = new byte[oldKeys.length * 2][];
+      values = new String[oldValues.length * 2];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          ByteBuffer key = ByteBuffer.wrap(oldKeys[i]);
+          int slot = hash(key, 0, oldKeys[i].length) & mask;
+          while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+      // FNV-1a, then mixed so that names differing only in their last bytes spread out.
+      int hash = 0x811c9dc5;
+      for (int i = 0; i < length; i++) {
+        hash = (hash ^ buffer.get(offset + i)) * 0x01000193;
+      }
+      hash ^= hash >>> 16;
+      hash *= 0x85ebca6b;
+      return hash ^ (hash >>> 13);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int offset, int length) {
+      if (key.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (key[i] != buffer.get(offset + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
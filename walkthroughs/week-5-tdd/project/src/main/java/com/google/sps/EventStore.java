@@ -0,0 +1,301 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A calendar of events that survives restarts. Every insert and delete is appended to a
+ * memory-mapped {@link EventLog} before it is applied in memory, and opening the store replays
+ * the log. Once enough log segments have filled up, the live events are written out as a
+ * compacted snapshot and the segments it replaces are deleted, so replay time tracks the size of
+ * the calendar rather than its history.
+ *
+ * <p>Writers are serialized by the store's lock. After every change the store publishes a
+ * read-only {@link EventIndex#snapshot} of its index, and {@link #getIndex} hands out the latest
+ * one without locking. A query pins one snapshot for as long as it runs and sees one consistent
+ * version of the calendar, while writers carry on and never wait for it.
+ *
+ * <p>Bulk loads can {@link #stage} their batches instead, which logs them at once but leaves them
+ * out of the index until they are published. Indexing every batch at the end costs one sort per
+ * attendee, where publishing every batch would copy most of the index each time.
+ */
+public final class EventStore implements Closeable {
+  /** The default size of each log segment, in bytes. */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /** The default number of segments to fill before taking a snapshot. */
+  public static final int DEFAULT_SEGMENTS_PER_SNAPSHOT = 4;
+
+  private final EventLog log;
+  private final int segmentsPerSnapshot;
+
+  // The number of copies of each live event, in the order they were first added.
+  private final Map<Event, Integer> counts = new LinkedHashMap<>();
+  private final EventIndex index = new EventIndex();
+
+  // Events that have been logged and counted, but not yet indexed. See stage.
+  private List<Event> staged = new ArrayList<>();
+
+  // The latest read-only snapshot of the index. Replaced after every change.
+  private volatile EventIndex published;
+
+  /**
+   * Opens the store in {@code directory}, creating it if it doesn't exist.
+   */
+  public EventStore(File directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENTS_PER_SNAPSHOT);
+  }
+
+  /**
+   * Opens the store in {@code directory}, creating it if it doesn't exist. Fails if another store
+   * has the directory open, in this process or another, until that store is closed.
+   *
+   * @param directory Where the log and snapshots are kept. Must be non-null.
+   * @param segmentSize The size of each log segment in bytes.
+   * @param segmentsPerSnapshot How many segments to fill before taking a snapshot. Must be
+   *     positive.
+   */
+  public EventStore(File directory, int segmentSize, int segmentsPerSnapshot) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory cannot be null");
+    }
+
+    if (segmentsPerSnapshot <= 0) {
+      throw new IllegalArgumentException("segmentsPerSnapshot must be positive");
+    }
+
+    this.segmentsPerSnapshot = segmentsPerSnapshot;
+    this.log = new EventLog(directory, segmentSize);
+
+    // Replay into the counts alone and index the survivors in one pass at the end, which is much
+    // faster than keeping the index sorted after every record.
+    // Close the log if replay fails, so that the directory can be opened again.
+    try {
+      log.replay(new EventLog.Visitor() {
+        @Override
+        public void visit(byte type, Event event) {
+          if (type == EventLog.INSERT) {
+            increment(event);
+          } else if (type == EventLog.DELETE) {
+            decrement(event);
+          }
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      log.close();
+      throw e;
+    }
+    index.addAll(getEvents());
+    published = index.snapshot();
+  }
+
+  /**
+   * Adds an event to the calendar. Any staged events are published with it.
+   */
+  public synchronized void add(Event event) throws IOException {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    indexStaged();
+    log.append(EventLog.INSERT, event);
+    apply(event);
+    published = index.snapshot();
+    snapshotIfDue();
+  }
+
+  /**
+   * Adds every event in {@code events}, with the same result as adding them one at a time. The
+   * index is bulk loaded and a new snapshot published once for the whole batch, which is much
+   * faster when importing a large calendar. If writing the log fails partway, the events logged
+   * before the failure are still added. Any staged events are published with them.
+   */
+  public synchronized void addAll(Collection<Event> events) throws IOException {
+    try {
+      stage(events);
+    } finally {
+      publish();
+    }
+  }
+
+  /**
+   * Adds every event in {@code events} like {@link #addAll}, except that {@link #getIndex} and
+   * {@link #size} don't include them until the next {@link #publish} or other change. They are
+   * logged at once, so they survive a restart either way. Staging many batches and publishing
+   * them together indexes each attendee's events once, which is much faster than publishing every
+   * batch. If writing the log fails partway, the events logged before the failure are still
+   * staged.
+   */
+  public synchronized void stage(Collection<Event> events) throws IOException {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    for (Event event : events) {
+      if (event == null) {
+        throw new IllegalArgumentException("events cannot contain null");
+      }
+    }
+
+    for (Event event : events) {
+      log.append(EventLog.INSERT, event);
+      // Keep memory in step with the log, which is what the next replay will see.
+      increment(event);
+      staged.add(event);
+    }
+    snapshotIfDue();
+  }
+
+  /**
+   * Indexes every staged event and publishes a snapshot that includes them.
+   */
+  public synchronized void publish() {
+    if (indexStaged()) {
+      published = index.snapshot();
+    }
+  }
+
+  /**
+   * Removes one copy of an event from the calendar. Returns whether the event was in it.
+   */
+  public synchronized boolean remove(Event event) throws IOException {
+    if (event == null || !counts.containsKey(event)) {
+      return false;
+    }
+
+    // The event may be staged, so index it before taking it out of the index.
+    indexStaged();
+    log.append(EventLog.DELETE, event);
+    unapply(event);
+    published = index.snapshot();
+    snapshotIfDue();
+    return true;
+  }
+
+  /**
+   * Returns a copy of the events in the calendar, in the order they were added. Unlike
+   * {@link #getIndex}, this takes the store's lock while copying.
+   */
+  public synchronized List<Event> getEvents() {
+    List<Event> events = new ArrayList<>(counts.size());
+    for (Map.Entry<Event, Integer> entry : counts.entrySet()) {
+      for (int i = 0; i < entry.getValue(); i++) {
+        events.add(entry.getKey());
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Returns a read-only snapshot of the index as of the latest change. It never changes, so it can
+   * be read from any number of threads without locking.
+   */
+  public EventIndex getIndex() {
+    return published;
+  }
+
+  /**
+   * Returns a number that increases every time an event is added or removed.
+   */
+  public long getVersion() {
+    return published.getVersion();
+  }
+
+  /**
+   * Returns the number of events in the calendar.
+   */
+  public int size() {
+    return published.size();
+  }
+
+  /**
+   * Writes the live events to a snapshot now and deletes the log segments it replaces.
+   */
+  public synchronized void snapshot() throws IOException {
+    log.snapshot(getEvents());
+  }
+
+  /**
+   * Forces every change made so far to disk. Changes survive the process exiting as soon as they
+   * are made, but only survive the machine crashing once synced.
+   */
+  public synchronized void sync() {
+    log.sync();
+  }
+
+  @Override
+  public synchronized void close() {
+    log.close();
+  }
+
+  private void snapshotIfDue() throws IOException {
+    if (log.segmentsSinceSnapshot() >= segmentsPerSnapshot) {
+      snapshot();
+    }
+  }
+
+  /**
+   * Adds the staged events to the index. Returns whether there were any.
+   */
+  private boolean indexStaged() {
+    if (staged.isEmpty()) {
+      return false;
+    }
+    index.addAll(staged);
+    staged = new ArrayList<>();
+    return true;
+  }
+
+  private void apply(Event event) {
+    increment(event);
+    index.add(event);
+  }
+
+  private void unapply(Event event) {
+    if (decrement(event)) {
+      index.remove(event);
+    }
+  }
+
+  private void increment(Event event) {
+    Integer count = counts.get(event);
+    counts.put(event, count == null ? 1 : count + 1);
+  }
+
+  /**
+   * Removes one copy of {@code event} from the counts. Returns whether there was one.
+   */
+  private boolean decrement(Event event) {
+    Integer count = counts.get(event);
+    if (count == null) {
+      return false;
+    }
+
+    if (count == 1) {
+      counts.remove(event);
+    } else {
+      counts.put(event, count - 1);
+    }
+    return true;
+  }
+}
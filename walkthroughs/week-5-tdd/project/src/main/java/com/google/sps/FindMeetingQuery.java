@@ -18,81 +18,379 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public final class FindMeetingQuery {
   /**
    * Returns a collection of time ranges that do not conflict with the meeting request 
    * in terms of event times and attendees. If there are optional attendees and one or 
    * more time slots exists such that both mandatory and optional attendees may attend, 
-   * those time slots are returned. Otherwise, just the time slots that fit the mandatory 
+   * those time slots are returned. Otherwise, just the time slots that fit the mandatory
    * attendees are returned.
+   *
+   * <p>The events may be in any order. An event without a duration doesn't keep anyone busy, and
+   * an optional attendee's event that overlaps or touches a mandatory one still counts for as
+   * long as it lasts. The optional attendees are only considered on their own when there are no
+   * mandatory attendees, so a mandatory attendee with a free day gets the whole day even if the
+   * optional attendees are busy. The end of the day is inclusive, so the last minute counts
+   * towards the duration, and an empty gap between events is never an option.
    */
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(events, request, QueryTrace.OFF);
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(Collection, MeetingRequest)}, recording how long
+   * each phase took and how much work it did in {@code trace}.
+   */
+  public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request,
+                                     QueryTrace trace) {
     if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
       return new ArrayList<TimeRange>();
     }
+    trace.start();
     
     // Build list of events that conflict with the mandatory requested attendees.
     ArrayList<Event> attendedEvents = 
-        getEventsWithAttendees(events, request.getAttendees());
+        getEventsWithAttendees(events, request.getAttendees(), trace);
 
     // Build list of events that conflict only with the optional attendees.
     ArrayList<Event> attendedOptionalEvents = 
-        getEventsWithAttendees(events, request.getOptionalAttendees());
+        getEventsWithAttendees(events, request.getOptionalAttendees(), trace);
+    trace.lap(QueryTrace.Phase.FILTER);
 
     // Return with the full day if none of the events conflict with the requested attendees.
     if (attendedEvents.isEmpty() && attendedOptionalEvents.isEmpty()) {
+      trace.addSlotsEmitted(1);
       return Arrays.asList(TimeRange.WHOLE_DAY);
     }
 
     // Separately get the time ranges of events on the calendars of the mandatory and 
     // optional attendees.
-    ArrayList<TimeRange> eventTimeRanges = getEventTimeRanges(attendedEvents);
-    ArrayList<TimeRange> optionalEventTimeRanges = 
-                                           getEventTimeRanges(attendedOptionalEvents);
+    return query(getEventTimeRanges(attendedEvents, trace),
+                 getEventTimeRanges(attendedOptionalEvents, trace), request, trace);
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(Collection, MeetingRequest)}, but only looks at
+   * the requested attendees' busy time, which {@code index} keeps merged and sorted.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request) {
+    return query(index, request, Collections.<String, WorkingHours>emptyMap());
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(EventIndex, MeetingRequest)}, treating the time
+   * outside each attendee's working hours as busy. The off hours join the merge of busy time, so a
+   * day where nobody's hours overlap has no slots rather than slots nobody can attend.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request,
+                                     Map<String, WorkingHours> workingHours) {
+    return query(index, request, workingHours, QueryTrace.OFF);
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(EventIndex, MeetingRequest, Map)}, recording how
+   * long each phase took and how much work it did in {@code trace}. The index's busy time is
+   * already sorted, so its k-way merge counts as extraction.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request,
+                                     Map<String, WorkingHours> workingHours, QueryTrace trace) {
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return new ArrayList<TimeRange>();
+    }
+    trace.start();
+
+    // The index keeps each attendee's busy time merged, so this only needs a k-way merge.
+    TimeRangeList eventTimeRanges = new TimeRangeList();
+    index.getBusyTime(request.getAttendees(), workingHours, eventTimeRanges);
+
+    TimeRangeList optionalEventTimeRanges = new TimeRangeList();
+    index.getBusyTime(request.getOptionalAttendees(), workingHours, optionalEventTimeRanges);
+    trace.addRangesMerged(eventTimeRanges.size() + optionalEventTimeRanges.size());
+    trace.lap(QueryTrace.Phase.EXTRACT);
+
+    return query(eventTimeRanges, optionalEventTimeRanges, request, trace);
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(EventIndex, MeetingRequest)}, in order, but finds
+   * them lazily. Busy time is merged only as far as needed to produce the next range, so a caller
+   * that stops early never looks at the rest of the day.
+   */
+  public Iterator<TimeRange> iterator(EventIndex index, MeetingRequest request) {
+    return iterator(index, request, Collections.<String, WorkingHours>emptyMap());
+  }
+
+  /**
+   * Returns the same time ranges as {@link #query(EventIndex, MeetingRequest, Map)}, in order, but
+   * finds them lazily.
+   */
+  public Iterator<TimeRange> iterator(EventIndex index, MeetingRequest request,
+                                      Map<String, WorkingHours> workingHours) {
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return Collections.<TimeRange>emptyIterator();
+    }
+
+    // If there are no mandatory attendees, only the optional attendees' calendars matter.
+    if (request.getAttendees().isEmpty()) {
+      return new FreeTimeIterator(
+          index.mergeBusyTime(request.getOptionalAttendees(), workingHours),
+          request.getDuration());
+    }
 
-    // If we only have mandatory attendees or only have optional attendees, find and 
-    // return that group's available time ranges.
-    if (eventTimeRanges.isEmpty()) {
-      return getAvailableTimeRanges(optionalEventTimeRanges, request.getDuration());
+    // Everyone's calendar counts as long as that leaves at least one range, which only needs the
+    // first range to be found.
+    if (!request.getOptionalAttendees().isEmpty()) {
+      ArrayList<String> everyone = new ArrayList<String>(request.getAttendees());
+      everyone.addAll(request.getOptionalAttendees());
+      Iterator<TimeRange> combined = 
+          new FreeTimeIterator(index.mergeBusyTime(everyone, workingHours), request.getDuration());
+      if (combined.hasNext()) {
+        return combined;
+      }
+    }
+
+    return new FreeTimeIterator(
+        index.mergeBusyTime(request.getAttendees(), workingHours), request.getDuration());
+  }
+
+  /**
+   * Returns the first {@code n} time ranges of {@link #query(EventIndex, MeetingRequest)}, or all
+   * of them if there are fewer. Stops merging busy time as soon as {@code n} ranges are found.
+   */
+  public List<TimeRange> firstN(EventIndex index, MeetingRequest request, int n) {
+    return firstN(index, request, Collections.<String, WorkingHours>emptyMap(), n);
+  }
+
+  /**
+   * Returns the first {@code n} time ranges of
+   * {@link #query(EventIndex, MeetingRequest, Map)}, or all of them if there are fewer.
+   */
+  public List<TimeRange> firstN(EventIndex index, MeetingRequest request,
+                                Map<String, WorkingHours> workingHours, int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException("n cannot be negative");
+    }
+
+    ArrayList<TimeRange> timeRanges = new ArrayList<TimeRange>(Math.min(n, 16));
+    Iterator<TimeRange> iterator = iterator(index, request, workingHours);
+    while (timeRanges.size() < n && iterator.hasNext()) {
+      timeRanges.add(iterator.next());
+    }
+    return timeRanges;
+  }
+
+  /**
+   * Returns the time ranges that fit the mandatory attendees and the largest possible number of
+   * optional attendees, each with that number attached. Unlike {@link #query}, optional attendees
+   * are not all-or-nothing. Runs in O(n log n) for n events of the requested attendees.
+   */
+  public Collection<RankedTimeRange> queryMaximizingOptional(EventIndex index, 
+                                                             MeetingRequest request) {
+    ArrayList<RankedTimeRange> rankedTimeRanges = new ArrayList<RankedTimeRange>();
+    int duration = (int) Math.max(1, request.getDuration());
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return rankedTimeRanges;
     }
 
-    ArrayList<TimeRange> availableTimeRanges = 
+    // A meeting can start at t if [t, t + duration) is free for every mandatory attendee.
+    TimeRangeList busy = new TimeRangeList();
+    index.getBusyTime(request.getAttendees(), busy);
+    TimeRangeList freeStarts = new TimeRangeList();
+    busy.gaps(TimeRange.START_OF_DAY, TimeRange.END_OF_DAY + 1, duration, freeStarts);
+
+    // An optional attendee misses a meeting starting at t if one of their busy ranges [s, e)
+    // overlaps [t, t + duration), which is when t is in [s - duration + 1, e). Merging these per
+    // attendee means each attendee is counted at most once at any t.
+    ArrayList<Integer> missedStarts = new ArrayList<Integer>();
+    ArrayList<Integer> missedEnds = new ArrayList<Integer>();
+    TimeRangeList missed = new TimeRangeList();
+    for (String person : request.getOptionalAttendees()) {
+      index.getBusyTime(Collections.singleton(person), busy);
+      missed.clear();
+      for (int i = 0; i < busy.size(); i++) {
+        missed.add(busy.start(i) - duration + 1, busy.end(i));
+      }
+      missed.merge();
+      for (int i = 0; i < missed.size(); i++) {
+        missedStarts.add(missed.start(i));
+        missedEnds.add(missed.end(i));
+      }
+    }
+    Collections.sort(missedStarts);
+    Collections.sort(missedEnds);
+
+    // Sweep over the start and end points, splitting every free start range into segments with a
+    // constant number of optional attendees who would miss the meeting.
+    ArrayList<int[]> segments = new ArrayList<int[]>();
+    int nextStart = 0;
+    int nextEnd = 0;
+    int missing = 0;
+    int fewestMissing = Integer.MAX_VALUE;
+    for (int free = 0; free < freeStarts.size(); free++) {
+      // The last start that leaves room for the meeting is duration - 1 before the gap's end.
+      int time = freeStarts.start(free);
+      int lastStart = freeStarts.end(free) - duration + 1;
+      while (time < lastStart) {
+        while (nextStart < missedStarts.size() && missedStarts.get(nextStart) <= time) {
+          nextStart++;
+          missing++;
+        }
+        while (nextEnd < missedEnds.size() && missedEnds.get(nextEnd) <= time) {
+          nextEnd++;
+          missing--;
+        }
+
+        int segmentEnd = lastStart;
+        if (nextStart < missedStarts.size()) {
+          segmentEnd = Math.min(segmentEnd, missedStarts.get(nextStart));
+        }
+        if (nextEnd < missedEnds.size()) {
+          segmentEnd = Math.min(segmentEnd, missedEnds.get(nextEnd));
+        }
+
+        segments.add(new int[] {time, segmentEnd, missing});
+        fewestMissing = Math.min(fewestMissing, missing);
+        time = segmentEnd;
+      }
+    }
+
+    // Join neighbouring segments that all miss the fewest attendees into ranges, turning each
+    // range of start times back into the time a meeting can occupy.
+    int attending = request.getOptionalAttendees().size() - fewestMissing;
+    int runStart = -1;
+    int runEnd = -1;
+    for (int[] segment : segments) {
+      if (segment[2] != fewestMissing) {
+        continue;
+      }
+      if (segment[0] != runEnd) {
+        addRankedTimeRange(rankedTimeRanges, runStart, runEnd, duration, attending);
+        runStart = segment[0];
+      }
+      runEnd = segment[1];
+    }
+    addRankedTimeRange(rankedTimeRanges, runStart, runEnd, duration, attending);
+
+    return rankedTimeRanges;
+  }
+
+  private static void addRankedTimeRange(ArrayList<RankedTimeRange> rankedTimeRanges, 
+                                         int startsFrom, int startsTo, int duration,
+                                         int attending) {
+    if (startsFrom >= 0) {
+      rankedTimeRanges.add(new RankedTimeRange(
+          TimeRange.fromStartEnd(startsFrom, startsTo - 1 + duration, false), attending));
+    }
+  }
+
+  /**
+   * Returns the time ranges inside {@code window} that fit the meeting request, using the same
+   * rules for optional attendees as {@link #query(Collection, MeetingRequest)}. The window may span
+   * any number of days, and only the events of the requested attendees that overlap it are read.
+   * Recurring events are expanded only inside the window, as their occurrences are visited.
+   */
+  public Collection<EpochRange> query(HorizonIndex index, MeetingRequest request,
+                                      EpochRange window) {
+    if (request.getDuration() > window.duration()) {
+      return new ArrayList<EpochRange>();
+    }
+
+    ArrayList<EpochRange> busyRanges = getBusyRanges(index, request.getAttendees(), window);
+    ArrayList<EpochRange> optionalBusyRanges = 
+        getBusyRanges(index, request.getOptionalAttendees(), window);
+
+    // If there are no mandatory attendees, only the optional attendees' calendars matter.
+    if (request.getAttendees().isEmpty()) {
+      return getAvailableRanges(optionalBusyRanges, window, request.getDuration());
+    }
+
+    ArrayList<EpochRange> availableRanges = 
+        getAvailableRanges(busyRanges, window, request.getDuration());
+    if (optionalBusyRanges.isEmpty()) {
+      return availableRanges;
+    }
+
+    ArrayList<EpochRange> availableCombinedRanges = getAvailableRanges(
+        mergeRanges(busyRanges, optionalBusyRanges), window, request.getDuration());
+    
+    return availableCombinedRanges.isEmpty() ? availableRanges : availableCombinedRanges;
+  }
+
+  /**
+   * Returns the available time ranges given the merged busy time of the mandatory attendees and
+   * the merged busy time of the optional attendees.
+   */
+  private Collection<TimeRange> query(TimeRangeList eventTimeRanges,
+                                      TimeRangeList optionalEventTimeRanges,
+                                      MeetingRequest request, QueryTrace trace) {
+    // If there are no mandatory attendees, the optional attendees are the only people whose
+    // calendars matter, so return their available time ranges.
+    if (request.getAttendees().isEmpty()) {
+      return emit(getAvailableTimeRanges(optionalEventTimeRanges, request.getDuration()), trace);
+    }
+
+    TimeRangeList availableTimeRanges = 
         getAvailableTimeRanges(eventTimeRanges, request.getDuration());
     
     if (optionalEventTimeRanges.isEmpty()) {
-      return availableTimeRanges;
+      return emit(availableTimeRanges, trace);
     }
+    trace.lap(QueryTrace.Phase.GAPS);
 
-    // If we have both mandatory and optional attendees, combine the events so that
-    // optional events are only retained if they don't overlap with mandatory events.
-    combineTimeRanges(eventTimeRanges, optionalEventTimeRanges);
+    // If we have both mandatory and optional attendees, combine their busy times so that
+    // a slot is only kept if everyone is free.
+    eventTimeRanges.addAll(optionalEventTimeRanges);
+    eventTimeRanges.merge();
+    trace.addRangesMerged(eventTimeRanges.size());
+    trace.lap(QueryTrace.Phase.MERGE);
 
     // Find and return the combined time ranges only if there are still time ranges left.
-    ArrayList<TimeRange> availableCombinedTimeRanges = 
+    TimeRangeList availableCombinedTimeRanges = 
         getAvailableTimeRanges(eventTimeRanges, request.getDuration());
     
     if (availableCombinedTimeRanges.isEmpty()) {
       // Adding optional events got rid of all possible time slots, so we want to 
       // return the available time ranges from before we combined mandatory/optional.
-      return availableTimeRanges;
+      return emit(availableTimeRanges, trace);
     }
 
-    return availableCombinedTimeRanges;
+    return emit(availableCombinedTimeRanges, trace);
+  }
+
+  /**
+   * Converts the query's answer to {@code TimeRange}s, counting the time towards the gap scan.
+   */
+  private static Collection<TimeRange> emit(TimeRangeList timeRanges, QueryTrace trace) {
+    List<TimeRange> answer = timeRanges.toTimeRanges();
+    trace.addSlotsEmitted(answer.size());
+    trace.lap(QueryTrace.Phase.GAPS);
+    return answer;
   }
 
   /**
    * Build a list of events that contain the given attendees.
    */
   private ArrayList<Event> getEventsWithAttendees(Collection<Event> events,
-                                                  Collection<String> attendees) {
+                                                  Collection<String> attendees,
+                                                  QueryTrace trace) {
     ArrayList<Event> attendedEvents = new ArrayList<Event>();
+    if (attendees.isEmpty()) {
+      return attendedEvents;
+    }
+
+    // Sort and hash the attendees once, so each event is checked with a sorted int array
+    // intersection instead of hashing every one of its attendees' names.
+    String[] sortedAttendees = Event.sortAttendees(attendees);
+    int[] sortedHashes = Event.hashAttendees(sortedAttendees);
+    trace.addEventsScanned(events.size());
     for (Event event : events) {
-      for (String person : event.getAttendees()) {
-        if (attendees.contains(person)) {
-          attendedEvents.add(event);
-          break;
-        }
+      if (event.hasAnyAttendee(sortedAttendees, sortedHashes)) {
+        attendedEvents.add(event);
       }
     }
 
@@ -103,89 +401,147 @@ public final class FindMeetingQuery {
    * Returns the time ranges that a list of events take up, merging any time ranges 
    * that overlap.
    */
-  private ArrayList<TimeRange> getEventTimeRanges(ArrayList<Event> attendedEvents) {
-    // If there are no events, there are no time ranges to get.
-    if (attendedEvents.isEmpty()) {
-      return new ArrayList<TimeRange>();
+  private TimeRangeList getEventTimeRanges(ArrayList<Event> attendedEvents, QueryTrace trace) {
+    TimeRangeList timeRanges = new TimeRangeList(attendedEvents.size());
+    for (Event event : attendedEvents) {
+      timeRanges.add(event.getWhen());
     }
+    trace.lap(QueryTrace.Phase.EXTRACT);
 
-    ArrayList<TimeRange> eventTimeRanges = new ArrayList<TimeRange>();
-    eventTimeRanges.add(attendedEvents.get(0).getWhen());
+    // Merging sorts the ranges first and drops events without a duration, since they don't
+    // keep anyone busy.
+    timeRanges.merge();
+    trace.addRangesMerged(timeRanges.size());
+    trace.lap(QueryTrace.Phase.SORT);
+    return timeRanges;
+  }
 
-    // Iterate through each event, adding merged time ranges to eventTimeRanges. 
-    for (Event event : attendedEvents) {
-      TimeRange currentTimeRange = event.getWhen();
-      TimeRange previousTimeRange = eventTimeRanges.get(eventTimeRanges.size() - 1);
-
-      if (previousTimeRange.end() < currentTimeRange.start()) {
-        // The event starts after the previous one ends, so add its time range to the stack.
-        eventTimeRanges.add(currentTimeRange);
-      } else if (previousTimeRange.end() < currentTimeRange.end()) {
-        // The event ends after the previous one, so merge their time ranges.
-        eventTimeRanges.remove(eventTimeRanges.size() - 1);
-        eventTimeRanges.add(TimeRange.fromStartEnd(previousTimeRange.start(), 
-                                                   currentTimeRange.end(), 
-                                                   false));
+  /**
+   * Given a merged list of unavailable time ranges, return the time ranges that are 
+   * available throughout the day and fit the duration of a requested meeting.
+   */
+  private TimeRangeList getAvailableTimeRanges(TimeRangeList takenTimeRanges, long duration) {
+    // The end of the day is inclusive, so the last minute of the day counts towards the duration.
+    TimeRangeList availableTimeRanges = new TimeRangeList(takenTimeRanges.size() + 1);
+    takenTimeRanges.gaps(TimeRange.START_OF_DAY, TimeRange.END_OF_DAY + 1, duration, 
+                         availableTimeRanges);
+    return availableTimeRanges;
+  }
+
+  /**
+   * Returns the merged busy time of the given attendees inside {@code window}. The index visits
+   * busy time in order of start time, so each range is merged into the last one as it arrives.
+   */
+  private ArrayList<EpochRange> getBusyRanges(HorizonIndex index, Collection<String> attendees,
+                                              EpochRange window) {
+    final ArrayList<EpochRange> busyRanges = new ArrayList<EpochRange>();
+    index.forEachBusy(attendees, window, new IntervalTree.Visitor<String>() {
+      @Override
+      public void visit(long start, long end, String title) {
+        addMerged(busyRanges, start, end);
       }
+    });
+    return busyRanges;
+  }
+
+  /**
+   * Merges two lists of merged ranges sorted by start time into one, joining any overlapping or
+   * touching ranges.
+   */
+  private ArrayList<EpochRange> mergeRanges(ArrayList<EpochRange> a, ArrayList<EpochRange> b) {
+    ArrayList<EpochRange> mergedRanges = new ArrayList<EpochRange>(a.size() + b.size());
+    int i = 0;
+    int j = 0;
+    while (i < a.size() || j < b.size()) {
+      EpochRange range = j == b.size() || (i < a.size() && a.get(i).start() <= b.get(j).start())
+          ? a.get(i++) : b.get(j++);
+      addMerged(mergedRanges, range.start(), range.end());
     }
+    return mergedRanges;
+  }
 
-    return eventTimeRanges;
+  /**
+   * Appends {@code [start, end)} to ranges sorted by start time, joining it to the last range if
+   * they overlap or touch. It must not start before the last range.
+   */
+  private static void addMerged(ArrayList<EpochRange> ranges, long start, long end) {
+    int last = ranges.size() - 1;
+    if (last < 0 || ranges.get(last).end() < start) {
+      ranges.add(EpochRange.fromStartEnd(start, end));
+    } else if (ranges.get(last).end() < end) {
+      ranges.set(last, EpochRange.fromStartEnd(ranges.get(last).start(), end));
+    }
   }
 
   /**
-   * Combine the time ranges of mandatory and optional events, keeping only the optional
-   * events that do not overlap with mandatory events.
+   * Given merged busy ranges sorted by start time, return the ranges inside {@code window} that
+   * are free and fit the duration of a requested meeting.
    */
-  private void combineTimeRanges(ArrayList<TimeRange> mandatory, ArrayList<TimeRange> optional) {
-    int initialSize = mandatory.size();
-    
-    for (TimeRange optionalTimeRange : optional) {
-      boolean overlap = false;
-      for (int i = 0; i < initialSize; i++) {
-        if (optionalTimeRange.overlaps(mandatory.get(i))) {
-          // One overlap means we can't use this time range.
-          overlap = true;
-          break;
-        }
+  private ArrayList<EpochRange> getAvailableRanges(ArrayList<EpochRange> busyRanges,
+                                                   EpochRange window, long duration) {
+    ArrayList<EpochRange> availableRanges = new ArrayList<EpochRange>();
+    long startTime = window.start();
+    for (EpochRange busyRange : busyRanges) {
+      long endTime = Math.min(busyRange.start(), window.end());
+      if (endTime > startTime && endTime - startTime >= duration) {
+        availableRanges.add(EpochRange.fromStartEnd(startTime, endTime));
       }
+      startTime = Math.max(startTime, busyRange.end());
+    }
 
-      if (!overlap) {
-        // Only added if there was no overlap.
-        mandatory.add(optionalTimeRange);
-      }
+    if (window.end() > startTime && window.end() - startTime >= duration) {
+      availableRanges.add(EpochRange.fromStartEnd(startTime, window.end()));
     }
+    return availableRanges;
   }
 
   /**
-   * Given a list of unavailable time ranges, return the list of time ranges that are 
-   * available throughout the day and fit the duration of a requested meeting.
+   * Produces the free ranges of the day that are at least {@code duration} long, pulling merged
+   * busy ranges from a {@link BusyTimeMerger} only when the next free range is asked for.
    */
-  private ArrayList<TimeRange> getAvailableTimeRanges(ArrayList<TimeRange> takenTimeRanges,
-                                                      long duration) {
-    Collections.sort(takenTimeRanges, TimeRange.ORDER_BY_START);
-    
-    ArrayList<TimeRange> availableTimeRanges = new ArrayList<TimeRange>();
-    int startTime = TimeRange.START_OF_DAY;
-    int endTime;
-    
-    for (int i = 0; i < takenTimeRanges.size(); i++) {
-      // Assign the next time range's end time to be this event's start time.
-      endTime = takenTimeRanges.get(i).start();
+  private static final class FreeTimeIterator implements Iterator<TimeRange> {
+    // The end of the day is inclusive, so the last minute of the day counts towards the duration.
+    private static final int DAY_END = TimeRange.END_OF_DAY + 1;
 
-      // Check that the time range to be added fits the requested duration.
-      if (endTime - startTime >= duration) {
-        availableTimeRanges.add(TimeRange.fromStartEnd(startTime, endTime, false));
-      }
-      
-      // Assign the next time range's start time to be this event's end time.
-      startTime = takenTimeRanges.get(i).end();
+    private final BusyTimeMerger merger;
+    private final long duration;
+    private int gapStart = TimeRange.START_OF_DAY;
+    private TimeRange next;
+
+    FreeTimeIterator(BusyTimeMerger merger, long duration) {
+      this.merger = merger;
+      this.duration = duration;
     }
 
-    // Add the remaining portion of the day, if its duration is long enough.
-    if (TimeRange.END_OF_DAY - startTime >= duration) {
-      availableTimeRanges.add(TimeRange.fromStartEnd(startTime, TimeRange.END_OF_DAY, true));
+    @Override
+    public boolean hasNext() {
+      while (next == null && gapStart < DAY_END) {
+        int gapEnd;
+        int busyEnd;
+        if (merger.advance()) {
+          gapEnd = Math.min(merger.start(), DAY_END);
+          busyEnd = merger.end();
+        } else {
+          gapEnd = DAY_END;
+          busyEnd = DAY_END;
+        }
+
+        if (gapEnd > gapStart && gapEnd - gapStart >= duration) {
+          next = TimeRange.fromStartEnd(gapStart, gapEnd, false);
+        }
+        gapStart = Math.max(gapStart, busyEnd);
+      }
+      return next != null;
     }
 
-    return availableTimeRanges;
+    @Override
+    public TimeRange next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      TimeRange timeRange = next;
+      next = null;
+      return timeRange;
+    }
   }
 }
@@ -0,0 +1,80 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative values with one bucket per power of two. Bucket
+ * {@code b} holds the values whose highest set bit is bit {@code b - 1}, and bucket 0 holds zero.
+ * Percentiles are reported as the upper bound of their bucket, so they are within a factor of two
+ * of the true value. Recording is a single atomic increment.
+ */
+public final class Histogram {
+  private static final int BUCKETS = 65;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  /**
+   * Records {@code value}. Negative values are recorded as zero.
+   */
+  public void record(long value) {
+    counts.incrementAndGet(value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value));
+  }
+
+  /**
+   * Returns how many values have been recorded.
+   */
+  public long getCount() {
+    long count = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      count += counts.get(b);
+    }
+    return count;
+  }
+
+  /**
+   * Returns an upper bound on the {@code percentile}th percentile of the recorded values, or 0 if
+   * none have been recorded.
+   *
+   * @param percentile A number from 0 to 100.
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      snapshot[b] = counts.get(b);
+      count += snapshot[b];
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += snapshot[b];
+      if (seen >= rank) {
+        return upperBound(b);
+      }
+    }
+    return 0;
+  }
+
+  private static long upperBound(int bucket) {
+    return bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+}
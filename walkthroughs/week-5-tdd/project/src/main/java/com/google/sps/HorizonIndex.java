@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Holds events spread over many days, with one {@link IntervalTree} per attendee keyed by
+ * {@link EpochRange}. Finding an attendee's events inside a window costs O(log n + k), where
+ * {@code k} is the number of their events in the window. Recurring events are kept in a second
+ * tree per attendee keyed by their whole span, and only those whose span overlaps the window are
+ * expanded, and only inside it. The index is not thread-safe.
+ */
+public final class HorizonIndex {
+  // Orders cursors by the start of their current range, for the merge in forEachBusy.
+  private static final Comparator<IntervalTree.Cursor<String>> ORDER_BY_START =
+      new Comparator<IntervalTree.Cursor<String>>() {
+        @Override
+        public int compare(IntervalTree.Cursor<String> a, IntervalTree.Cursor<String> b) {
+          return Long.compare(a.start(), b.start());
+        }
+      };
+
+  private final Map<String, IntervalTree<String>> treesByAttendee = new HashMap<>();
+  private final Map<String, IntervalTree<RecurringEvent>> recurringByAttendee = new HashMap<>();
+  private int size = 0;
+
+  /**
+   * Adds an event that takes place on the day {@code epochDay} days after the epoch.
+   */
+  public void add(Event event, long epochDay) {
+    add(event.getTitle(), EpochRange.onDay(epochDay, event.getWhen()), event.getAttendees());
+  }
+
+  /**
+   * Adds an event that may span several days.
+   *
+   * @param title The human-readable name for the event. Must be non-null.
+   * @param when The time when the event takes place. Must be non-null.
+   * @param attendees The collection of people attending the event. Must be non-null.
+   */
+  public void add(String title, EpochRange when, Collection<String> attendees) {
+    if (title == null || when == null || attendees == null) {
+      throw new IllegalArgumentException("title, when and attendees cannot be null");
+    }
+
+    for (String person : attendees) {
+      IntervalTree<String> tree = treesByAttendee.get(person);
+      if (tree == null) {
+        tree = new IntervalTree<>();
+        treesByAttendee.put(person, tree);
+      }
+      tree.insert(when.start(), when.end(), title);
+    }
+    size++;
+  }
+
+  /**
+   * Removes an event previously added with the same title, time and attendees. Returns whether the
+   * event was found.
+   */
+  public boolean remove(String title, EpochRange when, Collection<String> attendees) {
+    boolean removed = false;
+    for (String person : attendees) {
+      IntervalTree<String> tree = treesByAttendee.get(person);
+      if (tree != null && tree.remove(when.start(), when.end(), title)) {
+        removed = true;
+        if (tree.size() == 0) {
+          treesByAttendee.remove(person);
+        }
+      }
+    }
+
+    if (removed) {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Adds an event that repeats. Its occurrences are not stored.
+   */
+  public void add(RecurringEvent event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    EpochRange span = event.getSpan();
+    for (String person : event.getAttendees()) {
+      IntervalTree<RecurringEvent> tree = recurringByAttendee.get(person);
+      if (tree == null) {
+        tree = new IntervalTree<>();
+        recurringByAttendee.put(person, tree);
+      }
+      tree.insert(span.start(), span.end(), event);
+    }
+    size++;
+  }
+
+  /**
+   * Removes a recurring event equal to {@code event}. Returns whether the event was found.
+   */
+  public boolean remove(RecurringEvent event) {
+    EpochRange span = event.getSpan();
+    boolean removed = false;
+    for (String person : event.getAttendees()) {
+      IntervalTree<RecurringEvent> tree = recurringByAttendee.get(person);
+      if (tree != null && tree.remove(span.start(), span.end(), event)) {
+        removed = true;
+        if (tree.size() == 0) {
+          recurringByAttendee.remove(person);
+        }
+      }
+    }
+
+    if (removed) {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Visits the busy time of every given attendee that overlaps {@code window}, including the
+   * occurrences of their recurring events, in order of start time. Each attendee's events and each
+   * recurring event's occurrences are already in order, so they are combined with a k-way merge
+   * and nothing is collected or sorted. The merge holds one cursor per attendee and per recurring
+   * event whose span overlaps the window. An event shared by several attendees is visited once for
+   * each of them.
+   */
+  public void forEachBusy(Collection<String> attendees, final EpochRange window,
+                          IntervalTree.Visitor<? super String> visitor) {
+    final PriorityQueue<IntervalTree.Cursor<String>> heap =
+        new PriorityQueue<>(Math.max(1, 2 * attendees.size()), ORDER_BY_START);
+
+    // Starts a cursor over the occurrences inside the window of each recurring event whose span
+    // overlaps it.
+    IntervalTree.Visitor<RecurringEvent> expander = new IntervalTree.Visitor<RecurringEvent>() {
+      @Override
+      public void visit(long start, long end, RecurringEvent event) {
+        offer(heap, event.occurrences(window.start(), window.end()));
+      }
+    };
+
+    for (String person : attendees) {
+      IntervalTree<String> tree = treesByAttendee.get(person);
+      if (tree != null) {
+        offer(heap, tree.overlapping(window.start(), window.end()));
+      }
+
+      IntervalTree<RecurringEvent> recurring = recurringByAttendee.get(person);
+      if (recurring != null) {
+        recurring.forEachOverlapping(window.start(), window.end(), expander);
+      }
+    }
+
+    while (!heap.isEmpty()) {
+      IntervalTree.Cursor<String> cursor = heap.poll();
+      visitor.visit(cursor.start(), cursor.end(), cursor.value());
+      offer(heap, cursor);
+    }
+  }
+
+  /**
+   * Moves {@code cursor} to its next range and adds it to {@code heap}, unless it has run out.
+   */
+  private static void offer(PriorityQueue<IntervalTree.Cursor<String>> heap,
+                            IntervalTree.Cursor<String> cursor) {
+    if (cursor.advance()) {
+      heap.add(cursor);
+    }
+  }
+
+  /**
+   * Returns the number of events in the index. A recurring event counts once.
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,465 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the events of an iCalendar ({@code .ics}) export into an {@link EventStore}. The scheduler
+ * plans a single day, so only the part of each event that falls on the chosen day is kept.
+ * Events are staged in the store in batches, so memory stays bounded however large the export is,
+ * and published together once the import ends, so queries never see a file half imported.
+ *
+ * <p>A file can be imported on several threads. It is split into chunks at VEVENT boundaries and
+ * each chunk is parsed by its own thread, while writes to the store are serialized by its lock.
+ * The events of different chunks may then reach the store in any order.
+ *
+ * <p>Recurring events are expanded onto the chosen day, so a weekly meeting that started months
+ * ago still counts. A moved or cancelled occurrence is replaced by the event that overrides it,
+ * which may come anywhere in the file, so the day's occurrences are held back and written at the
+ * end. Recurrence rules that can't be expanded contribute their first occurrence only, and are
+ * counted in {@link #getUnsupportedRecurrences}.
+ *
+ * <p>Events whose times, recurrence or time zone can't be parsed are skipped rather than failing
+ * the import, and counted in {@link #getMalformedEvents}.
+ */
+public final class IcsImporter {
+  /** The default number of events written to the store at once. */
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+
+  private static final byte[] EVENT_START = "\nBEGIN:VEVENT".getBytes(StandardCharsets.US_ASCII);
+  private static final int READ_SIZE = 64 * 1024;
+
+  // How long before the chosen day an overridden occurrence may start and still be dropped from
+  // it. Only occurrences this close to the day are remembered.
+  private static final long OVERRIDE_WINDOW = 7 * EpochRange.MINUTES_PER_DAY;
+
+  private final EventStore store;
+  private final ZoneId zone;
+  private final int batchSize;
+  // The chosen day, in minutes since the epoch.
+  private final long dayStart;
+  private final long dayEnd;
+  // Updated by every chunk's thread.
+  private final AtomicLong malformedEvents = new AtomicLong();
+  private final AtomicLong unsupportedRecurrences = new AtomicLong();
+
+  /**
+   * Creates an importer that writes in batches of {@link #DEFAULT_BATCH_SIZE}.
+   */
+  public IcsImporter(EventStore store, LocalDate day, ZoneId zone) {
+    this(store, day, zone, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Creates an importer.
+   *
+   * @param store Where to write the events. Must be non-null.
+   * @param day The day to import. Must be non-null.
+   * @param zone The time zone that the day, times without a zone and all-day events are in. Must be
+   *     non-null.
+   * @param batchSize How many events to write to the store at once. Must be positive.
+   */
+  public IcsImporter(EventStore store, LocalDate day, ZoneId zone, int batchSize) {
+    if (store == null || day == null || zone == null) {
+      throw new IllegalArgumentException("store, day and zone cannot be null");
+    }
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+
+    this.store = store;
+    this.zone = zone;
+    this.batchSize = batchSize;
+    this.dayStart = day.atStartOfDay(zone).toEpochSecond() / 60;
+    this.dayEnd = day.plusDays(1).atStartOfDay(zone).toEpochSecond() / 60;
+  }
+
+  /**
+   * Imports every event in {@code in} on the calling thread. Returns the number of events added.
+   */
+  public long importStream(InputStream in) throws IOException {
+    Occurrences occurrences = new Occurrences();
+    try {
+      long added = importChunk(in, occurrences);
+      return added + addOccurrences(occurrences);
+    } finally {
+      store.publish();
+    }
+  }
+
+  /**
+   * Imports every event in {@code in} on the calling thread without publishing them, and collects
+   * the occurrences of recurring events in {@code occurrences}. Returns the number of events
+   * added.
+   */
+  private long importChunk(InputStream in, Occurrences occurrences) throws IOException {
+    Batch batch = new Batch(occurrences);
+    IcsParser parser = new IcsParser(zone);
+    try {
+      parser.parse(in, batch);
+    } finally {
+      malformedEvents.addAndGet(parser.getMalformedEvents());
+      unsupportedRecurrences.addAndGet(parser.getUnsupportedRecurrences());
+    }
+    batch.flush();
+    return batch.added;
+  }
+
+  /**
+   * Adds the occurrences that weren't overridden, once every chunk has been read. Returns the
+   * number of events added.
+   */
+  private long addOccurrences(Occurrences occurrences) throws IOException {
+    Batch batch = new Batch(occurrences);
+    for (Event event : occurrences.remaining()) {
+      batch.add(event);
+    }
+    batch.flush();
+    return batch.added;
+  }
+
+  /**
+   * Imports every event in {@code file}, parsing up to {@code threads} chunks of it at once.
+   * Returns the number of events added.
+   */
+  public long importFile(File file, int threads) throws IOException {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final List<Long> bounds = split(channel, threads);
+      if (bounds.size() == 2) {
+        return importStream(new ChunkInputStream(channel, 0, channel.size()));
+      }
+
+      final Occurrences occurrences = new Occurrences();
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, bounds.size() - 1));
+      try {
+        List<Future<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+          final InputStream chunk = new ChunkInputStream(channel, bounds.get(i), bounds.get(i + 1));
+          chunks.add(executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+              return importChunk(chunk, occurrences);
+            }
+          }));
+        }
+
+        long added = 0;
+        for (Future<Long> chunk : chunks) {
+          added += chunk.get();
+        }
+        return added + addOccurrences(occurrences);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while importing " + file, e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to import " + file, e.getCause());
+      } finally {
+        executor.shutdownNow();
+        store.publish();
+      }
+    }
+  }
+
+  /**
+   * Returns how many events this importer has skipped so far because their times, recurrence or
+   * time zone couldn't be parsed.
+   */
+  public long getMalformedEvents() {
+    return malformedEvents.get();
+  }
+
+  /**
+   * Returns how many recurring events this importer has read so far whose rule can't be expanded,
+   * such as monthly ones. Only their first occurrence was imported.
+   */
+  public long getUnsupportedRecurrences() {
+    return unsupportedRecurrences.get();
+  }
+
+  /**
+   * Returns the offsets that split the file into about {@code chunks} pieces, starting with 0 and
+   * ending with the file's size. Every offset but the first is the start of a
+   * {@code BEGIN:VEVENT} line, so no event is cut in two.
+   */
+  private static List<Long> split(FileChannel channel, int chunks) throws IOException {
+    long size = channel.size();
+    List<Long> bounds = new ArrayList<>();
+    bounds.add(0L);
+    for (int i = 1; i < chunks; i++) {
+      long from = Math.max(size * i / chunks, bounds.get(bounds.size() - 1));
+      long bound = findEventStart(channel, from);
+      if (bound >= size) {
+        break;
+      }
+      if (bound > bounds.get(bounds.size() - 1)) {
+        bounds.add(bound);
+      }
+    }
+    bounds.add(size);
+    return bounds;
+  }
+
+  /**
+   * Returns the offset of the first {@code BEGIN:VEVENT} line that starts after {@code from}, or
+   * the file's size if there is none.
+   */
+  private static long findEventStart(FileChannel channel, long from) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE + EVENT_START.length);
+    long position = from;
+    int matched = 0;
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        return channel.size();
+      }
+
+      for (int i = 0; i < read; i++) {
+        byte b = buffer.get(i);
+        // The pattern's first byte, a newline, appears nowhere else in it, so a mismatch can only
+        // restart a match at that byte.
+        if (b == EVENT_START[matched]) {
+          matched++;
+        } else {
+          matched = b == EVENT_START[0] ? 1 : 0;
+        }
+        if (matched == EVENT_START.length) {
+          // Skip the newline, so the chunk starts with the BEGIN line itself.
+          return position + i + 1 - EVENT_START.length + 1;
+        }
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Collects events for the chosen day and writes them to the store once enough have built up.
+   */
+  private final class Batch implements IcsParser.Visitor {
+    private final Occurrences occurrences;
+    private List<Event> events = new ArrayList<>();
+    private long added = 0;
+
+    Batch(Occurrences occurrences) {
+      this.occurrences = occurrences;
+    }
+
+    @Override
+    public void visit(String title, long start, long end, List<String> attendees)
+        throws IOException {
+      Event event = onDay(title, start, end, attendees);
+      if (event != null) {
+        add(event);
+      }
+    }
+
+    @Override
+    public void visitRecurring(String uid, RecurringEvent event, ZoneId eventZone)
+        throws IOException {
+      // The day's wall clock times in the event's zone can be off by a daylight saving change, so
+      // look a day either side and leave the rest to onDay.
+      long from = IcsParser.toWallClock(dayStart, eventZone) - EpochRange.MINUTES_PER_DAY;
+      long to = IcsParser.toWallClock(dayEnd, eventZone) + EpochRange.MINUTES_PER_DAY;
+      List<String> attendees = new ArrayList<>(event.getAttendees());
+      IntervalTree.Cursor<String> cursor = event.occurrences(from, to);
+      while (cursor.advance()) {
+        long start = IcsParser.toEpochMinutes(cursor.start(), eventZone);
+        Event occurrence = onDay(
+            event.getTitle(), start, start + cursor.end() - cursor.start(), attendees);
+        if (occurrence == null) {
+          continue;
+        }
+
+        // Without a UID no other event can override the occurrence, so it needn't wait.
+        if (uid == null) {
+          add(occurrence);
+        } else {
+          occurrences.add(uid, start, occurrence);
+        }
+      }
+    }
+
+    @Override
+    public void visitOverride(String uid, long recurrenceId) {
+      occurrences.override(uid, recurrenceId);
+    }
+
+    /**
+     * Returns the part of an event that falls on the chosen day, or null if none does.
+     */
+    private Event onDay(String title, long start, long end, List<String> attendees) {
+      // A day that is longer than usual because of a daylight saving change loses its end.
+      start = Math.max(start, dayStart);
+      end = Math.min(end, Math.min(dayEnd, dayStart + EpochRange.MINUTES_PER_DAY));
+      if (start >= end) {
+        return null;
+      }
+
+      int from = (int) (start - dayStart);
+      int to = (int) (end - dayStart);
+      TimeRange when = to > TimeRange.END_OF_DAY
+          ? TimeRange.fromStartEnd(from, TimeRange.END_OF_DAY, true)
+          : TimeRange.fromStartEnd(from, to, false);
+      return new Event(title, when, attendees);
+    }
+
+    void add(Event event) throws IOException {
+      events.add(event);
+      if (events.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      if (events.isEmpty()) {
+        return;
+      }
+      store.stage(events);
+      added += events.size();
+      events = new ArrayList<>();
+    }
+  }
+
+  /**
+   * The occurrences of recurring events on the chosen day, and the occurrences near it that other
+   * events override. Shared by every chunk of a file.
+   */
+  private final class Occurrences {
+    private final List<String> keys = new ArrayList<>();
+    private final List<Event> events = new ArrayList<>();
+    private final Set<String> overridden = new HashSet<>();
+
+    /**
+     * Holds back occurrence {@code event} of recurring event {@code uid}, which starts at
+     * {@code start} before being cut to the day.
+     */
+    synchronized void add(String uid, long start, Event event) {
+      keys.add(key(uid, start));
+      events.add(event);
+    }
+
+    /**
+     * Drops the occurrence of recurring event {@code uid} that starts at {@code recurrenceId}.
+     */
+    synchronized void override(String uid, long recurrenceId) {
+      if (recurrenceId >= dayStart - OVERRIDE_WINDOW && recurrenceId < dayEnd) {
+        overridden.add(key(uid, recurrenceId));
+      }
+    }
+
+    /**
+     * Returns the occurrences that weren't overridden.
+     */
+    synchronized List<Event> remaining() {
+      List<Event> remaining = new ArrayList<>(events.size());
+      for (int i = 0; i < events.size(); i++) {
+        if (!overridden.contains(keys.get(i))) {
+          remaining.add(events.get(i));
+        }
+      }
+      return remaining;
+    }
+
+    private String key(String uid, long start) {
+      // The start has no spaces, so the key can't be mistaken for another UID's.
+      return start + " " + uid;
+    }
+  }
+
+  /**
+   * Reads the bytes of {@code [from, to)} of a file through positional reads, so that several
+   * threads can read different chunks of the same channel at once.
+   */
+  private static final class ChunkInputStream extends InputStream {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+    private long position;
+    private final long end;
+
+    ChunkInputStream(FileChannel channel, long from, long to) {
+      this.channel = channel;
+      this.position = from;
+      this.end = to;
+      buffer.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    private boolean fill() throws IOException {
+      if (buffer.hasRemaining()) {
+        return true;
+      }
+      if (position >= end) {
+        return false;
+      }
+
+      buffer.clear();
+      buffer.limit((int) Math.min(READ_SIZE, end - position));
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        return false;
+      }
+      position += read;
+      buffer.flip();
+      return true;
+    }
+  }
+}
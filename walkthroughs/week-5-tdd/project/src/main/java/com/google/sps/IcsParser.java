@@ -0,0 +1,753 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the VEVENTs of an iCalendar (RFC 5545) stream one line at a time, so memory stays bounded
+ * however large the stream is. Only what the scheduler needs is kept: the summary, the start and
+ * end, the recurrence, and the people who are busy. Events marked as free (TRANSP:TRANSPARENT) or
+ * cancelled are skipped, and so are attendees who declined.
+ *
+ * <p>DAILY and WEEKLY recurrence rules are supported, with INTERVAL, COUNT, UNTIL, WKST and plain
+ * weekdays in BYDAY, along with EXDATE. Other rules, such as monthly ones, can't be expanded, so
+ * their events contribute their first occurrence only and are counted in
+ * {@link #getUnsupportedRecurrences}. An occurrence that was moved or cancelled is reported by its
+ * UID and RECURRENCE-ID, so that the caller can drop it from the series.
+ *
+ * <p>TZID parameters may name a time zone Java knows, such as {@code Europe/London}, or a Windows
+ * zone name as written by Outlook, such as {@code GMT Standard Time}. An event whose DTSTART,
+ * DTEND, DURATION, RRULE, EXDATE or RECURRENCE-ID can't be parsed, or names any other zone, is
+ * skipped and counted, so one bad event doesn't stop the rest of the stream from being read.
+ */
+final class IcsParser {
+  /**
+   * Receives each event as it is parsed.
+   */
+  interface Visitor {
+    /**
+     * Receives an event that doesn't repeat, or a single occurrence of a recurring event that was
+     * moved. Times are in minutes since the epoch.
+     */
+    void visit(String title, long start, long end, List<String> attendees) throws IOException;
+
+    /**
+     * Receives a recurring event. So that occurrences keep their local time across daylight saving
+     * changes, its times are wall clock times in {@code zone}, counted in minutes since midnight
+     * of 1970-01-01. See {@link IcsParser#toEpochMinutes}. {@code uid} is null if the event has none.
+     */
+    void visitRecurring(String uid, RecurringEvent event, ZoneId zone) throws IOException;
+
+    /**
+     * Receives the start time, in minutes since the epoch, of an occurrence of recurring event
+     * {@code uid} that was moved or cancelled.
+     */
+    void visitOverride(String uid, long recurrenceId) throws IOException;
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final ZoneId defaultZone;
+  private final Map<String, ZoneId> zones = new HashMap<>();
+  // One copy of each person's name, since the same people attend most of an export's events.
+  private final Map<String, String> names = new HashMap<>();
+
+  // The event being read, if any.
+  private boolean inEvent;
+  private int nestedDepth;
+  private String title;
+  private long start;
+  private long end;
+  private long duration;
+  private boolean hasStart;
+  private boolean hasEnd;
+  private boolean hasDuration;
+  private boolean allDay;
+  private boolean skipped;
+  private boolean malformed;
+  private List<String> attendees;
+  private ZoneId startZone;
+  private String uid;
+  private String rule;
+  private boolean hasRecurrenceDates;
+  private List<Long> exceptions;
+  private long recurrenceId;
+  private boolean hasRecurrenceId;
+
+  private long malformedEvents = 0;
+  private long unsupportedRecurrences = 0;
+
+  /**
+   * Creates a parser.
+   *
+   * @param defaultZone The zone of times without a zone of their own, and of all-day events.
+   */
+  IcsParser(ZoneId defaultZone) {
+    if (defaultZone == null) {
+      throw new IllegalArgumentException("defaultZone cannot be null");
+    }
+
+    this.defaultZone = defaultZone;
+  }
+
+  /**
+   * Parses every VEVENT in {@code in} and passes it to {@code visitor}. Text before the first
+   * VEVENT, such as the calendar's header, is skipped, so a stream may start at any VEVENT.
+   */
+  void parse(InputStream in, Visitor visitor) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    inEvent = false;
+
+    // Long lines are folded onto continuation lines that start with a space or a tab. Most lines
+    // aren't folded, so they are only copied into the builder when a continuation turns up.
+    StringBuilder folded = new StringBuilder();
+    String line = null;
+    String next;
+    while ((next = reader.readLine()) != null) {
+      if (line != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+        if (folded.length() == 0) {
+          folded.append(line);
+        }
+        folded.append(next, 1, next.length());
+        continue;
+      }
+      if (line != null) {
+        parseLine(unfold(line, folded), visitor);
+      }
+      line = next;
+    }
+    if (line != null) {
+      parseLine(unfold(line, folded), visitor);
+    }
+  }
+
+  private static String unfold(String line, StringBuilder folded) {
+    if (folded.length() == 0) {
+      return line;
+    }
+    String unfolded = folded.toString();
+    folded.setLength(0);
+    return unfolded;
+  }
+
+  private void parseLine(String line, Visitor visitor) throws IOException {
+    // The name and parameters end at the first colon that isn't inside a quoted parameter.
+    int colon = -1;
+    boolean quoted = false;
+    for (int i = 0; i < line.length() && colon < 0; i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ':' && !quoted) {
+        colon = i;
+      }
+    }
+    if (colon < 0) {
+      return;
+    }
+
+    // Most properties have no parameters, so they are only split out for the properties that use
+    // them.
+    int semicolon = line.indexOf(';');
+    String name = line.substring(0, semicolon >= 0 && semicolon < colon ? semicolon : colon)
+        .toUpperCase();
+    String value = line.substring(colon + 1);
+
+    if (name.equals("BEGIN")) {
+      if (inEvent) {
+        nestedDepth++;
+      } else if (value.equalsIgnoreCase("VEVENT")) {
+        startEvent();
+      }
+      return;
+    }
+
+    if (name.equals("END")) {
+      if (inEvent && nestedDepth > 0) {
+        nestedDepth--;
+      } else if (inEvent && value.equalsIgnoreCase("VEVENT")) {
+        inEvent = false;
+        endEvent(visitor);
+      }
+      return;
+    }
+
+    // Skip properties outside events and inside their alarms.
+    if (!inEvent || nestedDepth > 0) {
+      return;
+    }
+
+    try {
+      parseProperty(name, line, colon, value);
+    } catch (IOException e) {
+      malformed = true;
+    }
+  }
+
+  private void parseProperty(String name, String line, int colon, String value)
+      throws IOException {
+    switch (name) {
+      case "SUMMARY":
+        title = unescape(value);
+        break;
+      case "DTSTART":
+        allDay = isDate(value);
+        startZone = zoneOf(value, parameter(line, colon, "TZID"));
+        start = parseTime(value, startZone);
+        hasStart = true;
+        break;
+      case "DTEND":
+        end = parseTime(value, zoneOf(value, parameter(line, colon, "TZID")));
+        hasEnd = true;
+        break;
+      case "UID":
+        uid = value;
+        break;
+      case "RRULE":
+        rule = value;
+        break;
+      case "RDATE":
+        hasRecurrenceDates = true;
+        break;
+      case "EXDATE":
+        String tzid = parameter(line, colon, "TZID");
+        for (String exception : value.split(",")) {
+          exceptions.add(parseTime(exception, zoneOf(exception, tzid)));
+        }
+        break;
+      case "RECURRENCE-ID":
+        recurrenceId = parseTime(value, zoneOf(value, parameter(line, colon, "TZID")));
+        hasRecurrenceId = true;
+        break;
+      case "DURATION":
+        duration = parseDuration(value);
+        hasDuration = true;
+        break;
+      case "ATTENDEE":
+        if (!"DECLINED".equalsIgnoreCase(parameter(line, colon, "PARTSTAT"))) {
+          attendees.add(intern(personName(line, colon, value)));
+        }
+        break;
+      case "ORGANIZER":
+        attendees.add(intern(personName(line, colon, value)));
+        break;
+      case "TRANSP":
+        skipped |= value.equalsIgnoreCase("TRANSPARENT");
+        break;
+      case "STATUS":
+        skipped |= value.equalsIgnoreCase("CANCELLED");
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void startEvent() {
+    inEvent = true;
+    nestedDepth = 0;
+    title = "";
+    hasStart = false;
+    hasEnd = false;
+    hasDuration = false;
+    allDay = false;
+    skipped = false;
+    malformed = false;
+    attendees = new ArrayList<>();
+    uid = null;
+    rule = null;
+    hasRecurrenceDates = false;
+    exceptions = new ArrayList<>();
+    hasRecurrenceId = false;
+  }
+
+  private void endEvent(Visitor visitor) throws IOException {
+    if (malformed) {
+      malformedEvents++;
+      return;
+    }
+
+    // A cancelled occurrence still replaces the one in its series.
+    if (hasRecurrenceId && uid != null) {
+      visitor.visitOverride(uid, recurrenceId);
+    }
+    if (skipped || !hasStart) {
+      return;
+    }
+
+    // Without an end, an event lasts for its duration, or for the whole day if it is all-day.
+    long eventEnd = start;
+    if (hasEnd) {
+      eventEnd = end;
+    } else if (hasDuration) {
+      eventEnd = start + duration;
+    } else if (allDay) {
+      eventEnd = start + EpochRange.MINUTES_PER_DAY;
+    }
+    eventEnd = Math.max(start, eventEnd);
+
+    // An occurrence that was moved carries its series' rule, but only stands for itself.
+    if (rule != null && !hasRecurrenceId) {
+      List<RecurringEvent> series;
+      try {
+        series = expand(eventEnd - start);
+      } catch (IOException e) {
+        malformedEvents++;
+        return;
+      }
+      if (series != null) {
+        for (RecurringEvent event : series) {
+          visitor.visitRecurring(uid, event, startZone);
+        }
+        return;
+      }
+      unsupportedRecurrences++;
+    }
+    visitor.visit(title, start, eventEnd, attendees);
+  }
+
+  /**
+   * Returns how many events have been skipped so far because their times, recurrence or time zone
+   * couldn't be parsed.
+   */
+  long getMalformedEvents() {
+    return malformedEvents;
+  }
+
+  /**
+   * Returns how many recurring events have been read so far whose rule isn't supported, so that
+   * only their first occurrence was passed on.
+   */
+  long getUnsupportedRecurrences() {
+    return unsupportedRecurrences;
+  }
+
+  /**
+   * Returns the current event's rule as recurring events in wall clock time, one for each weekday
+   * it falls on, or null if the rule isn't supported. Throws if the rule can't be parsed.
+   */
+  private List<RecurringEvent> expand(long eventDuration) throws IOException {
+    if (hasRecurrenceDates) {
+      return null;
+    }
+
+    String frequency = null;
+    int interval = 1;
+    int count = Recurrence.NO_COUNT;
+    long until = Recurrence.NO_UNTIL;
+    List<DayOfWeek> days = new ArrayList<>();
+    DayOfWeek weekStart = DayOfWeek.MONDAY;
+    for (String part : rule.split(";")) {
+      int equals = part.indexOf('=');
+      if (equals < 0) {
+        throw new IOException("Malformed recurrence rule: " + rule);
+      }
+      String name = part.substring(0, equals).toUpperCase(Locale.ROOT);
+      String value = part.substring(equals + 1);
+      switch (name) {
+        case "FREQ":
+          frequency = value.toUpperCase(Locale.ROOT);
+          break;
+        case "INTERVAL":
+          interval = positive(value);
+          break;
+        case "COUNT":
+          count = positive(value);
+          break;
+        case "UNTIL":
+          until = parseUntil(value);
+          break;
+        case "BYDAY":
+          for (String day : value.split(",")) {
+            DayOfWeek dayOfWeek = dayOfWeek(day);
+            if (dayOfWeek == null) {
+              // Days with an ordinal, such as 1MO, only make sense in monthly and yearly rules.
+              return null;
+            }
+            days.add(dayOfWeek);
+          }
+          break;
+        case "WKST":
+          weekStart = dayOfWeek(value);
+          if (weekStart == null) {
+            throw new IOException("Malformed recurrence rule: " + rule);
+          }
+          break;
+        default:
+          // Every other part narrows the occurrences down in ways this can't follow.
+          return null;
+      }
+    }
+
+    long first = toWallClock(start, startZone);
+    List<Long> wallClockExceptions = new ArrayList<>(exceptions.size());
+    for (long exception : exceptions) {
+      wallClockExceptions.add(toWallClock(exception, startZone));
+    }
+
+    if ("DAILY".equals(frequency) && days.isEmpty()) {
+      Recurrence recurrence = new Recurrence(
+          Recurrence.Frequency.DAILY, interval, count, until, wallClockExceptions);
+      return Collections.singletonList(new RecurringEvent(title,
+          EpochRange.fromStartDuration(first, eventDuration), attendees, recurrence));
+    }
+
+    // A daily rule limited to some weekdays is a weekly rule on those days.
+    if ("DAILY".equals(frequency) && interval != 1) {
+      return null;
+    }
+    if (!"DAILY".equals(frequency) && !"WEEKLY".equals(frequency)) {
+      return null;
+    }
+
+    DayOfWeek startDay = DayOfWeek.THURSDAY.plus(
+        Math.floorMod(Math.floorDiv(first, EpochRange.MINUTES_PER_DAY), 7));
+    if (days.isEmpty()) {
+      days.add(startDay);
+    }
+
+    // Number the days from the start of the week, and sort them that way, since weeks are what
+    // the interval counts.
+    boolean[] byDay = new boolean[7];
+    for (DayOfWeek day : days) {
+      byDay[Math.floorMod(day.getValue() - weekStart.getValue(), 7)] = true;
+    }
+    int startIndex = Math.floorMod(startDay.getValue() - weekStart.getValue(), 7);
+    if (!byDay[startIndex]) {
+      // RFC 5545 leaves the occurrences undefined if the first one doesn't follow the rule.
+      return null;
+    }
+    int dayCount = 0;
+    int firstWeekDays = 0;
+    for (int i = 0; i < 7; i++) {
+      if (byDay[i]) {
+        dayCount++;
+        if (i >= startIndex) {
+          firstWeekDays++;
+        }
+      }
+    }
+
+    // Each weekday repeats every interval weeks on its own. The count covers every weekday's
+    // occurrences in order, so it is split between them by where each one falls in the week.
+    List<RecurringEvent> series = new ArrayList<>();
+    int rank = 0;
+    for (int i = 0; i < 7; i++) {
+      if (!byDay[i]) {
+        continue;
+      }
+
+      long offset = i - startIndex;
+      boolean inFirstWeek = offset >= 0;
+      if (!inFirstWeek) {
+        offset += 7L * interval;
+      }
+
+      int occurrences = count;
+      if (count != Recurrence.NO_COUNT) {
+        // The first week only has the days from the first occurrence on, and every later week
+        // has all of them.
+        long later = ceilDiv(count - firstWeekDays - rank, dayCount);
+        long firstWeekRank = rank - (dayCount - firstWeekDays);
+        occurrences = (int) (inFirstWeek ? (firstWeekRank < count ? 1 + later : 0) : later);
+      }
+      rank++;
+      if (occurrences <= 0) {
+        continue;
+      }
+
+      Recurrence recurrence = new Recurrence(
+          Recurrence.Frequency.WEEKLY, interval, occurrences, until, wallClockExceptions);
+      series.add(new RecurringEvent(title, EpochRange.fromStartDuration(
+          first + offset * EpochRange.MINUTES_PER_DAY, eventDuration), attendees, recurrence));
+    }
+    return series;
+  }
+
+  /**
+   * Parses the UNTIL of a rule into wall clock time in the zone of the event's start. A date
+   * includes the whole day, and a time without {@code Z} is already in wall clock time.
+   */
+  private long parseUntil(String value) throws IOException {
+    if (isDate(value)) {
+      return toWallClock(parseTime(value, defaultZone), defaultZone)
+          + EpochRange.MINUTES_PER_DAY - 1;
+    }
+    if (value.endsWith("Z")) {
+      return toWallClock(parseTime(value, ZoneOffset.UTC), startZone);
+    }
+    return parseTime(value, ZoneOffset.UTC);
+  }
+
+  /**
+   * Returns the wall clock time in {@code zone} at {@code epochMinutes}, in minutes since midnight
+   * of 1970-01-01.
+   */
+  static long toWallClock(long epochMinutes, ZoneId zone) {
+    Instant instant = Instant.ofEpochSecond(epochMinutes * 60);
+    return epochMinutes + zone.getRules().getOffset(instant).getTotalSeconds() / 60;
+  }
+
+  /**
+   * Returns the minutes since the epoch at wall clock time {@code wallClock} in {@code zone}. A
+   * time skipped by a daylight saving change is moved forward by the length of the change.
+   */
+  static long toEpochMinutes(long wallClock, ZoneId zone) {
+    LocalDateTime time = LocalDateTime.ofEpochSecond(wallClock * 60, 0, ZoneOffset.UTC);
+    return Math.floorDiv(time.atZone(zone).toEpochSecond(), 60);
+  }
+
+  private static long ceilDiv(long dividend, long divisor) {
+    return dividend <= 0 ? 0 : (dividend + divisor - 1) / divisor;
+  }
+
+  private static int positive(String value) throws IOException {
+    try {
+      int number = Integer.parseInt(value);
+      if (number > 0) {
+        return number;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IOException("Malformed number in recurrence rule: " + value);
+  }
+
+  /**
+   * Returns the weekday of a two letter code such as {@code MO}, or null if it isn't one.
+   */
+  private static DayOfWeek dayOfWeek(String code) {
+    switch (code.toUpperCase(Locale.ROOT)) {
+      case "MO":
+        return DayOfWeek.MONDAY;
+      case "TU":
+        return DayOfWeek.TUESDAY;
+      case "WE":
+        return DayOfWeek.WEDNESDAY;
+      case "TH":
+        return DayOfWeek.THURSDAY;
+      case "FR":
+        return DayOfWeek.FRIDAY;
+      case "SA":
+        return DayOfWeek.SATURDAY;
+      case "SU":
+        return DayOfWeek.SUNDAY;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the value of parameter {@code name}, without quotes, or null if it isn't given. The
+   * parameters are the {@code ;PARAM=VALUE} pairs before {@code colon}, split at every semicolon
+   * outside quotes.
+   */
+  private static String parameter(String line, int colon, String name) {
+    boolean quoted = false;
+    int from = -1;
+    for (int i = 0; i <= colon; i++) {
+      char c = i < colon ? line.charAt(i) : ';';
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ';' && !quoted) {
+        if (from >= 0 && line.startsWith("=", from + name.length())
+            && line.regionMatches(true, from, name, 0, name.length())) {
+          int valueFrom = from + name.length() + 1;
+          if (i - valueFrom >= 2 && line.charAt(valueFrom) == '"' && line.charAt(i - 1) == '"') {
+            return line.substring(valueFrom + 1, i - 1);
+          }
+          return line.substring(valueFrom, i);
+        }
+        from = i + 1;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a person's common name if given, or else their address without {@code mailto:}.
+   */
+  private static String personName(String line, int colon, String value) {
+    String commonName = parameter(line, colon, "CN");
+    if (commonName != null && !commonName.isEmpty()) {
+      return commonName;
+    }
+    return value.regionMatches(true, 0, "mailto:", 0, 7) ? value.substring(7) : value;
+  }
+
+  private String intern(String name) {
+    String interned = names.get(name);
+    if (interned == null) {
+      names.put(name, name);
+      return name;
+    }
+    return interned;
+  }
+
+  private static boolean isDate(String value) {
+    return value.length() == 8;
+  }
+
+  /**
+   * Parses a DATE ({@code 20200101}) or DATE-TIME ({@code 20200101T090000}, with a trailing
+   * {@code Z} for UTC) into minutes since the epoch. A DATE-TIME without {@code Z} is taken to be
+   * in {@code zone}, and a DATE in the default zone.
+   */
+  private long parseTime(String value, ZoneId zone) throws IOException {
+    try {
+      int year = digits(value, 0, 4);
+      int month = digits(value, 4, 2);
+      int day = digits(value, 6, 2);
+      if (isDate(value)) {
+        return LocalDateTime.of(year, month, day, 0, 0).atZone(defaultZone).toEpochSecond() / 60;
+      }
+
+      if (value.length() < 15 || value.charAt(8) != 'T') {
+        throw new IOException("Malformed date-time: " + value);
+      }
+      LocalDateTime time = LocalDateTime.of(year, month, day, digits(value, 9, 2),
+          digits(value, 11, 2), digits(value, 13, 2));
+      return Math.floorDiv(time.atZone(zone).toEpochSecond(), 60);
+    } catch (DateTimeException e) {
+      throw new IOException("Malformed date-time: " + value, e);
+    }
+  }
+
+  /**
+   * Returns the zone of a DATE or DATE-TIME with parameter TZID {@code tzid}.
+   */
+  private ZoneId zoneOf(String value, String tzid) throws IOException {
+    if (value.endsWith("Z")) {
+      return ZoneOffset.UTC;
+    }
+    if (tzid == null || isDate(value)) {
+      return defaultZone;
+    }
+
+    ZoneId zone = zones.get(tzid);
+    if (zone == null) {
+      try {
+        zone = ZoneId.of(tzid);
+      } catch (DateTimeException e) {
+        zone = WindowsZones.get(tzid);
+      }
+      if (zone == null) {
+        throw new IOException("Unknown time zone: " + tzid);
+      }
+      zones.put(tzid, zone);
+    }
+    return zone;
+  }
+
+  /**
+   * Parses a duration such as {@code PT1H30M}, {@code P1D} or {@code P2W} into minutes. Seconds are
+   * rounded down.
+   */
+  private static long parseDuration(String value) throws IOException {
+    long minutes = 0;
+    long seconds = 0;
+    long number = 0;
+    boolean negative = value.startsWith("-");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        number = number * 10 + (c - '0');
+        continue;
+      }
+      switch (c) {
+        case 'W':
+          minutes += number * 7 * EpochRange.MINUTES_PER_DAY;
+          break;
+        case 'D':
+          minutes += number * EpochRange.MINUTES_PER_DAY;
+          break;
+        case 'H':
+          minutes += number * 60;
+          break;
+        case 'M':
+          minutes += number;
+          break;
+        case 'S':
+          seconds += number;
+          break;
+        case 'P':
+        case 'T':
+        case '+':
+        case '-':
+          break;
+        default:
+          throw new IOException("Malformed duration: " + value);
+      }
+      number = 0;
+    }
+    minutes += seconds / 60;
+    return negative ? -minutes : minutes;
+  }
+
+  private static int digits(String value, int from, int count) throws IOException {
+    if (value.length() < from + count) {
+      throw new IOException("Malformed date-time: " + value);
+    }
+
+    int result = 0;
+    for (int i = from; i < from + count; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IOException("Malformed date-time: " + value);
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  /**
+   * Undoes the escaping of TEXT values: {@code \n} is a newline, and backslash, semicolon and
+   * comma are escaped with a backslash.
+   */
+  private static String unescape(String value) {
+    if (value.indexOf('\\') < 0) {
+      return value;
+    }
+
+    StringBuilder out = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        char escaped = value.charAt(++i);
+        out.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+}
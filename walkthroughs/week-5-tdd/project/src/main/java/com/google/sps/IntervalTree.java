@@ -0,0 +1,318 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayDeque;
+
+/**
+ * An augmented AVL tree of half-open intervals {@code [start, end)} with a value attached to each.
+ * Every node also stores the largest end in its subtree, so finding the {@code k} intervals that
+ * overlap a window takes O(log n + k) time. The tree allows duplicate intervals and is not
+ * thread-safe.
+ */
+public final class IntervalTree<T> {
+  /**
+   * Receives the intervals found by {@link IntervalTree#forEachOverlapping}.
+   */
+  public interface Visitor<T> {
+    void visit(long start, long end, T value);
+  }
+
+  /**
+   * Steps through intervals in order of start time, one per call to {@link #advance}, so that
+   * several sequences can be merged without collecting them first.
+   */
+  interface Cursor<T> {
+    /** Moves to the next interval. Returns false once there are none left. */
+    boolean advance();
+
+    /** Returns the start of the current interval. */
+    long start();
+
+    /** Returns the exclusive end of the current interval. */
+    long end();
+
+    /** Returns the value of the current interval. */
+    T value();
+  }
+
+  private static final class Node<T> {
+    final long start;
+    final long end;
+    // Breaks ties between intervals with the same bounds so that every key is unique.
+    final long sequence;
+    final T value;
+
+    Node<T> left;
+    Node<T> right;
+    int height = 1;
+    long maxEnd;
+
+    Node(long start, long end, long sequence, T value) {
+      this.start = start;
+      this.end = end;
+      this.sequence = sequence;
+      this.value = value;
+      this.maxEnd = end;
+    }
+  }
+
+  private Node<T> root;
+  private int size = 0;
+  private long nextSequence = 0;
+
+  /**
+   * Adds the interval {@code [start, end)} with the given value.
+   */
+  public void insert(long start, long end, T value) {
+    if (end < start) {
+      throw new IllegalArgumentException("end cannot come before start");
+    }
+
+    root = insert(root, new Node<T>(start, end, nextSequence++, value));
+    size++;
+  }
+
+  /**
+   * Removes one interval {@code [start, end)} whose value equals {@code value}. Returns whether
+   * such an interval was found.
+   */
+  public boolean remove(long start, long end, T value) {
+    Node<T> node = find(root, start, end, value);
+    if (node == null) {
+      return false;
+    }
+
+    root = remove(root, node);
+    size--;
+    return true;
+  }
+
+  /**
+   * Returns the number of intervals in the tree.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Visits every interval that overlaps {@code [from, to)} in order of start time. Empty intervals
+   * never overlap anything.
+   */
+  public void forEachOverlapping(long from, long to, Visitor<? super T> visitor) {
+    forEachOverlapping(root, from, to, visitor);
+  }
+
+  private static <T> void forEachOverlapping(Node<T> node, long from, long to,
+                                             Visitor<? super T> visitor) {
+    while (node != null && node.maxEnd > from) {
+      forEachOverlapping(node.left, from, to, visitor);
+
+      // Everything to the right starts at or after this node, so stop once past the window.
+      if (node.start >= to) {
+        return;
+      }
+
+      if (node.end > from && node.end > node.start) {
+        visitor.visit(node.start, node.end, node.value);
+      }
+      node = node.right;
+    }
+  }
+
+  /**
+   * Returns a cursor over the same intervals that {@link #forEachOverlapping} visits, in the same
+   * order. It holds one path from the root, so it uses O(log n) memory. The tree must not change
+   * while the cursor is in use.
+   */
+  Cursor<T> overlapping(final long from, final long to) {
+    return new Cursor<T>() {
+      // The nodes whose left subtree is being walked, innermost on top.
+      private final ArrayDeque<Node<T>> path = new ArrayDeque<>();
+      private Node<T> current;
+
+      {
+        descend(root);
+      }
+
+      @Override
+      public boolean advance() {
+        while (!path.isEmpty()) {
+          Node<T> node = path.pop();
+          // Everything still on the path starts at or after this node.
+          if (node.start >= to) {
+            path.clear();
+            return false;
+          }
+
+          descend(node.right);
+          if (node.end > from && node.end > node.start) {
+            current = node;
+            return true;
+          }
+        }
+        return false;
+      }
+
+      private void descend(Node<T> node) {
+        while (node != null && node.maxEnd > from) {
+          path.push(node);
+          node = node.left;
+        }
+      }
+
+      @Override
+      public long start() {
+        return current.start;
+      }
+
+      @Override
+      public long end() {
+        return current.end;
+      }
+
+      @Override
+      public T value() {
+        return current.value;
+      }
+    };
+  }
+
+  private static <T> int compare(Node<T> a, Node<T> b) {
+    if (a.start != b.start) {
+      return Long.compare(a.start, b.start);
+    }
+    if (a.end != b.end) {
+      return Long.compare(a.end, b.end);
+    }
+    return Long.compare(a.sequence, b.sequence);
+  }
+
+  private static <T> Node<T> find(Node<T> node, long start, long end, T value) {
+    while (node != null) {
+      if (start < node.start || (start == node.start && end < node.end)) {
+        node = node.left;
+      } else if (start > node.start || end > node.end) {
+        node = node.right;
+      } else {
+        // Intervals with the same bounds may be on either side, ordered by sequence.
+        if (value == null ? node.value == null : value.equals(node.value)) {
+          return node;
+        }
+        Node<T> found = find(node.left, start, end, value);
+        return found != null ? found : find(node.right, start, end, value);
+      }
+    }
+    return null;
+  }
+
+  private static <T> Node<T> insert(Node<T> node, Node<T> added) {
+    if (node == null) {
+      return added;
+    }
+
+    if (compare(added, node) < 0) {
+      node.left = insert(node.left, added);
+    } else {
+      node.right = insert(node.right, added);
+    }
+    return rebalance(node);
+  }
+
+  private static <T> Node<T> remove(Node<T> node, Node<T> removed) {
+    int comparison = compare(removed, node);
+    if (comparison < 0) {
+      node.left = remove(node.left, removed);
+    } else if (comparison > 0) {
+      node.right = remove(node.right, removed);
+    } else {
+      if (node.left == null) {
+        return node.right;
+      }
+      if (node.right == null) {
+        return node.left;
+      }
+
+      // Replace the node with the smallest node of its right subtree.
+      Node<T> successor = node.right;
+      while (successor.left != null) {
+        successor = successor.left;
+      }
+      successor.right = removeSmallest(node.right);
+      successor.left = node.left;
+      node = successor;
+    }
+    return rebalance(node);
+  }
+
+  private static <T> Node<T> removeSmallest(Node<T> node) {
+    if (node.left == null) {
+      return node.right;
+    }
+    node.left = removeSmallest(node.left);
+    return rebalance(node);
+  }
+
+  private static <T> Node<T> rebalance(Node<T> node) {
+    update(node);
+    int balance = height(node.left) - height(node.right);
+    if (balance > 1) {
+      if (height(node.left.left) < height(node.left.right)) {
+        node.left = rotateLeft(node.left);
+      }
+      return rotateRight(node);
+    }
+    if (balance < -1) {
+      if (height(node.right.right) < height(node.right.left)) {
+        node.right = rotateRight(node.right);
+      }
+      return rotateLeft(node);
+    }
+    return node;
+  }
+
+  private static <T> Node<T> rotateLeft(Node<T> node) {
+    Node<T> pivot = node.right;
+    node.right = pivot.left;
+    pivot.left = node;
+    update(node);
+    update(pivot);
+    return pivot;
+  }
+
+  private static <T> Node<T> rotateRight(Node<T> node) {
+    Node<T> pivot = node.left;
+    node.left = pivot.right;
+    pivot.right = node;
+    update(node);
+    update(pivot);
+    return pivot;
+  }
+
+  private static <T> void update(Node<T> node) {
+    node.height = 1 + Math.max(height(node.left), height(node.right));
+    node.maxEnd = node.end;
+    if (node.left != null && node.left.maxEnd > node.maxEnd) {
+      node.maxEnd = node.left.maxEnd;
+    }
+    if (node.right != null && node.right.maxEnd > node.maxEnd) {
+      node.maxEnd = node.right.maxEnd;
+    }
+  }
+
+  private static <T> int height(Node<T> node) {
+    return node == null ? 0 : node.height;
+  }
+}
@@ -0,0 +1,224 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of meeting query results in front of an
+ * {@link EventIndex}. Requests with the same attendees, optional attendees and duration share an
+ * entry, no matter what order the attendees were listed in. An entry is only thrown away when the
+ * calendar of one of its own attendees changes, which is checked against the index's versions.
+ */
+public final class MeetingQueryCache {
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+  private final EventIndex index;
+  private final Map<Key, Entry> entries;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long invalidations = 0;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param index The events to answer queries from. Must be non-null.
+   * @param capacity The most results to keep. Must be positive.
+   */
+  public MeetingQueryCache(EventIndex index, int capacity) {
+    this(capacity, index);
+    if (index == null) {
+      throw new IllegalArgumentException("index cannot be null");
+    }
+  }
+
+  /**
+   * Creates an empty cache whose callers pass the index with every query, for example a fresh
+   * {@link EventIndex#snapshot} each time. Every index passed in must be a version of the same
+   * calendar.
+   *
+   * @param capacity The most results to keep. Must be positive.
+   */
+  public MeetingQueryCache(int capacity) {
+    this(capacity, null);
+  }
+
+  private MeetingQueryCache(final int capacity, EventIndex index) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    this.index = index;
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if (size() > capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the same time ranges as {@link FindMeetingQuery#query(EventIndex, MeetingRequest)},
+   * reusing an earlier answer if none of the request's attendees have had their calendars change.
+   * The returned collection is read-only.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) {
+    if (index == null) {
+      throw new IllegalStateException("This cache was created without an index.");
+    }
+    return query(index, request);
+  }
+
+  /**
+   * Returns the same time ranges as {@link FindMeetingQuery#query(EventIndex, MeetingRequest)},
+   * reusing an earlier answer if none of the request's attendees have had their calendars change
+   * by {@code index}'s version. The returned collection is read-only.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request) {
+    Key key = new Key(request);
+
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && isCurrent(index, entry, key)) {
+        hits++;
+        return entry.timeRanges;
+      }
+
+      if (entry != null) {
+        entries.remove(key);
+        invalidations++;
+      }
+      misses++;
+    }
+
+    // Read the version before querying, so that a change made during the query makes the entry
+    // look stale rather than current.
+    long version = index.getVersion();
+    Collection<TimeRange> timeRanges = Collections.unmodifiableList(
+        new ArrayList<TimeRange>(findMeetingQuery.query(index, request)));
+
+    synchronized (this) {
+      entries.put(key, new Entry(timeRanges, version));
+    }
+    return timeRanges;
+  }
+
+  /**
+   * Returns how many queries were answered from the cache.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns how many queries had to be computed.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns how many entries were dropped to keep the cache within its capacity.
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Returns how many entries were dropped because one of their attendees' calendars changed.
+   */
+  public synchronized long getInvalidations() {
+    return invalidations;
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private static boolean isCurrent(EventIndex index, Entry entry, Key key) {
+    if (index.getVersion() == entry.version) {
+      return true;
+    }
+    return isCurrent(index, entry, key.attendees)
+        && isCurrent(index, entry, key.optionalAttendees);
+  }
+
+  private static boolean isCurrent(EventIndex index, Entry entry, String[] attendees) {
+    for (String person : attendees) {
+      if (index.getVersion(person) > entry.version) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Entry {
+    final Collection<TimeRange> timeRanges;
+    final long version;
+
+    Entry(Collection<TimeRange> timeRanges, long version) {
+      this.timeRanges = timeRanges;
+      this.version = version;
+    }
+  }
+
+  /**
+   * The canonical form of a request: its sorted attendees, sorted optional attendees and duration.
+   */
+  private static final class Key {
+    final String[] attendees;
+    final String[] optionalAttendees;
+    final long duration;
+    final int hashCode;
+
+    Key(MeetingRequest request) {
+      attendees = request.getAttendees().toArray(new String[0]);
+      optionalAttendees = request.getOptionalAttendees().toArray(new String[0]);
+      duration = request.getDuration();
+      Arrays.sort(attendees);
+      Arrays.sort(optionalAttendees);
+      hashCode = 31 * (31 * Arrays.hashCode(attendees) + Arrays.hashCode(optionalAttendees))
+          + Long.hashCode(duration);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return duration == key.duration && Arrays.equals(attendees, key.attendees)
+          && Arrays.equals(optionalAttendees, key.optionalAttendees);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
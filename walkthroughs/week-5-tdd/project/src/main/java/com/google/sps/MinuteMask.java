@@ -0,0 +1,172 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Helpers for working with minute masks. A minute mask is a {@code long[]} with one bit for every
+ * minute of the day, where a set bit means that minute is busy. Bit {@code m % 64} of word
+ * {@code m / 64} holds minute {@code m}.
+ */
+public final class MinuteMask {
+  /** The number of minutes covered by a mask. */
+  public static final int MINUTES = TimeRange.WHOLE_DAY.duration();
+
+  /** The number of {@code long} words needed to hold a mask. */
+  public static final int WORDS = (MINUTES + Long.SIZE - 1) / Long.SIZE;
+
+  private MinuteMask() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns a new mask with every minute free.
+   */
+  public static long[] create() {
+    return new long[WORDS];
+  }
+
+  /**
+   * Marks every minute in {@code [start, end)} as busy. The range is clamped to the day.
+   */
+  public static void setRange(long[] mask, int start, int end) {
+    start = Math.max(start, 0);
+    end = Math.min(end, MINUTES);
+    if (start >= end) {
+      return;
+    }
+
+    int firstWord = start >>> 6;
+    int lastWord = (end - 1) >>> 6;
+    long firstBits = -1L << start;
+    long lastBits = -1L >>> -end;
+
+    if (firstWord == lastWord) {
+      mask[firstWord] |= firstBits & lastBits;
+      return;
+    }
+
+    mask[firstWord] |= firstBits;
+    for (int i = firstWord + 1; i < lastWord; i++) {
+      mask[i] = -1L;
+    }
+    mask[lastWord] |= lastBits;
+  }
+
+  /**
+   * Marks every minute of {@code range} as busy.
+   */
+  public static void setRange(long[] mask, TimeRange range) {
+    setRange(mask, range.start(), range.end());
+  }
+
+  /**
+   * Sets {@code target} to the union of {@code target} and {@code other}.
+   */
+  public static void or(long[] target, long[] other) {
+    for (int i = 0; i < WORDS; i++) {
+      target[i] |= other[i];
+    }
+  }
+
+  /**
+   * Frees every minute of {@code mask}.
+   */
+  public static void clear(long[] mask) {
+    Arrays.fill(mask, 0L);
+  }
+
+  /**
+   * Returns whether every minute of {@code mask} is free.
+   */
+  public static boolean isEmpty(long[] mask) {
+    for (long word : mask) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the first busy minute at or after {@code from}, or {@link #MINUTES} if there is none.
+   */
+  public static int nextBusy(long[] mask, int from) {
+    if (from >= MINUTES) {
+      return MINUTES;
+    }
+
+    int i = from >>> 6;
+    long word = mask[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS) {
+        return MINUTES;
+      }
+      word = mask[i];
+    }
+    return Math.min(MINUTES, (i << 6) + Long.numberOfTrailingZeros(word));
+  }
+
+  /**
+   * Returns the first free minute at or after {@code from}, or {@link #MINUTES} if there is none.
+   */
+  public static int nextFree(long[] mask, int from) {
+    if (from >= MINUTES) {
+      return MINUTES;
+    }
+
+    int i = from >>> 6;
+    long word = ~mask[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS) {
+        return MINUTES;
+      }
+      word = ~mask[i];
+    }
+    return Math.min(MINUTES, (i << 6) + Long.numberOfTrailingZeros(word));
+  }
+
+  /**
+   * Adds every run of free minutes in {@code mask} that is at least {@code duration} minutes long
+   * to {@code out}, in order.
+   */
+  public static void addFreeRanges(long[] mask, long duration, Collection<TimeRange> out) {
+    int start = nextFree(mask, 0);
+    while (start < MINUTES) {
+      int end = nextBusy(mask, start);
+      if (end - start >= duration) {
+        out.add(TimeRange.fromStartEnd(start, end, false));
+      }
+      start = nextFree(mask, end);
+    }
+  }
+
+  /**
+   * Returns whether {@code mask} has a run of free minutes at least {@code duration} long.
+   */
+  public static boolean hasFreeRange(long[] mask, long duration) {
+    int start = nextFree(mask, 0);
+    while (start < MINUTES) {
+      int end = nextBusy(mask, start);
+      if (end - start >= duration) {
+        return true;
+      }
+      start = nextFree(mask, end);
+    }
+    return false;
+  }
+}
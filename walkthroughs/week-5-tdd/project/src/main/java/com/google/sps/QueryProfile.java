@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Gathers many {@link QueryTrace}s into histograms, one per phase and one per counter, so slow
+ * queries can be pinned on a phase. Thread-safe.
+ */
+public final class QueryProfile {
+  private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+  private final Histogram[] phaseNanos;
+  private final Histogram totalNanos = add("totalNanos");
+  private final Histogram eventsScanned = add("eventsScanned");
+  private final Histogram rangesMerged = add("rangesMerged");
+  private final Histogram slotsEmitted = add("slotsEmitted");
+
+  /**
+   * Creates a profile with empty histograms.
+   */
+  public QueryProfile() {
+    QueryTrace.Phase[] phases = QueryTrace.Phase.values();
+    phaseNanos = new Histogram[phases.length];
+    for (QueryTrace.Phase phase : phases) {
+      phaseNanos[phase.ordinal()] = add(phase.name().toLowerCase(Locale.ROOT) + "Nanos");
+    }
+  }
+
+  /**
+   * Adds every timer and counter of {@code trace} to the histograms.
+   */
+  public void record(QueryTrace trace) {
+    for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+      phaseNanos[phase.ordinal()].record(trace.getNanos(phase));
+    }
+    totalNanos.record(trace.getTotalNanos());
+    eventsScanned.record(trace.getEventsScanned());
+    rangesMerged.record(trace.getRangesMerged());
+    slotsEmitted.record(trace.getSlotsEmitted());
+  }
+
+  /**
+   * Returns the histograms by name: {@code totalNanos}, the three counters, and one
+   * {@code <phase>Nanos} per phase. The map is read-only.
+   */
+  public Map<String, Histogram> getHistograms() {
+    return Collections.unmodifiableMap(histograms);
+  }
+
+  private Histogram add(String name) {
+    Histogram histogram = new Histogram();
+    histograms.put(name, histogram);
+    return histogram;
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * Times the phases of one {@link FindMeetingQuery} query and counts the work it did. Pass a new
+ * trace to a query to fill it in, then read it or add it to a {@link QueryProfile}. Queries that
+ * aren't being traced use {@link #OFF}, whose methods return straight away, so tracing costs
+ * nothing unless it is asked for. A trace is not thread-safe.
+ */
+public final class QueryTrace {
+  /**
+   * The parts of a query that are timed separately.
+   */
+  public enum Phase {
+    /** Picking out the events of the requested attendees. Queries on an index skip it. */
+    FILTER,
+    /** Reading the time ranges of those events, or each group's busy time from an index. */
+    EXTRACT,
+    /**
+     * Sorting each group's ranges and joining the ones that overlap. An index keeps its busy time
+     * sorted and joined, so queries on it skip this too.
+     */
+    SORT,
+    /** Combining the optional attendees' busy time with the mandatory attendees'. */
+    MERGE,
+    /** Scanning the busy time for gaps that fit the meeting. */
+    GAPS
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  /**
+   * A trace that records nothing.
+   */
+  public static final QueryTrace OFF = new QueryTrace(false);
+
+  private final boolean enabled;
+  private final long[] nanos = new long[PHASES.length];
+  private long lapStart;
+  private long eventsScanned = 0;
+  private long rangesMerged = 0;
+  private long slotsEmitted = 0;
+
+  /**
+   * Creates an empty trace that records.
+   */
+  public QueryTrace() {
+    this(true);
+  }
+
+  private QueryTrace(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns the nanoseconds spent in {@code phase}.
+   */
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * Returns the nanoseconds spent in every phase together.
+   */
+  public long getTotalNanos() {
+    long total = 0;
+    for (long phaseNanos : nanos) {
+      total += phaseNanos;
+    }
+    return total;
+  }
+
+  /**
+   * Returns how many events were checked for the requested attendees. Queries on an
+   * {@link EventIndex} don't look at events, so for them this is 0.
+   */
+  public long getEventsScanned() {
+    return eventsScanned;
+  }
+
+  /**
+   * Returns how many busy ranges were left after merging, summed over every merge.
+   */
+  public long getRangesMerged() {
+    return rangesMerged;
+  }
+
+  /**
+   * Returns how many time ranges the query returned.
+   */
+  public long getSlotsEmitted() {
+    return slotsEmitted;
+  }
+
+  /**
+   * Starts timing the first phase.
+   */
+  void start() {
+    if (enabled) {
+      lapStart = System.nanoTime();
+    }
+  }
+
+  /**
+   * Adds the time since the last lap, or since {@link #start}, to {@code phase}.
+   */
+  void lap(Phase phase) {
+    if (enabled) {
+      long now = System.nanoTime();
+      nanos[phase.ordinal()] += now - lapStart;
+      lapStart = now;
+    }
+  }
+
+  void addEventsScanned(int count) {
+    if (enabled) {
+      eventsScanned += count;
+    }
+  }
+
+  void addRangesMerged(int count) {
+    if (enabled) {
+      rangesMerged += count;
+    }
+  }
+
+  void addSlotsEmitted(int count) {
+    if (enabled) {
+      slotsEmitted += count;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * A time range paired with the number of optional attendees who can attend a meeting placed
+ * anywhere inside it. Ranked time ranges are considered read-only.
+ */
+public final class RankedTimeRange {
+  private final TimeRange when;
+  private final int optionalAttendees;
+
+  /**
+   * Creates a new ranked time range.
+   *
+   * @param when The time range. Must be non-null.
+   * @param optionalAttendees How many optional attendees are free during the range.
+   */
+  public RankedTimeRange(TimeRange when, int optionalAttendees) {
+    if (when == null) {
+      throw new IllegalArgumentException("when cannot be null");
+    }
+
+    this.when = when;
+    this.optionalAttendees = optionalAttendees;
+  }
+
+  /**
+   * Returns the {@code TimeRange} that a meeting can be placed in.
+   */
+  public TimeRange getWhen() {
+    return when;
+  }
+
+  /**
+   * Returns how many optional attendees can attend a meeting placed anywhere in the range.
+   */
+  public int getOptionalAttendees() {
+    return optionalAttendees;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof RankedTimeRange
+        && when.equals(((RankedTimeRange) other).when)
+        && optionalAttendees == ((RankedTimeRange) other).optionalAttendees;
+  }
+
+  @Override
+  public int hashCode() {
+    return when.hashCode() ^ optionalAttendees;
+  }
+
+  @Override
+  public String toString() {
+    return when + " with " + optionalAttendees + " optional attendees";
+  }
+}
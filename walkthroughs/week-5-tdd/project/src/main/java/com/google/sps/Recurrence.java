@@ -0,0 +1,174 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A rule for how often an event repeats: every {@code interval} days or weeks, stopping after
+ * {@code count} occurrences or once occurrences would start after {@code until}, whichever comes
+ * first. Single occurrences can be cancelled by listing their start times as exceptions. A moved
+ * occurrence is an exception plus a one-off {@link Event}. Recurrences are read-only.
+ */
+public final class Recurrence {
+  /**
+   * How far apart occurrences are when the interval is 1.
+   */
+  public enum Frequency {
+    DAILY(EpochRange.MINUTES_PER_DAY),
+    WEEKLY(7 * EpochRange.MINUTES_PER_DAY);
+
+    private final long minutes;
+
+    Frequency(long minutes) {
+      this.minutes = minutes;
+    }
+  }
+
+  /**
+   * Passed as {@code count} for a recurrence that is only bounded by {@code until}.
+   */
+  public static final int NO_COUNT = Integer.MAX_VALUE;
+
+  /**
+   * Passed as {@code until} for a recurrence that is only bounded by {@code count}.
+   */
+  public static final long NO_UNTIL = Long.MAX_VALUE;
+
+  private final Frequency frequency;
+  private final int interval;
+  private final int count;
+  private final long until;
+  // The start times of cancelled occurrences, sorted so they can be binary searched.
+  private final long[] exceptions;
+
+  /**
+   * Creates a recurrence that repeats forever.
+   */
+  public Recurrence(Frequency frequency, int interval) {
+    this(frequency, interval, NO_COUNT, NO_UNTIL, Collections.<Long>emptyList());
+  }
+
+  /**
+   * Creates a recurrence.
+   *
+   * @param frequency Whether the event repeats daily or weekly. Must be non-null.
+   * @param interval How many days or weeks apart occurrences are. Must be positive.
+   * @param count The most occurrences there can be, counting cancelled ones. Must be positive.
+   * @param until The latest minute since the epoch that an occurrence may start.
+   * @param exceptions The start times of cancelled occurrences. Must be non-null.
+   */
+  public Recurrence(Frequency frequency, int interval, int count, long until,
+                    Collection<Long> exceptions) {
+    if (frequency == null) {
+      throw new IllegalArgumentException("frequency cannot be null");
+    }
+
+    if (interval <= 0) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+
+    if (count <= 0) {
+      throw new IllegalArgumentException("count must be positive");
+    }
+
+    if (exceptions == null) {
+      throw new IllegalArgumentException("exceptions cannot be null. Use empty list instead.");
+    }
+
+    this.frequency = frequency;
+    this.interval = interval;
+    this.count = count;
+    this.until = until;
+    this.exceptions = new long[exceptions.size()];
+    int i = 0;
+    for (long exception : exceptions) {
+      this.exceptions[i++] = exception;
+    }
+    Arrays.sort(this.exceptions);
+  }
+
+  /**
+   * Returns whether the event repeats daily or weekly.
+   */
+  public Frequency getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * Returns how many days or weeks apart occurrences are.
+   */
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the most occurrences there can be, or {@link #NO_COUNT}.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the latest minute an occurrence may start, or {@link #NO_UNTIL}.
+   */
+  public long getUntil() {
+    return until;
+  }
+
+  /**
+   * Returns the number of minutes between the starts of consecutive occurrences.
+   */
+  public long getPeriod() {
+    return frequency.minutes * interval;
+  }
+
+  /**
+   * Returns the index of the last occurrence of an event whose first occurrence starts at
+   * {@code firstStart}, or -1 if {@code until} comes before the first occurrence.
+   */
+  long lastIndex(long firstStart) {
+    if (until < firstStart) {
+      return -1;
+    }
+    long last = (until - firstStart) / getPeriod();
+    return count == NO_COUNT ? last : Math.min(count - 1L, last);
+  }
+
+  /**
+   * Returns whether the occurrence starting at {@code start} was cancelled.
+   */
+  boolean isException(long start) {
+    return exceptions.length > 0 && Arrays.binarySearch(exceptions, start) >= 0;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Recurrence)) {
+      return false;
+    }
+    Recurrence recurrence = (Recurrence) other;
+    return frequency == recurrence.frequency && interval == recurrence.interval
+        && count == recurrence.count && until == recurrence.until
+        && Arrays.equals(exceptions, recurrence.exceptions);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * frequency.hashCode() + interval) + count;
+  }
+}
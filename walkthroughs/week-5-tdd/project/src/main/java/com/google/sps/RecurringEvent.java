@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An event that repeats by a {@link Recurrence}, such as a daily standup. Only the first occurrence
+ * and the rule are stored. Occurrences are worked out on demand and only inside the window being
+ * asked about, so a standup that repeats for years costs the same as a single event. Recurring
+ * events are read-only.
+ */
+public final class RecurringEvent {
+  private final String title;
+  private final EpochRange first;
+  private final Set<String> attendees;
+  private final Recurrence recurrence;
+
+  /**
+   * Creates a new recurring event.
+   *
+   * @param title The human-readable name for the event. Must be non-null.
+   * @param first The time of the first occurrence. Must be non-null.
+   * @param attendees The collection of people attending the event. Must be non-null.
+   * @param recurrence How often the event repeats. Must be non-null.
+   */
+  public RecurringEvent(String title, EpochRange first, Collection<String> attendees,
+                        Recurrence recurrence) {
+    if (title == null) {
+      throw new IllegalArgumentException("title cannot be null");
+    }
+
+    if (first == null) {
+      throw new IllegalArgumentException("first cannot be null");
+    }
+
+    if (attendees == null) {
+      throw new IllegalArgumentException("attendees cannot be null. Use empty array instead.");
+    }
+
+    if (recurrence == null) {
+      throw new IllegalArgumentException("recurrence cannot be null");
+    }
+
+    this.title = title;
+    this.first = first;
+    this.attendees = Collections.unmodifiableSet(new HashSet<String>(attendees));
+    this.recurrence = recurrence;
+  }
+
+  /**
+   * Returns the human-readable name for this event.
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * Returns the time of the first occurrence.
+   */
+  public EpochRange getFirst() {
+    return first;
+  }
+
+  /**
+   * Returns a read-only set of required attendees for this event.
+   */
+  public Set<String> getAttendees() {
+    return attendees;
+  }
+
+  /**
+   * Returns how often this event repeats.
+   */
+  public Recurrence getRecurrence() {
+    return recurrence;
+  }
+
+  /**
+   * Returns the range from the start of the first occurrence to the end of the last one. The end
+   * is {@code Long.MAX_VALUE} if the event repeats forever.
+   */
+  public EpochRange getSpan() {
+    long last = recurrence.lastIndex(first.start());
+    if (last < 0) {
+      return EpochRange.fromStartEnd(first.start(), first.start());
+    }
+    boolean forever = recurrence.getCount() == Recurrence.NO_COUNT
+        && recurrence.getUntil() == Recurrence.NO_UNTIL;
+    if (forever || last > (Long.MAX_VALUE - first.end()) / recurrence.getPeriod()) {
+      return EpochRange.fromStartEnd(first.start(), Long.MAX_VALUE);
+    }
+    return EpochRange.fromStartEnd(first.start(), first.end() + last * recurrence.getPeriod());
+  }
+
+  /**
+   * Visits every occurrence that overlaps {@code [from, to)} in order of start time, skipping
+   * cancelled ones. Occurrences are computed as they are visited, so occurrences outside the
+   * window are never looked at.
+   */
+  public void forEachOccurrence(long from, long to, IntervalTree.Visitor<? super String> visitor) {
+    IntervalTree.Cursor<String> occurrences = occurrences(from, to);
+    while (occurrences.advance()) {
+      visitor.visit(occurrences.start(), occurrences.end(), title);
+    }
+  }
+
+  /**
+   * Returns a cursor over the occurrences that {@link #forEachOccurrence} visits, in the same
+   * order. Each occurrence is computed when the cursor moves to it.
+   */
+  IntervalTree.Cursor<String> occurrences(final long from, final long to) {
+    final long period = recurrence.getPeriod();
+    final long duration = first.duration();
+    final long last = recurrence.lastIndex(first.start());
+
+    // Jump straight to the first occurrence that ends after the window starts.
+    long firstIndex = 0;
+    if (from - duration >= first.start()) {
+      firstIndex = (from - duration - first.start()) / period + 1;
+    }
+    final long startIndex = firstIndex;
+
+    return new IntervalTree.Cursor<String>() {
+      private long index = startIndex - 1;
+      private long start;
+
+      @Override
+      public boolean advance() {
+        // Empty occurrences never overlap anything, matching IntervalTree.
+        if (duration == 0) {
+          return false;
+        }
+
+        while (index < last) {
+          index++;
+          start = first.start() + index * period;
+          if (start >= to) {
+            index = last;
+            return false;
+          }
+          if (!recurrence.isException(start)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override
+      public long start() {
+        return start;
+      }
+
+      @Override
+      public long end() {
+        return start + duration;
+      }
+
+      @Override
+      public String value() {
+        return title;
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    return title.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof RecurringEvent)) {
+      return false;
+    }
+    RecurringEvent event = (RecurringEvent) other;
+    return title.equals(event.title) && first.equals(event.first)
+        && attendees.equals(event.attendees) && recurrence.equals(event.recurrence);
+  }
+}
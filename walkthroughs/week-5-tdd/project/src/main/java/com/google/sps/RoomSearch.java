@@ -0,0 +1,158 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds meeting times and free rooms together. Rooms are booked by being invited to events, like
+ * any other attendee. Every room's busy time is a {@link MinuteMask} row in one contiguous
+ * {@code long[]} matrix, so a query ORs the attendees' mask into each row in turn and scans the
+ * result, reading the whole matrix front to back once. This is much faster than running
+ * {@link FindMeetingQuery} once per room.
+ */
+public final class RoomSearch {
+  // Scratch masks reused by every query made on the same thread.
+  private static final ThreadLocal<long[][]> SCRATCH = new ThreadLocal<long[][]>() {
+    @Override
+    protected long[][] initialValue() {
+      return new long[][] {MinuteMask.create(), MinuteMask.create(), MinuteMask.create()};
+    }
+  };
+
+  private final String[] rooms;
+  // Row r, holding room r's busy minutes, is words [r * WORDS, (r + 1) * WORDS).
+  private final long[] roomMasks;
+  private final BitmapMeetingQuery attendees;
+
+  /**
+   * Creates a search over a fixed collection of events and rooms.
+   *
+   * @param events The events to find meeting times around, including room bookings. Must be
+   *     non-null.
+   * @param rooms The names of the rooms to search, in the order results should list them. Must be
+   *     non-null.
+   */
+  public RoomSearch(Collection<Event> events, List<String> rooms) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    if (rooms == null) {
+      throw new IllegalArgumentException("rooms cannot be null");
+    }
+
+    this.rooms = rooms.toArray(new String[0]);
+    this.roomMasks = new long[this.rooms.length * MinuteMask.WORDS];
+    this.attendees = new BitmapMeetingQuery(events);
+
+    Map<String, Integer> rows = new HashMap<>();
+    for (int r = 0; r < this.rooms.length; r++) {
+      rows.put(this.rooms[r], r);
+    }
+
+    long[] booking = MinuteMask.create();
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        Integer row = rows.get(attendee);
+        if (row == null) {
+          continue;
+        }
+
+        MinuteMask.clear(booking);
+        MinuteMask.setRange(booking, event.getWhen());
+        int offset = row * MinuteMask.WORDS;
+        for (int i = 0; i < MinuteMask.WORDS; i++) {
+          roomMasks[offset + i] |= booking[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns every pair of a time range and a room where the room is free for the whole range and
+   * the range fits the meeting request, using the same rules for optional attendees as
+   * {@link FindMeetingQuery#query}: they are only considered if that still leaves at least one
+   * pair. Pairs are grouped by room in the order the rooms were given, and each room's ranges are
+   * in order.
+   */
+  public List<RoomSlot> query(MeetingRequest request) {
+    List<RoomSlot> slots = new ArrayList<RoomSlot>();
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return slots;
+    }
+
+    long[][] scratch = SCRATCH.get();
+    long[] mandatory = scratch[0];
+    long[] combined = scratch[1];
+    long[] row = scratch[2];
+
+    // If there are no mandatory attendees, only the optional attendees' calendars matter.
+    if (request.getAttendees().isEmpty()) {
+      attendees.getBusyMask(request.getOptionalAttendees(), combined);
+      addRoomSlots(combined, row, request.getDuration(), slots);
+      return slots;
+    }
+
+    attendees.getBusyMask(request.getAttendees(), mandatory);
+    if (!request.getOptionalAttendees().isEmpty()) {
+      attendees.getBusyMask(request.getOptionalAttendees(), combined);
+      MinuteMask.or(combined, mandatory);
+      addRoomSlots(combined, row, request.getDuration(), slots);
+      if (!slots.isEmpty()) {
+        return slots;
+      }
+    }
+
+    addRoomSlots(mandatory, row, request.getDuration(), slots);
+    return slots;
+  }
+
+  /**
+   * Returns the number of rooms being searched.
+   */
+  public int getRoomCount() {
+    return rooms.length;
+  }
+
+  /**
+   * Adds the free ranges of every room, with {@code busy} also counted as busy, to {@code out}.
+   */
+  private void addRoomSlots(long[] busy, long[] row, long duration, List<RoomSlot> out) {
+    // Nothing can fit if the attendees themselves have no free range long enough.
+    if (!MinuteMask.hasFreeRange(busy, duration)) {
+      return;
+    }
+
+    for (int r = 0, offset = 0; r < rooms.length; r++, offset += MinuteMask.WORDS) {
+      for (int i = 0; i < MinuteMask.WORDS; i++) {
+        row[i] = busy[i] | roomMasks[offset + i];
+      }
+
+      int start = MinuteMask.nextFree(row, 0);
+      while (start < MinuteMask.MINUTES) {
+        int end = MinuteMask.nextBusy(row, start);
+        if (end - start >= duration) {
+          out.add(new RoomSlot(TimeRange.fromStartEnd(start, end, false), rooms[r]));
+        }
+        start = MinuteMask.nextFree(row, end);
+      }
+    }
+  }
+}
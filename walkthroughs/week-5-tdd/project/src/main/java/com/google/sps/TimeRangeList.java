@@ -0,0 +1,380 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A growable list of half-open ranges {@code [start, end)} stored as two parallel {@code int[]}
+ * arrays instead of {@link TimeRange} objects. Sorting, merging, subtracting and finding gaps all
+ * work in place, so once the arrays have grown large enough no operation allocates. Convert to
+ * {@code TimeRange}s with {@link #toTimeRanges} only at the edge of the API.
+ */
+public final class TimeRangeList {
+  private static final int DEFAULT_CAPACITY = 8;
+
+  // Below this many ranges, insertion sort beats quicksort.
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private int[] starts;
+  private int[] ends;
+  private int size = 0;
+
+  // Spare arrays that subtract() writes into before swapping them with starts and ends.
+  private int[] spareStarts;
+  private int[] spareEnds;
+
+  /**
+   * Creates an empty list.
+   */
+  public TimeRangeList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty list with room for {@code capacity} ranges before it needs to grow.
+   */
+  public TimeRangeList(int capacity) {
+    capacity = Math.max(capacity, 1);
+    starts = new int[capacity];
+    ends = new int[capacity];
+  }
+
+  /**
+   * Returns the number of ranges in the list.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns whether the list has no ranges.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the start of the {@code index}th range.
+   */
+  public int start(int index) {
+    checkIndex(index);
+    return starts[index];
+  }
+
+  /**
+   * Returns the exclusive end of the {@code index}th range.
+   */
+  public int end(int index) {
+    checkIndex(index);
+    return ends[index];
+  }
+
+  /**
+   * Removes every range, keeping the arrays for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends the range {@code [start, end)}.
+   */
+  public void add(int start, int end) {
+    if (size == starts.length) {
+      starts = Arrays.copyOf(starts, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    starts[size] = start;
+    ends[size] = end;
+    size++;
+  }
+
+  /**
+   * Appends {@code range}.
+   */
+  public void add(TimeRange range) {
+    add(range.start(), range.end());
+  }
+
+  /**
+   * Appends every range of {@code other}.
+   */
+  public void addAll(TimeRangeList other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.starts[i], other.ends[i]);
+    }
+  }
+
+  /**
+   * Appends {@code [start, end)} to a merged list whose ranges all start at or before
+   * {@code start}, joining it with the last range if they overlap or touch. Empty ranges are
+   * ignored, so the list stays merged.
+   */
+  public void appendMerged(int start, int end) {
+    if (start >= end) {
+      return;
+    }
+
+    if (size > 0 && ends[size - 1] >= start) {
+      ends[size - 1] = Math.max(ends[size - 1], end);
+    } else {
+      add(start, end);
+    }
+  }
+
+  /**
+   * Adds {@code [start, end)} to a merged list, joining it with every range it overlaps or
+   * touches, so the list stays merged. Empty ranges are ignored.
+   */
+  public void insertMerged(int start, int end) {
+    if (start >= end) {
+      return;
+    }
+
+    // Merged ranges have increasing ends as well as starts, so both searches can be binary.
+    int first = firstEndAtOrAfter(start);
+    int last = first;
+    while (last < size && starts[last] <= end) {
+      last++;
+    }
+
+    if (first == last) {
+      // Nothing to join with, so open a gap for the new range.
+      add(0, 0);
+      System.arraycopy(starts, first, starts, first + 1, size - 1 - first);
+      System.arraycopy(ends, first, ends, first + 1, size - 1 - first);
+      starts[first] = start;
+      ends[first] = end;
+      return;
+    }
+
+    // Join ranges [first, last) and the new range into the slot of the first one.
+    starts[first] = Math.min(starts[first], start);
+    ends[first] = Math.max(ends[last - 1], end);
+    System.arraycopy(starts, last, starts, first + 1, size - last);
+    System.arraycopy(ends, last, ends, first + 1, size - last);
+    size -= last - first - 1;
+  }
+
+  /**
+   * Sorts the ranges by start time in ascending order.
+   */
+  public void sort() {
+    quickSort(0, size - 1);
+  }
+
+  /**
+   * Sorts the ranges and joins any that overlap or touch, so that afterwards the ranges are
+   * disjoint, non-adjacent and in order. Empty ranges are dropped.
+   */
+  public void merge() {
+    sort();
+
+    int merged = 0;
+    for (int i = 0; i < size; i++) {
+      if (starts[i] >= ends[i]) {
+        continue;
+      }
+
+      if (merged > 0 && ends[merged - 1] >= starts[i]) {
+        // The range starts before the previous one ends, so extend the previous one.
+        ends[merged - 1] = Math.max(ends[merged - 1], ends[i]);
+      } else {
+        starts[merged] = starts[i];
+        ends[merged] = ends[i];
+        merged++;
+      }
+    }
+    size = merged;
+  }
+
+  /**
+   * Removes the time covered by {@code other} from this list. Both lists must already be merged,
+   * and this list stays merged.
+   */
+  public void subtract(TimeRangeList other) {
+    if (spareStarts == null || spareStarts.length < size + other.size) {
+      spareStarts = new int[starts.length + other.size];
+      spareEnds = new int[starts.length + other.size];
+    }
+
+    int kept = 0;
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      int start = starts[i];
+      int end = ends[i];
+
+      // Skip the ranges of other that end before this range starts.
+      while (j < other.size && other.ends[j] <= start) {
+        j++;
+      }
+
+      // Cut out every range of other that overlaps this one.
+      int k = j;
+      while (k < other.size && other.starts[k] < end) {
+        if (other.starts[k] > start) {
+          spareStarts[kept] = start;
+          spareEnds[kept] = other.starts[k];
+          kept++;
+        }
+        start = Math.max(start, other.ends[k]);
+        k++;
+      }
+
+      if (start < end) {
+        spareStarts[kept] = start;
+        spareEnds[kept] = end;
+        kept++;
+      }
+    }
+
+    int[] swap = starts;
+    starts = spareStarts;
+    spareStarts = swap;
+    swap = ends;
+    ends = spareEnds;
+    spareEnds = swap;
+    size = kept;
+  }
+
+  /**
+   * Appends to {@code out} every gap between the ranges of this list inside {@code [from, to)}
+   * that is at least {@code minDuration} long. This list must already be merged.
+   */
+  public void gaps(int from, int to, long minDuration, TimeRangeList out) {
+    int gapStart = from;
+    for (int i = 0; i < size; i++) {
+      int gapEnd = Math.min(starts[i], to);
+      if (gapEnd > gapStart && gapEnd - gapStart >= minDuration) {
+        out.add(gapStart, gapEnd);
+      }
+      gapStart = Math.max(gapStart, ends[i]);
+    }
+
+    if (to > gapStart && to - gapStart >= minDuration) {
+      out.add(gapStart, to);
+    }
+  }
+
+  /**
+   * Returns the ranges as a new list of {@code TimeRange}s, in their current order.
+   */
+  public List<TimeRange> toTimeRanges() {
+    List<TimeRange> timeRanges = new ArrayList<TimeRange>(size);
+    for (int i = 0; i < size; i++) {
+      timeRanges.add(TimeRange.fromStartEnd(starts[i], ends[i], false));
+    }
+    return timeRanges;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        out.append(", ");
+      }
+      out.append('[').append(starts[i]).append(", ").append(ends[i]).append(')');
+    }
+    return out.append(']').toString();
+  }
+
+  private int firstEndAtOrAfter(int point) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ends[middle] < point) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+  }
+
+  private void quickSort(int low, int high) {
+    while (high - low >= INSERTION_SORT_THRESHOLD) {
+      // Partition around the median of the first, middle and last starts.
+      int middle = (low + high) >>> 1;
+      if (starts[middle] < starts[low]) {
+        swap(middle, low);
+      }
+      if (starts[high] < starts[low]) {
+        swap(high, low);
+      }
+      if (starts[high] < starts[middle]) {
+        swap(high, middle);
+      }
+      int pivot = starts[middle];
+
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (starts[i] < pivot) {
+          i++;
+        }
+        while (starts[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+
+      // Recurse into the smaller half and loop over the larger one to bound the stack depth.
+      if (j - low < high - i) {
+        quickSort(low, j);
+        low = i;
+      } else {
+        quickSort(i, high);
+        high = j;
+      }
+    }
+
+    for (int i = low + 1; i <= high; i++) {
+      int start = starts[i];
+      int end = ends[i];
+      int j = i - 1;
+      while (j >= low && starts[j] > start) {
+        starts[j + 1] = starts[j];
+        ends[j + 1] = ends[j];
+        j--;
+      }
+      starts[j + 1] = start;
+      ends[j + 1] = end;
+    }
+  }
+
+  private void swap(int i, int j) {
+    int start = starts[i];
+    starts[i] = starts[j];
+    starts[j] = start;
+    int end = ends[i];
+    ends[i] = ends[j];
+    ends[j] = end;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * The hours of the day an attendee works, in their own time zone. The calendar's minutes are in a
+ * single reference time zone, so the working hours are shifted by the attendee's offset from it
+ * and may wrap past midnight. The minutes outside working hours are precomputed once, both as a
+ * merged {@link TimeRangeList} and as a {@link MinuteMask}, so that engines can treat them as one
+ * more source of busy time.
+ */
+public final class WorkingHours {
+  private static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  private final int start;
+  private final int end;
+  private final int utcOffset;
+  private final TimeRangeList offHours = new TimeRangeList(2);
+  private final long[] offHoursMask = MinuteMask.create();
+
+  /**
+   * Creates working hours.
+   *
+   * @param start The minute of the local day work starts, from 0 to 1439.
+   * @param end The minute of the local day work ends, exclusive, from 1 to 1440. If it is not after
+   *     {@code start}, work runs past local midnight.
+   * @param utcOffset How many minutes the attendee's time zone is ahead of the calendar's, for
+   *     example 60 for an attendee one hour ahead.
+   */
+  public WorkingHours(int start, int end, int utcOffset) {
+    if (start < 0 || start >= MINUTES_PER_DAY) {
+      throw new IllegalArgumentException("start must be a minute of the day");
+    }
+
+    if (end <= 0 || end > MINUTES_PER_DAY) {
+      throw new IllegalArgumentException("end must be a minute of the day");
+    }
+
+    if (start == end) {
+      throw new IllegalArgumentException("start and end cannot be the same");
+    }
+
+    this.start = start;
+    this.end = end;
+    this.utcOffset = utcOffset;
+
+    // Shift the working hours into the calendar's time zone, splitting them at midnight.
+    int length = Math.floorMod(end - start, MINUTES_PER_DAY);
+    if (length == 0) {
+      length = MINUTES_PER_DAY;
+    }
+    int shiftedStart = Math.floorMod(start - utcOffset, MINUTES_PER_DAY);
+    TimeRangeList working = new TimeRangeList(2);
+    working.add(shiftedStart, Math.min(shiftedStart + length, MINUTES_PER_DAY));
+    if (shiftedStart + length > MINUTES_PER_DAY) {
+      working.add(0, shiftedStart + length - MINUTES_PER_DAY);
+    }
+    working.merge();
+
+    working.gaps(0, MINUTES_PER_DAY, 1, offHours);
+    for (int i = 0; i < offHours.size(); i++) {
+      MinuteMask.setRange(offHoursMask, offHours.start(i), offHours.end(i));
+    }
+  }
+
+  /**
+   * Returns the local minute work starts.
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the local minute work ends, exclusive.
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Returns how many minutes the attendee's time zone is ahead of the calendar's.
+   */
+  public int getUtcOffset() {
+    return utcOffset;
+  }
+
+  /**
+   * Returns whether the attendee is working at {@code minute} of the calendar's day.
+   */
+  public boolean isWorking(int minute) {
+    return MinuteMask.nextFree(offHoursMask, minute) == minute;
+  }
+
+  /**
+   * Returns the minutes of the calendar's day outside working hours, merged. Must not be changed.
+   */
+  TimeRangeList getOffHours() {
+    return offHours;
+  }
+
+  /**
+   * Marks every minute outside working hours as busy in {@code mask}.
+   */
+  void addOffHours(long[] mask) {
+    MinuteMask.or(mask, offHoursMask);
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.BatchMeetingQuery;
+import com.google.sps.EventStore;
+import com.google.sps.MeetingRequest;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers a JSON array of meeting requests in one round trip. The response is an array with one
+ * entry per request, in the same order, holding the available time ranges and how long the request
+ * took to answer.
+ */
+@WebServlet("/batch-query")
+public class BatchQueryServlet extends HttpServlet {
+  // Gson and the query engine are thread-safe, so they are shared by every request.
+  private final Gson gson = new Gson();
+  private final BatchMeetingQuery batchMeetingQuery = new BatchMeetingQuery();
+
+  // Every batch pins one snapshot of the store's index, so it sees one version of the calendar.
+  private EventStore eventStore;
+
+  @Override
+  public void init() {
+    eventStore = EventStoreListener.getEventStore(getServletContext());
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Convert the JSON to a list of MeetingRequests.
+    MeetingRequest[] meetingRequests = gson.fromJson(request.getReader(), MeetingRequest[].class);
+    if (meetingRequests == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of requests.");
+      return;
+    }
+
+    for (int i = 0; i < meetingRequests.length; i++) {
+      if (meetingRequests[i] == null) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Request " + i + " is null.");
+        return;
+      }
+    }
+
+    // Find the possible meeting times for every request.
+    List<BatchMeetingQuery.Result> answers =
+        batchMeetingQuery.query(eventStore.getIndex(), Arrays.asList(meetingRequests));
+
+    // Send the JSON back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(answers));
+  }
+}
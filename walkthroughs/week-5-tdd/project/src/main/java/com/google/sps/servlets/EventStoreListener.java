@@ -0,0 +1,81 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.EventStore;
+import com.google.sps.Events;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Opens the {@link EventStore} shared by every servlet when the app starts and closes it when the
+ * app stops. The store lives in the directory named by the {@code sps.eventStore.dir} system
+ * property, or else by the context parameter of the same name, and the app fails to start if
+ * neither is set. A store with no events is filled with the sample events from {@link Events}.
+ *
+ * <p>The store only survives restarts if its directory is on a persistent disk, and only one
+ * process may have it open. On App Engine the directory is in the instance's memory, so each
+ * instance has its own copy of the sample events that is rebuilt when it starts.
+ */
+@WebListener
+public class EventStoreListener implements ServletContextListener {
+  /** The name of the system property or context parameter that locates the store. */
+  static final String DIRECTORY_PARAMETER = "sps.eventStore.dir";
+
+  private static final String ATTRIBUTE = EventStore.class.getName();
+
+  /**
+   * Returns the store opened for {@code context}.
+   */
+  static EventStore getEventStore(ServletContext context) {
+    return (EventStore) context.getAttribute(ATTRIBUTE);
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent contextEvent) {
+    ServletContext context = contextEvent.getServletContext();
+    String path = System.getProperty(DIRECTORY_PARAMETER,
+        context.getInitParameter(DIRECTORY_PARAMETER));
+    if (path == null || path.isEmpty()) {
+      throw new IllegalStateException(
+          "Set " + DIRECTORY_PARAMETER + " to the directory the event store is kept in");
+    }
+    File directory = new File(path);
+
+    try {
+      EventStore eventStore = new EventStore(directory);
+      if (eventStore.size() == 0) {
+        eventStore.addAll(Arrays.asList(Events.events));
+      }
+      context.setAttribute(ATTRIBUTE, eventStore);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open the event store in " + directory, e);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent contextEvent) {
+    EventStore eventStore = getEventStore(contextEvent.getServletContext());
+    if (eventStore != null) {
+      eventStore.close();
+    }
+  }
+}
@@ -14,8 +14,7 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
-import com.google.gson.Gson;
+import com.google.sps.EventStore;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -24,13 +23,28 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/get-events")
 public class GetEventsServlet extends HttpServlet {
+  private JsonFeed feed;
+
   @Override
-  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
+  public void init() {
+    // The feed is only serialized again after the store changes.
+    final EventStore eventStore = EventStoreListener.getEventStore(getServletContext());
+    feed = new JsonFeed(new JsonFeed.Source() {
+      @Override
+      public long version() {
+        return eventStore.getVersion();
+      }
+
+      @Override
+      public Object data() {
+        return eventStore.getEvents();
+      }
+    });
+  }
 
-    // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Send the JSON back as the response, or a 304 if the client already has it.
+    feed.write(request, response);
   }
 }
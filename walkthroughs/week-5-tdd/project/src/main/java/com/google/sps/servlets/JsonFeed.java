@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A JSON response that is serialized once into UTF-8 bytes, plus a gzipped copy, and then written
+ * straight to every response. Each copy carries a strong ETag derived from its content, so clients
+ * that send a matching {@code If-None-Match} get a 304 Not Modified. The bytes are rebuilt on the
+ * first read after the source's version changes.
+ */
+final class JsonFeed {
+  /**
+   * Where the feed's data comes from.
+   */
+  interface Source {
+    /** Returns a number that changes whenever the data changes. */
+    long version();
+
+    /** Returns the object to serialize. */
+    Object data();
+  }
+
+  private static final Gson GSON = new Gson();
+
+  private final Source source;
+  private volatile Snapshot snapshot;
+
+  JsonFeed(Source source) {
+    this.source = source;
+  }
+
+  /**
+   * Writes the feed to {@code response}, or a 304 if the client already has the current copy.
+   */
+  void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Snapshot current = getSnapshot();
+    boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+    String etag = gzip ? current.gzipEtag : current.etag;
+
+    response.setHeader("ETag", etag);
+    response.setHeader("Vary", "Accept-Encoding");
+    response.setHeader("Cache-Control", "no-cache");
+
+    // Only the copy being sent counts, since a client holding the other encoding can't use it.
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    byte[] body = gzip ? current.gzipBytes : current.bytes;
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentType("application/json; charset=UTF-8");
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  private Snapshot getSnapshot() throws IOException {
+    // Read the version before the data, so that a change made while serializing makes the next
+    // read rebuild the bytes again.
+    long version = source.version();
+    Snapshot current = snapshot;
+    if (current == null || current.version != version) {
+      current = new Snapshot(version, GSON.toJson(source.data()).getBytes(StandardCharsets.UTF_8));
+      snapshot = current;
+    }
+    return current;
+  }
+
+  /**
+   * Returns whether an {@code Accept-Encoding} header allows gzip.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+        continue;
+      }
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].replace(" ", "");
+        if (parameter.equals("q=0") || parameter.startsWith("q=0.") 
+            && parameter.substring(4).replace("0", "").isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether an {@code If-None-Match} header matches {@code etag}. Following the weak
+   * comparison that RFC 7232 requires for this header, a {@code W/} prefix is ignored.
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Snapshot {
+    final long version;
+    final byte[] bytes;
+    final byte[] gzipBytes;
+    final String etag;
+    final String gzipEtag;
+
+    Snapshot(long version, byte[] bytes) throws IOException {
+      this.version = version;
+      this.bytes = bytes;
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(bytes);
+      }
+      this.gzipBytes = compressed.toByteArray();
+
+      // A strong ETag has to differ between encodings, so the gzipped copy gets its own.
+      String hash = hash(bytes);
+      this.etag = "\"" + hash + "\"";
+      this.gzipEtag = "\"" + hash + "-gzip\"";
+    }
+
+    private static String hash(byte[] bytes) {
+      try {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+          hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform is required to support SHA-256.
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -14,14 +14,26 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.BitmapMeetingQuery;
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.EventStore;
 import com.google.sps.FindMeetingQuery;
+import com.google.sps.Histogram;
+import com.google.sps.MeetingQueryCache;
 import com.google.sps.MeetingRequest;
-import com.google.sps.TimeRange;
+import com.google.sps.QueryProfile;
+import com.google.sps.QueryTrace;
+import com.google.sps.WorkingHours;
 import com.google.gson.Gson;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -29,23 +41,189 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
+  // The most answers to keep in the result cache.
+  private static final int CACHE_CAPACITY = 10000;
+
+  // Gson and the query engines are thread-safe, so they are shared by every request.
+  private final Gson gson = new Gson();
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+  // Queries read the store's latest index snapshot without locking, and the cache checks each
+  // snapshot's versions.
+  private EventStore eventStore;
+  private final MeetingQueryCache meetingQueryCache = new MeetingQueryCache(CACHE_CAPACITY);
+
+  // The bitmap engine over the latest snapshot a query has pinned. It builds each attendee's mask
+  // the first time it is asked for them, so replacing it for a new snapshot is cheap.
+  private volatile BitmapMeetingQuery bitmapMeetingQuery;
+
+  // The phase timings of every query that asked to be explained, kept apart for each engine since
+  // they spend their time in different phases.
+  private final QueryProfile queryProfile = new QueryProfile();
+  private final QueryProfile listQueryProfile = new QueryProfile();
+
   @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
+  public void init() {
+    eventStore = EventStoreListener.getEventStore(getServletContext());
+  }
+
+  /**
+   * Returns the result cache's statistics and the histograms of explained queries as JSON. The
+   * queries explained with {@code engine=list} are under {@code listProfile}, and the others are
+   * under {@code profile}.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("hits", meetingQueryCache.getHits());
+    stats.put("misses", meetingQueryCache.getMisses());
+    stats.put("evictions", meetingQueryCache.getEvictions());
+    stats.put("invalidations", meetingQueryCache.getInvalidations());
+    stats.put("size", (long) meetingQueryCache.size());
+
+    stats.put("profile", summarize(queryProfile));
+    stats.put("listProfile", summarize(listQueryProfile));
+
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(stats));
+  }
+
+  /**
+   * Returns the count, median, 99th percentile and maximum of each of {@code profile}'s
+   * histograms.
+   */
+  private static Map<String, Object> summarize(QueryProfile profile) {
+    Map<String, Object> summaries = new LinkedHashMap<>();
+    for (Map.Entry<String, Histogram> entry : profile.getHistograms().entrySet()) {
+      Map<String, Long> summary = new LinkedHashMap<>();
+      summary.put("count", entry.getValue().getCount());
+      summary.put("p50", entry.getValue().getPercentile(50));
+      summary.put("p99", entry.getValue().getPercentile(99));
+      summary.put("max", entry.getValue().getPercentile(100));
+      summaries.put(entry.getKey(), summary);
+    }
+    return summaries;
+  }
 
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
-    // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    // A limit asks for only the earliest few times, which can be found without looking at the
+    // rest of the day.
+    Integer limit = null;
+    String limitParameter = request.getParameter("limit");
+    if (limitParameter != null) {
+      try {
+        limit = Integer.parseInt(limitParameter);
+      } catch (NumberFormatException e) {
+        limit = -1;
+      }
+      if (limit < 0) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                           "limit must be a non-negative integer.");
+        return;
+      }
+    }
+
+    // Only the default engine stops early, and the others would return the whole day instead.
+    if (limit != null && (request.getParameter("mode") != null
+        || request.getParameter("engine") != null)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                         "limit is only supported by the default engine.");
+      return;
+    }
 
-    // Convert the times to JSON
-    String jsonResponse = gson.toJson(answer);
+    // Explaining a query reports where its time went. By default it traces the index, which keeps
+    // busy time sorted and merged, so the filter and sort phases and the events scanned are always
+    // zero. engine=list traces the list engine over the requested attendees' events instead, which
+    // fills in every phase.
+    boolean explain = "true".equals(request.getParameter("explain"));
+    String engine = request.getParameter("engine");
+    boolean explainList = explain && "list".equals(engine);
+    if (explain && (request.getParameter("mode") != null
+        || (engine != null && !explainList) || limit != null)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                         "explain is only supported by the default and list engines.");
+      return;
+    }
+
+    // Find the possible meeting times, using the bitmap engine if the client asked for it. In
+    // the max-optional mode, each time is ranked by how many optional attendees can make it.
+    // Pin one snapshot of the calendar, so the whole query sees the same version of it.
+    EventIndex eventIndex = eventStore.getIndex();
+    Collection<?> answer;
+    QueryTrace trace = null;
+    if (explainList) {
+      // Give the list engine the requested attendees' events from the pinned snapshot, each once,
+      // rather than copying every event in the store under its lock.
+      Set<Event> events = Collections.newSetFromMap(new IdentityHashMap<Event, Boolean>());
+      eventIndex.addEventsWithAttendees(meetingRequest.getAttendees(), events);
+      eventIndex.addEventsWithAttendees(meetingRequest.getOptionalAttendees(), events);
+      trace = new QueryTrace();
+      answer = findMeetingQuery.query(events, meetingRequest, trace);
+      listQueryProfile.record(trace);
+    } else if (explain) {
+      // Skip the cache, so the trace shows the work of actually answering the query.
+      trace = new QueryTrace();
+      answer = findMeetingQuery.query(eventIndex, meetingRequest,
+                                      Collections.<String, WorkingHours>emptyMap(), trace);
+      queryProfile.record(trace);
+    } else if ("max-optional".equals(request.getParameter("mode"))) {
+      answer = findMeetingQuery.queryMaximizingOptional(eventIndex, meetingRequest);
+    } else if ("bitmap".equals(request.getParameter("engine"))) {
+      answer = getBitmapMeetingQuery(eventIndex).query(meetingRequest);
+    } else if (limit != null) {
+      answer = findMeetingQuery.firstN(eventIndex, meetingRequest, limit);
+    } else {
+      answer = meetingQueryCache.query(eventIndex, meetingRequest);
+    }
+
+    // Convert the times to JSON, next to the trace if the client asked for one.
+    String jsonResponse;
+    if (trace != null) {
+      Map<String, Object> explained = new LinkedHashMap<>();
+      explained.put("timeRanges", answer);
+      explained.put("engine", explainList ? "list" : "index");
+      explained.put("explain", explain(trace));
+      jsonResponse = gson.toJson(explained);
+    } else {
+      jsonResponse = gson.toJson(answer);
+    }
 
     // Send the JSON back as the response
     response.setContentType("application/json");
     response.getWriter().println(jsonResponse);
   }
+
+  /**
+   * Returns the timers and counters of {@code trace} in a form that Gson writes as a JSON object.
+   * Phases the traced engine skips are reported as zero.
+   */
+  private static Map<String, Long> explain(QueryTrace trace) {
+    Map<String, Long> explained = new LinkedHashMap<>();
+    for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+      explained.put(phase.name().toLowerCase(Locale.ROOT) + "Nanos", trace.getNanos(phase));
+    }
+    explained.put("totalNanos", trace.getTotalNanos());
+    explained.put("eventsScanned", trace.getEventsScanned());
+    explained.put("rangesMerged", trace.getRangesMerged());
+    explained.put("slotsEmitted", trace.getSlotsEmitted());
+    return explained;
+  }
+
+  /**
+   * Returns a bitmap engine over {@code eventIndex}, a snapshot pinned by the caller. This never
+   * takes the store's lock, so bitmap queries don't wait for writers.
+   */
+  private BitmapMeetingQuery getBitmapMeetingQuery(EventIndex eventIndex) {
+    // Two requests may both replace an engine for an old snapshot, and each uses its own.
+    BitmapMeetingQuery engine = bitmapMeetingQuery;
+    if (engine == null || engine.getIndex() != eventIndex) {
+      engine = new BitmapMeetingQuery(eventIndex);
+      bitmapMeetingQuery = engine;
+    }
+    return engine;
+  }
 }
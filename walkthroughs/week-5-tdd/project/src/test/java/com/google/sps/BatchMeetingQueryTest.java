@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BatchMeetingQueryTest {
+  @Test
+  public void emptyBatch() {
+    List<BatchMeetingQuery.Result> actual = new BatchMeetingQuery()
+        .query(new EventIndex(), Collections.<MeetingRequest>emptyList());
+
+    Assert.assertTrue(actual.isEmpty());
+  }
+
+  @Test
+  public void resultsAreInRequestOrder() {
+    EventIndex index = new EventIndex(Arrays.asList(Events.events));
+
+    // Ask about every person in the sample calendar, with a range of durations, so the batch is
+    // large enough to be split across threads.
+    List<MeetingRequest> requests = new ArrayList<>();
+    for (Event event : Events.events) {
+      for (String person : event.getAttendees()) {
+        requests.add(new MeetingRequest(Arrays.asList(person), 15 * (requests.size() % 8 + 1)));
+      }
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    List<BatchMeetingQuery.Result> actual;
+    try {
+      actual = new BatchMeetingQuery(pool).query(index, requests);
+    } finally {
+      pool.shutdown();
+    }
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    Assert.assertEquals(requests.size(), actual.size());
+    for (int i = 0; i < requests.size(); i++) {
+      Assert.assertEquals(query.query(index, requests.get(i)), actual.get(i).getTimeRanges());
+      Assert.assertTrue(actual.get(i).getElapsedNanos() >= 0);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BitmapMeetingQueryTest {
+  private static final Collection<Event> NO_EVENTS = Collections.emptySet();
+
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Test
+  public void noEvents() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = new BitmapMeetingQuery(NO_EVENTS).query(request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.WHOLE_DAY);
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void everyAttendeeIsConsidered() {
+    // Events  :       |--A--|     |--B--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|     |--2--|     |--3--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = new BitmapMeetingQuery(events).query(request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void matchesFindMeetingQueryOnRandomCalendars() {
+    // Compare against the reference engine on many small random calendars, which exercise word
+    // boundaries in the masks as well as the optional attendee fallback.
+    Random random = new Random(42);
+    List<String> people = Arrays.asList("A", "B", "C", "D", "E", "F");
+
+    for (int trial = 0; trial < 2000; trial++) {
+      List<Event> events = new ArrayList<>();
+      int eventCount = random.nextInt(12);
+      for (int i = 0; i < eventCount; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int end = start + 1 + random.nextInt(TimeRange.WHOLE_DAY.duration() - start);
+        List<String> attendees = new ArrayList<>();
+        for (String person : people) {
+          if (random.nextInt(4) == 0) {
+            attendees.add(person);
+          }
+        }
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false), attendees));
+      }
+
+      List<String> mandatory = new ArrayList<>();
+      List<String> optional = new ArrayList<>();
+      for (String person : people) {
+        int choice = random.nextInt(3);
+        if (choice == 0) {
+          mandatory.add(person);
+        } else if (choice == 1) {
+          optional.add(person);
+        }
+      }
+
+      MeetingRequest request = new MeetingRequest(mandatory, 1 + random.nextInt(240));
+      for (String person : optional) {
+        request.addOptionalAttendee(person);
+      }
+
+      Collection<TimeRange> expected = new FindMeetingQuery().query(events, request);
+      Assert.assertEquals("trial " + trial, expected,
+          new BitmapMeetingQuery(events).query(request));
+      Assert.assertEquals("trial " + trial, expected,
+          new BitmapMeetingQuery(new EventIndex(events).snapshot()).query(request));
+    }
+  }
+
+  @Test
+  public void snapshotEngineIgnoresLaterChanges() {
+    EventIndex index = new EventIndex();
+    index.add(new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_A)));
+    BitmapMeetingQuery engine = new BitmapMeetingQuery(index.snapshot());
+
+    index.add(new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0830AM, TimeRange.END_OF_DAY, true));
+    Assert.assertEquals(expected, engine.query(request));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void writableIndexIsRejected() {
+    new BitmapMeetingQuery(new EventIndex());
+  }
+
+  @Test
+  public void matchesFindMeetingQueryWithWorkingHours() {
+    Random random = new Random(15);
+    List<String> people = Arrays.asList("A", "B", "C", "D");
+
+    for (int trial = 0; trial < 1000; trial++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int end = start + 1 + random.nextInt(TimeRange.WHOLE_DAY.duration() - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people.get(random.nextInt(people.size())))));
+      }
+
+      // Give most people working hours in a random time zone.
+      Map<String, WorkingHours> workingHours = new HashMap<>();
+      for (String person : people) {
+        if (random.nextInt(4) != 0) {
+          int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+          int end = 1 + (start + 60 + random.nextInt(600)) % TimeRange.WHOLE_DAY.duration();
+          workingHours.put(person, new WorkingHours(start, end, 60 * (random.nextInt(27) - 12)));
+        }
+      }
+
+      MeetingRequest request = new MeetingRequest(people.subList(0, random.nextInt(3)),
+          1 + random.nextInt(120));
+      for (String person : people.subList(2, 2 + random.nextInt(3))) {
+        request.addOptionalAttendee(person);
+      }
+
+      Assert.assertEquals("trial " + trial,
+          new FindMeetingQuery().query(new EventIndex(events), request, workingHours),
+          new BitmapMeetingQuery(events, workingHours).query(request));
+    }
+  }
+}
@@ -0,0 +1,199 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventIndexTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Event EVENT_1 = new Event("Event 1",
+      TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+  private static final Event EVENT_2 = new Event("Event 2",
+      TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+      Arrays.asList(PERSON_A, PERSON_B));
+  private static final Event EVENT_3 = new Event("Event 3",
+      TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+
+  @Test
+  public void eventsAreSortedByStart() {
+    EventIndex index = new EventIndex(Arrays.asList(EVENT_1, EVENT_2, EVENT_3));
+
+    Assert.assertEquals(Arrays.asList(EVENT_2, EVENT_3, EVENT_1), index.getEvents(PERSON_A));
+    Assert.assertEquals(Arrays.asList(EVENT_2), index.getEvents(PERSON_B));
+    Assert.assertEquals(Collections.emptyList(), index.getEvents(PERSON_C));
+    Assert.assertEquals(3, index.size());
+  }
+
+  @Test
+  public void removeUpdatesEveryAttendee() {
+    EventIndex index = new EventIndex(Arrays.asList(EVENT_1, EVENT_2, EVENT_3));
+
+    Assert.assertTrue(index.remove(EVENT_2));
+    Assert.assertFalse(index.remove(EVENT_2));
+
+    Assert.assertEquals(Arrays.asList(EVENT_3, EVENT_1), index.getEvents(PERSON_A));
+    Assert.assertEquals(Collections.emptyList(), index.getEvents(PERSON_B));
+    Assert.assertEquals(2, index.size());
+  }
+
+  @Test
+  public void busyTimeIsMergedAcrossAttendees() {
+    Event overlapping = new Event("Overlapping",
+        TimeRange.fromStartDuration(TIME_0800AM + 15, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_B));
+    EventIndex index = new EventIndex(Arrays.asList(EVENT_1, EVENT_2, EVENT_3, overlapping));
+
+    TimeRangeList busyTime = new TimeRangeList();
+    index.getBusyTime(Arrays.asList(PERSON_A, PERSON_B, PERSON_C), busyTime);
+    Assert.assertEquals("[[480, 525), [540, 570), [600, 630)]", busyTime.toString());
+
+    // Removing an event only frees the time no other event covers.
+    index.remove(EVENT_2);
+    index.getBusyTime(Arrays.asList(PERSON_B), busyTime);
+    Assert.assertEquals("[[495, 525)]", busyTime.toString());
+  }
+
+  @Test
+  public void busyTimeMatchesEventsAfterRandomChanges() {
+    Random random = new Random(11);
+    EventIndex index = new EventIndex();
+    List<Event> events = new ArrayList<>();
+    for (int step = 0; step < 2000; step++) {
+      if (!events.isEmpty() && random.nextInt(3) == 0) {
+        index.remove(events.remove(random.nextInt(events.size())));
+      } else {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        Event event = new Event("Event " + step,
+            TimeRange.fromStartDuration(start, random.nextInt(90)),
+            Arrays.asList(random.nextBoolean() ? PERSON_A : PERSON_B));
+        index.add(event);
+        events.add(event);
+      }
+
+      TimeRangeList expected = new TimeRangeList();
+      for (Event event : index.getEvents(PERSON_A)) {
+        expected.add(event.getWhen());
+      }
+      expected.merge();
+      TimeRangeList busyTime = new TimeRangeList();
+      index.getBusyTime(Collections.singleton(PERSON_A), busyTime);
+      Assert.assertEquals("step " + step, expected.toString(), busyTime.toString());
+    }
+  }
+
+  @Test
+  public void addAllMatchesAddingOneAtATime() {
+    Event sameStart = new Event("Same start", 
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+    List<Event> events = Arrays.asList(EVENT_1, EVENT_3, EVENT_2, sameStart);
+    EventIndex oneAtATime = new EventIndex();
+    for (Event event : events) {
+      oneAtATime.add(event);
+    }
+    EventIndex bulk = new EventIndex();
+    bulk.addAll(events);
+
+    Assert.assertEquals(oneAtATime.getEvents(PERSON_A), bulk.getEvents(PERSON_A));
+    Assert.assertEquals(Arrays.asList(EVENT_2, EVENT_3, sameStart, EVENT_1),
+        bulk.getEvents(PERSON_A));
+    TimeRangeList expected = new TimeRangeList();
+    TimeRangeList actual = new TimeRangeList();
+    oneAtATime.getBusyTime(Arrays.asList(PERSON_A, PERSON_B), expected);
+    bulk.getBusyTime(Arrays.asList(PERSON_A, PERSON_B), actual);
+    Assert.assertEquals(expected.toString(), actual.toString());
+    Assert.assertEquals(4, bulk.size());
+  }
+
+  @Test
+  public void addAllInBatchesMatchesAddingOneAtATime() {
+    Event sameStart = new Event("Same start",
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+    EventIndex oneAtATime = new EventIndex();
+    for (Event event : Arrays.asList(EVENT_1, EVENT_3, EVENT_2, sameStart)) {
+      oneAtATime.add(event);
+    }
+
+    // Snapshots between the batches share the calendars the next batch merges into.
+    EventIndex batched = new EventIndex();
+    batched.addAll(Arrays.asList(EVENT_1, EVENT_3));
+    EventIndex snapshot = batched.snapshot();
+    batched.addAll(Arrays.asList(EVENT_2, sameStart));
+
+    Assert.assertEquals(oneAtATime.getEvents(PERSON_A), batched.getEvents(PERSON_A));
+    Assert.assertEquals(oneAtATime.getEvents(PERSON_B), batched.getEvents(PERSON_B));
+    Assert.assertEquals(Arrays.asList(EVENT_3, EVENT_1), snapshot.getEvents(PERSON_A));
+    TimeRangeList expected = new TimeRangeList();
+    TimeRangeList actual = new TimeRangeList();
+    oneAtATime.getBusyTime(Arrays.asList(PERSON_A, PERSON_B), expected);
+    batched.getBusyTime(Arrays.asList(PERSON_A, PERSON_B), actual);
+    Assert.assertEquals(expected.toString(), actual.toString());
+    Assert.assertEquals(4, batched.size());
+  }
+
+  @Test
+  public void snapshotIsNotChangedByLaterChanges() {
+    EventIndex index = new EventIndex(Arrays.asList(EVENT_1, EVENT_2));
+    EventIndex snapshot = index.snapshot();
+
+    index.add(EVENT_3);
+    index.remove(EVENT_2);
+
+    Assert.assertEquals(Arrays.asList(EVENT_2, EVENT_1), snapshot.getEvents(PERSON_A));
+    Assert.assertEquals(Arrays.asList(EVENT_2), snapshot.getEvents(PERSON_B));
+    Assert.assertEquals(2, snapshot.size());
+    Assert.assertEquals(Arrays.asList(EVENT_3, EVENT_1), index.getEvents(PERSON_A));
+
+    TimeRangeList busyTime = new TimeRangeList();
+    snapshot.getBusyTime(Arrays.asList(PERSON_A), busyTime);
+    Assert.assertEquals("[[480, 510), [600, 630)]", busyTime.toString());
+    Assert.assertTrue(snapshot.getVersion() < index.getVersion());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshotIsReadOnly() {
+    new EventIndex(Arrays.asList(EVENT_1)).snapshot().add(EVENT_2);
+  }
+
+  @Test
+  public void queryMatchesQueryOverAllEvents() {
+    Collection<Event> events = Arrays.asList(EVENT_1, EVENT_2, EVENT_3);
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_A);
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    Assert.assertEquals(
+        query.query(events, request), query.query(new EventIndex(events), request));
+  }
+}
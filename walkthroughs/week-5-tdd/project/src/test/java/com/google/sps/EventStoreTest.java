@@ -0,0 +1,233 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventStoreTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  // Small segments, so that a few hundred events fill several of them.
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void reopenReplaysInsertsAndDeletes() throws IOException {
+    File directory = folder.newFolder();
+    Event eventA = event("Event A", 60, PERSON_A);
+    Event eventB = event("Event B", 120, PERSON_A, PERSON_B);
+
+    EventStore store = new EventStore(directory);
+    store.add(eventA);
+    store.add(eventB);
+    store.add(eventA);
+    Assert.assertTrue(store.remove(eventA));
+    Assert.assertFalse(store.remove(event("Missing", 0, PERSON_B)));
+    store.close();
+
+    EventStore reopened = new EventStore(directory);
+    Assert.assertEquals(Arrays.asList(eventA, eventB), reopened.getEvents());
+    Assert.assertEquals(Arrays.asList(eventA, eventB), reopened.getIndex().getEvents(PERSON_A));
+    reopened.close();
+  }
+
+  @Test
+  public void indexIsAPinnedSnapshot() throws IOException {
+    Event eventA = event("Event A", 60, PERSON_A);
+    EventStore store = new EventStore(folder.newFolder());
+    store.add(eventA);
+
+    EventIndex pinned = store.getIndex();
+    store.add(event("Event B", 120, PERSON_A));
+
+    Assert.assertEquals(Arrays.asList(eventA), pinned.getEvents(PERSON_A));
+    Assert.assertEquals(2, store.getIndex().getEvents(PERSON_A).size());
+    store.close();
+  }
+
+  @Test
+  public void stagedEventsArePublishedTogether() throws IOException {
+    File directory = folder.newFolder();
+    Event eventA = event("Event A", 60, PERSON_A);
+    Event eventB = event("Event B", 120, PERSON_A, PERSON_B);
+    EventStore store = new EventStore(directory);
+    store.stage(Arrays.asList(eventB));
+    store.stage(Arrays.asList(eventA));
+
+    Assert.assertEquals(0, store.size());
+    Assert.assertTrue(store.getIndex().getEvents(PERSON_A).isEmpty());
+
+    store.publish();
+    Assert.assertEquals(2, store.size());
+    Assert.assertEquals(Arrays.asList(eventA, eventB), store.getIndex().getEvents(PERSON_A));
+    store.close();
+
+    // Staged events are logged at once, so they are replayed even if never published.
+    store = new EventStore(directory);
+    store.stage(Arrays.asList(eventA));
+    store.close();
+    EventStore reopened = new EventStore(directory);
+    Assert.assertEquals(3, reopened.size());
+    reopened.close();
+  }
+
+  @Test
+  public void removingAStagedEventPublishesTheRest() throws IOException {
+    Event eventA = event("Event A", 60, PERSON_A);
+    Event eventB = event("Event B", 120, PERSON_A);
+    EventStore store = new EventStore(folder.newFolder());
+    store.stage(Arrays.asList(eventA, eventB));
+
+    Assert.assertTrue(store.remove(eventA));
+    Assert.assertEquals(Arrays.asList(eventB), store.getIndex().getEvents(PERSON_A));
+    Assert.assertEquals(Arrays.asList(eventB), store.getEvents());
+    store.close();
+  }
+
+  @Test
+  public void snapshotsCompactTheLog() throws IOException {
+    File directory = folder.newFolder();
+    List<Event> expected = new ArrayList<>();
+
+    EventStore store = new EventStore(directory, SEGMENT_SIZE, 2);
+    for (int i = 0; i < 500; i++) {
+      Event event = event("Event " + i, i, PERSON_A);
+      store.add(event);
+      expected.add(event);
+      if (i % 3 == 0) {
+        store.remove(event);
+        expected.remove(event);
+      }
+    }
+    store.close();
+
+    // 500 inserts would fill far more segments than are left once the log is compacted.
+    Assert.assertTrue(directory.list().length <= 4);
+
+    EventStore reopened = new EventStore(directory, SEGMENT_SIZE, 2);
+    Assert.assertEquals(expected, reopened.getEvents());
+    reopened.close();
+  }
+
+  @Test
+  public void partlyWrittenRecordIsIgnored() throws IOException {
+    File directory = folder.newFolder();
+    Event eventA = event("Event A", 60, PERSON_A);
+    Event eventB = event("Event B", 120, PERSON_B);
+
+    EventStore store = new EventStore(directory, SEGMENT_SIZE, 2);
+    store.add(eventA);
+    store.add(eventB);
+    store.close();
+
+    // Corrupt the last byte of the second record, as if the write had been cut short.
+    File segment = null;
+    for (File file : directory.listFiles()) {
+      if (file.getName().startsWith("segment-")) {
+        segment = file;
+      }
+    }
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      int offset = 0;
+      for (int record = 0; record < 2; record++) {
+        file.seek(offset);
+        offset += 8 + file.readInt();
+      }
+      file.seek(offset - 1);
+      int last = file.read();
+      file.seek(offset - 1);
+      file.write(last ^ 0xFF);
+    }
+
+    EventStore reopened = new EventStore(directory, SEGMENT_SIZE, 2);
+    Assert.assertEquals(Arrays.asList(eventA), reopened.getEvents());
+
+    // New records replace the damaged one.
+    reopened.add(eventB);
+    reopened.close();
+    Assert.assertEquals(Arrays.asList(eventA, eventB),
+        new EventStore(directory, SEGMENT_SIZE, 2).getEvents());
+  }
+
+  @Test
+  public void corruptSnapshotFailsToOpen() throws IOException {
+    File directory = folder.newFolder();
+    EventStore store = new EventStore(directory, SEGMENT_SIZE, 2);
+    store.add(event("Event A", 60, PERSON_A));
+    store.add(event("Event B", 120, PERSON_B));
+    store.snapshot();
+    store.close();
+
+    // Flip a byte of the first record, so that every record after it would be lost.
+    File snapshot = null;
+    for (File file : directory.listFiles()) {
+      if (file.getName().startsWith("snapshot-")) {
+        snapshot = file;
+      }
+    }
+    try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+      file.seek(9);
+      int value = file.read();
+      file.seek(9);
+      file.write(value ^ 0xFF);
+    }
+
+    try {
+      new EventStore(directory, SEGMENT_SIZE, 2);
+      Assert.fail("A corrupt snapshot was replayed");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("corrupt"));
+    }
+  }
+
+  @Test
+  public void directoryCanOnlyBeOpenedOnce() throws IOException {
+    File directory = folder.newFolder();
+    EventStore store = new EventStore(directory);
+    try {
+      new EventStore(directory);
+      Assert.fail("A second store opened the same directory");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("already open"));
+    }
+
+    // Closing the store lets the directory be opened again.
+    store.close();
+    new EventStore(directory).close();
+  }
+
+  private static Event event(String title, int start, String... attendees) {
+    return new Event(title, TimeRange.fromStartDuration(start, DURATION_30_MINUTES),
+        Arrays.asList(attendees));
+  }
+}
@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -80,6 +81,20 @@ public final class FindMeetingQueryTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void namesWithTheSameHashCodeAreToldApart() {
+    // "Aa" and "BB" have the same hash code, so the event's attendee only matches by hash.
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES), Arrays.asList("Aa")));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList("BB"), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.WHOLE_DAY);
+
+    Assert.assertEquals(expected, actual);
+  }
+
   @Test
   public void eventSplitsRestriction() {
     // The event should split the day into two options (before and after the event).
@@ -413,5 +428,383 @@ public final class FindMeetingQueryTest {
 
     Assert.assertEquals(expected, actual);
   }
-}
 
+  @Test
+  public void eventsOutOfOrder() {
+    // Have one person with events that are not sorted by start time. Every event should still be
+    // considered.
+    //
+    // Events  :       |--A--|     |--A--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|     |--2--|     |--3--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void optionalEventOverlappingMandatoryEvent() {
+    // Have an optional attendee whose event starts during a mandatory attendee's event and ends
+    // after it. The optional attendee is still busy once the mandatory event is over.
+    //
+    // Events  :       |--A--|
+    //                    |--B--|
+    // Day     : |---------------------|
+    // Options : |--1--|        |--2--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0830AM, false),
+            TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void lastHourOfTheDay() {
+    // Have one person busy until an hour before the end of the day. The last hour should still be
+    // long enough for a one hour meeting.
+    int lastHour = TimeRange.getTimeInMinutes(23, 0);
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, lastHour, false), Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(lastHour, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void freeMandatoryAttendeeWithUnavailableOptionalAttendee() {
+    // Have a mandatory attendee with no events and an optional attendee who is busy all day. The
+    // mandatory attendee can meet at any time, so the optional attendee is ignored.
+    //
+    // Optional: |-----------B-----------|
+    // Day     : |-----------------------|
+    // Options : |-----------------------|
+
+    Collection<Event> events = Arrays.asList(new Event("Event 1", TimeRange.WHOLE_DAY,
+        Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.WHOLE_DAY);
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void eventsWithoutDurationAreIgnored() {
+    // Have one person with an event that starts and ends at the same time. It doesn't keep them
+    // busy, so it shouldn't split the day.
+    //
+    // Events  :            |
+    // Day     : |-----------------------|
+    // Options : |-----------------------|
+
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0900AM, 0), Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.WHOLE_DAY);
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void emptyGapsAreNotOptions() {
+    // Ask for a meeting without a duration while one person is busy from the start of the day.
+    // The empty gap before their event is not an option.
+    //
+    // Events  : |--A--|
+    // Day     : |-----------------------|
+    // Options :       |-----------------|
+
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+        Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 0);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void windowSpanningSeveralDays() {
+    // Have one person busy for most of the first day and the start of the second. The free time
+    // between their events crosses midnight.
+    //
+    // Day 0   : |--A----------|
+    // Day 1   :                  |--A--|
+    // Options : |             |--1--|  |--2--|
+
+    HorizonIndex index = new HorizonIndex();
+    index.add(new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY,
+        TimeRange.getTimeInMinutes(23, 0), false), Arrays.asList(PERSON_A)), 0);
+    index.add(new Event("Event 2", TimeRange.fromStartDuration(TIME_0800AM, DURATION_1_HOUR),
+        Arrays.asList(PERSON_A)), 1);
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_2_HOUR);
+    EpochRange window = EpochRange.fromStartDuration(0, 2 * EpochRange.MINUTES_PER_DAY);
+
+    Collection<EpochRange> actual = query.query(index, request, window);
+    Collection<EpochRange> expected =
+        Arrays.asList(EpochRange.fromStartEnd(TimeRange.getTimeInMinutes(23, 0),
+                          EpochRange.MINUTES_PER_DAY + TIME_0800AM),
+            EpochRange.fromStartEnd(EpochRange.MINUTES_PER_DAY + TIME_0900AM,
+                2 * EpochRange.MINUTES_PER_DAY));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void recurringEventsBlockEveryDayInTheWindow() {
+    // A daily standup far in the future blocks the same hour on every day of the window, and a
+    // cancelled occurrence leaves its day free.
+    long day = 18000;
+    long cancelled = (day + 1) * EpochRange.MINUTES_PER_DAY + TIME_0900AM;
+    HorizonIndex index = new HorizonIndex();
+    index.add(new RecurringEvent("Standup",
+        EpochRange.fromStartDuration(TIME_0900AM, DURATION_1_HOUR), Arrays.asList(PERSON_A),
+        new Recurrence(Recurrence.Frequency.DAILY, 1, Recurrence.NO_COUNT, Recurrence.NO_UNTIL,
+            Arrays.asList(cancelled))));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR);
+    EpochRange window = EpochRange.fromStartDuration(day * EpochRange.MINUTES_PER_DAY,
+        3 * EpochRange.MINUTES_PER_DAY);
+
+    Collection<EpochRange> actual = query.query(index, request, window);
+    Collection<EpochRange> expected = Arrays.asList(
+        EpochRange.fromStartEnd(window.start(), window.start() + TIME_0900AM),
+        EpochRange.fromStartEnd(window.start() + TIME_1000AM,
+            window.start() + 2 * EpochRange.MINUTES_PER_DAY + TIME_0900AM),
+        EpochRange.fromStartEnd(window.start() + 2 * EpochRange.MINUTES_PER_DAY + TIME_1000AM,
+            window.end()));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void windowMatchesSingleDayQuery() {
+    // Asking about one whole day through the index should match asking about that day directly.
+    Collection<Event> events = Arrays.asList(Events.events);
+    long day = 18000;
+    HorizonIndex index = new HorizonIndex();
+    for (Event event : events) {
+      index.add(event, day);
+    }
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList("Isabella"), DURATION_30_MINUTES);
+    request.addOptionalAttendee("Ava");
+
+    List<EpochRange> expected = new ArrayList<>();
+    for (TimeRange range : query.query(events, request)) {
+      expected.add(EpochRange.onDay(day, range));
+    }
+    Collection<EpochRange> actual = query.query(index, request,
+        EpochRange.onDay(day, TimeRange.WHOLE_DAY));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void maximizeOptionalPicksTheBestSubset() {
+    // No slot fits both optional attendees, but some slots fit B and others fit C. Every slot
+    // that fits one optional attendee should be returned.
+    //
+    // Events  : |--A--|               |--A--|
+    //                   |------B------|     |-B-|
+    //           |--C------------|
+    // Day     : |-------------------------------|
+    // Options :         |-1-|   |--2--|     |-3-|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 4", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 5", TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+
+    Collection<RankedTimeRange> actual =
+        query.queryMaximizingOptional(new EventIndex(events), request);
+    Collection<RankedTimeRange> expected = Arrays.asList(
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_0800AM, TIME_0830AM, false), 1),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false), 1),
+        new RankedTimeRange(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true), 1));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void maximizeOptionalMatchesBruteForce() {
+    // Check every possible meeting start against a direct count of the optional attendees who are
+    // free, on random calendars.
+    Random random = new Random(5);
+    List<String> people = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      people.add("Person " + i);
+    }
+
+    for (int trial = 0; trial < 300; trial++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - 1);
+        int end = start + 1 + random.nextInt(Math.min(180, TimeRange.WHOLE_DAY.duration() - start));
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people.get(random.nextInt(people.size())))));
+      }
+
+      int duration = 1 + random.nextInt(90);
+      MeetingRequest request = new MeetingRequest(people.subList(0, 1), duration);
+      for (String person : people.subList(1, people.size())) {
+        request.addOptionalAttendee(person);
+      }
+
+      Collection<RankedTimeRange> actual =
+          query.queryMaximizingOptional(new EventIndex(events), request);
+      Assert.assertEquals("trial " + trial, bruteForceMaximizeOptional(events, request), actual);
+    }
+  }
+
+  @Test
+  public void firstNStopsAtTheLimit() {
+    // Events  :       |--A--|     |--A--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|     |--2--|     |--3--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    EventIndex index = new EventIndex(events);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, 
+        false)), query.firstN(index, request, 1));
+    Assert.assertEquals(Arrays.asList(), query.firstN(index, request, 0));
+    Assert.assertEquals(query.query(events, request), query.firstN(index, request, 10));
+  }
+
+  @Test
+  public void firstNMatchesPrefixOfQuery() {
+    Random random = new Random(9);
+    List<String> people = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      people.add("Person " + i);
+    }
+
+    for (int trial = 0; trial < 300; trial++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 15; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int end = start + random.nextInt(Math.min(240, TimeRange.WHOLE_DAY.duration() - start + 1));
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people.get(random.nextInt(people.size())))));
+      }
+
+      // Pick a random split of mandatory and optional attendees, either of which may be empty.
+      MeetingRequest request = new MeetingRequest(
+          people.subList(0, random.nextInt(3)), 1 + random.nextInt(120));
+      for (String person : people.subList(3, 3 + random.nextInt(4))) {
+        request.addOptionalAttendee(person);
+      }
+
+      List<TimeRange> expected = new ArrayList<>(query.query(events, request));
+      int n = random.nextInt(5);
+      Assert.assertEquals("trial " + trial, expected.subList(0, Math.min(n, expected.size())),
+          query.firstN(new EventIndex(events), request, n));
+    }
+  }
+
+  private static List<RankedTimeRange> bruteForceMaximizeOptional(Collection<Event> events,
+                                                                 MeetingRequest request) {
+    int days = TimeRange.WHOLE_DAY.duration();
+    int duration = (int) request.getDuration();
+    int[] attending = new int[days];
+    int best = -1;
+    for (int start = 0; start + duration <= days; start++) {
+      TimeRange slot = TimeRange.fromStartDuration(start, duration);
+      attending[start] = -1;
+      if (isFree(events, request.getAttendees(), slot)) {
+        attending[start] = 0;
+        for (String person : request.getOptionalAttendees()) {
+          if (isFree(events, Arrays.asList(person), slot)) {
+            attending[start]++;
+          }
+        }
+      }
+      best = Math.max(best, attending[start]);
+    }
+
+    List<RankedTimeRange> expected = new ArrayList<>();
+    int start = 0;
+    while (start + duration <= days) {
+      if (attending[start] != best) {
+        start++;
+        continue;
+      }
+      int end = start;
+      while (end + duration <= days && attending[end] == best) {
+        end++;
+      }
+      expected.add(new RankedTimeRange(
+          TimeRange.fromStartEnd(start, end - 1 + duration, false), best));
+      start = end;
+    }
+    return expected;
+  }
+
+  private static boolean isFree(Collection<Event> events, Collection<String> attendees,
+                                TimeRange slot) {
+    for (Event event : events) {
+      if (event.getWhen().overlaps(slot)
+          && !Collections.disjoint(event.getAttendees(), attendees)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
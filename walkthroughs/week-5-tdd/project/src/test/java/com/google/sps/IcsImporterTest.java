@@ -0,0 +1,414 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class IcsImporterTest {
+  private static final LocalDate DAY = LocalDate.of(2020, 6, 1);
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+  private static final int TIME_0200PM = TimeRange.getTimeInMinutes(14, 0);
+  private static final int TIME_0230PM = TimeRange.getTimeInMinutes(14, 30);
+  private static final int TIME_1100PM = TimeRange.getTimeInMinutes(23, 0);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void importsTheChosenDay() throws IOException {
+    String ics = lines(
+        "BEGIN:VCALENDAR",
+        "VERSION:2.0",
+        "BEGIN:VEVENT",
+        "SUMMARY:Design review\\, part 1",
+        "DTSTART:20200601T090000Z",
+        "DTEND:20200601T100000Z",
+        "ORGANIZER;CN=Ava:mailto:ava@example.com",
+        "ATTENDEE;CN=\"Doe, John\";PARTSTAT=ACCEPTED:mailto:john@exam",
+        " ple.com",
+        "ATTENDEE;PARTSTAT=DECLINED:mailto:zoe@example.com",
+        "BEGIN:VALARM",
+        "SUMMARY:Not the event",
+        "END:VALARM",
+        "END:VEVENT",
+        // In London summer time, so 11:00 to 11:30 UTC.
+        "BEGIN:VEVENT",
+        "SUMMARY:Standup",
+        "DTSTART;TZID=Europe/London:20200601T120000",
+        "DURATION:PT30M",
+        "ATTENDEE:mailto:john@example.com",
+        "END:VEVENT",
+        // Crosses midnight, so only its first hour is on the day.
+        "BEGIN:VEVENT",
+        "SUMMARY:Release",
+        "DTSTART:20200601T230000Z",
+        "DTEND:20200602T020000Z",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        // Free, cancelled and other-day events are skipped.
+        "BEGIN:VEVENT",
+        "SUMMARY:Lunch",
+        "DTSTART:20200601T140000Z",
+        "DTEND:20200601T143000Z",
+        "TRANSP:TRANSPARENT",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Cancelled",
+        "DTSTART:20200601T140000Z",
+        "DTEND:20200601T143000Z",
+        "STATUS:CANCELLED",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Tomorrow",
+        "DTSTART:20200602T090000Z",
+        "DTEND:20200602T100000Z",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Offsite",
+        "DTSTART;VALUE=DATE:20200601",
+        "END:VEVENT",
+        "END:VCALENDAR");
+
+    EventStore store = new EventStore(folder.newFolder());
+    long added = new IcsImporter(store, DAY, ZoneOffset.UTC)
+        .importStream(new ByteArrayInputStream(ics.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(4, added);
+    Assert.assertEquals(Arrays.asList(
+        new Event("Design review, part 1", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList("Ava", "Doe, John")),
+        new Event("Standup", TimeRange.fromStartDuration(TIME_1100AM, 30),
+            Arrays.asList("john@example.com")),
+        new Event("Release", TimeRange.fromStartEnd(TIME_1100PM, TimeRange.END_OF_DAY, true),
+            Arrays.asList("ava@example.com")),
+        new Event("Offsite", TimeRange.WHOLE_DAY, Collections.<String>emptyList())),
+        store.getEvents());
+    store.close();
+  }
+
+  @Test
+  public void dayIsTakenInTheGivenZone() throws IOException {
+    // 9:00 UTC is 14:00 in Karachi, which is five hours ahead all year.
+    String ics = lines(
+        "BEGIN:VEVENT",
+        "SUMMARY:Sync",
+        "DTSTART:20200601T090000Z",
+        "DTEND:20200601T093000Z",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT");
+
+    EventStore store = new EventStore(folder.newFolder());
+    new IcsImporter(store, DAY, ZoneId.of("Asia/Karachi"))
+        .importStream(new ByteArrayInputStream(ics.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(TimeRange.fromStartEnd(TIME_0200PM, TIME_0230PM, false),
+        store.getEvents().get(0).getWhen());
+    store.close();
+  }
+
+  @Test
+  public void malformedEventsAreSkippedAndCounted() throws IOException {
+    String ics = lines(
+        "BEGIN:VEVENT",
+        "SUMMARY:Bad start",
+        "DTSTART:2020-06-01T09:00:00Z",
+        "DTEND:20200601T100000Z",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Bad end",
+        "DTSTART:20200601T090000Z",
+        "DTEND:20201301T100000Z",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Bad duration",
+        "DTSTART:20200601T090000Z",
+        "DURATION:PT1X",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Sync",
+        "DTSTART:20200601T090000Z",
+        "DTEND:20200601T100000Z",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT");
+
+    EventStore store = new EventStore(folder.newFolder());
+    IcsImporter importer = new IcsImporter(store, DAY, ZoneOffset.UTC);
+    long added = importer.importStream(
+        new ByteArrayInputStream(ics.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(1, added);
+    Assert.assertEquals(3, importer.getMalformedEvents());
+    Assert.assertEquals("Sync", store.getEvents().get(0).getTitle());
+    store.close();
+  }
+
+  @Test
+  public void recurringEventsAreExpandedOntoTheDay() throws IOException {
+    // The chosen day, 2020-06-01, is a Monday.
+    String ics = lines(
+        // Moved and cancelled occurrences may come before the events they override.
+        "BEGIN:VEVENT",
+        "UID:standup",
+        "RECURRENCE-ID:20200601T080000Z",
+        "SUMMARY:Standup",
+        "DTSTART:20200601T150000Z",
+        "DURATION:PT15M",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "UID:retro",
+        "RECURRENCE-ID:20200601T130000Z",
+        "STATUS:CANCELLED",
+        "DTSTART:20200601T130000Z",
+        "END:VEVENT",
+        // Started in winter, so 10:00 in London is 10:00 UTC then and 09:00 UTC on the day.
+        "BEGIN:VEVENT",
+        "SUMMARY:One on one",
+        "DTSTART;TZID=Europe/London:20200106T100000",
+        "DURATION:PT30M",
+        "RRULE:FREQ=WEEKLY",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "UID:standup",
+        "SUMMARY:Standup",
+        "DTSTART:20200501T080000Z",
+        "DURATION:PT15M",
+        "RRULE:FREQ=DAILY",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "UID:retro",
+        "SUMMARY:Retro",
+        "DTSTART:20200504T130000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=WEEKLY;BYDAY=MO",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        // Every other week on Mondays and Wednesdays, from the week before.
+        "BEGIN:VEVENT",
+        "SUMMARY:Planning",
+        "DTSTART:20200520T110000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        // Not in a week of the interval.
+        "BEGIN:VEVENT",
+        "SUMMARY:Off week",
+        "DTSTART:20200513T110000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        // Wednesday, Friday, then Monday is the third of four occurrences.
+        "BEGIN:VEVENT",
+        "SUMMARY:Training",
+        "DTSTART:20200527T140000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=WEEKLY;BYDAY=MO,WE,FR;COUNT=4",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        // Over by the day.
+        "BEGIN:VEVENT",
+        "SUMMARY:Short course",
+        "DTSTART:20200527T160000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=WEEKLY;BYDAY=MO,WE,FR;COUNT=2",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Ended",
+        "DTSTART:20200501T170000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=DAILY;UNTIL=20200531",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Skipped",
+        "DTSTART:20200501T170000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=DAILY",
+        "EXDATE:20200530T170000Z,20200601T170000Z",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        // Monthly rules can't be expanded, so only the first occurrence counts.
+        "BEGIN:VEVENT",
+        "SUMMARY:Monthly",
+        "DTSTART:20200601T180000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=MONTHLY;BYMONTHDAY=1",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Monthly from before",
+        "DTSTART:20200501T190000Z",
+        "DURATION:PT1H",
+        "RRULE:FREQ=MONTHLY",
+        "ATTENDEE:mailto:bob@example.com",
+        "END:VEVENT");
+
+    EventStore store = new EventStore(folder.newFolder());
+    IcsImporter importer = new IcsImporter(store, DAY, ZoneOffset.UTC);
+    importer.importStream(new ByteArrayInputStream(ics.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(Arrays.asList(
+        event("One on one", 9 * 60, 30, "ava@example.com"),
+        event("Planning", 11 * 60, 60, "bob@example.com"),
+        event("Training", 14 * 60, 60, "bob@example.com"),
+        event("Standup", 15 * 60, 15, "ava@example.com"),
+        event("Monthly", 18 * 60, 60, "bob@example.com")),
+        sortedByStart(store.getEvents()));
+    Assert.assertEquals(2, importer.getUnsupportedRecurrences());
+    Assert.assertEquals(0, importer.getMalformedEvents());
+    store.close();
+  }
+
+  @Test
+  public void windowsZoneNamesAreMapped() throws IOException {
+    String ics = lines(
+        // Pacific daylight time is seven hours behind UTC.
+        "BEGIN:VEVENT",
+        "SUMMARY:Sync",
+        "DTSTART;TZID=Pacific Standard Time:20200601T090000",
+        "DTEND;TZID=Pacific Standard Time:20200601T093000",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT",
+        // A zone nobody knows would only be guessed at, so the event is skipped.
+        "BEGIN:VEVENT",
+        "SUMMARY:Guess",
+        "DTSTART;TZID=\"(UTC-08:00) Pacific Time (US & Canada)\":20200601T090000",
+        "DURATION:PT30M",
+        "ATTENDEE:mailto:ava@example.com",
+        "END:VEVENT");
+
+    EventStore store = new EventStore(folder.newFolder());
+    IcsImporter importer = new IcsImporter(store, DAY, ZoneOffset.UTC);
+    importer.importStream(new ByteArrayInputStream(ics.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(Arrays.asList(event("Sync", 16 * 60, 30, "ava@example.com")),
+        store.getEvents());
+    Assert.assertEquals(1, importer.getMalformedEvents());
+    store.close();
+  }
+
+  @Test
+  public void parallelImportMatchesStreaming() throws IOException {
+    StringBuilder ics = new StringBuilder("BEGIN:VCALENDAR\r\n");
+    // Cancel every other series' occurrence on the day, from a different chunk than the series.
+    for (int i = 0; i < 2000; i += 200) {
+      ics.append(lines(
+          "BEGIN:VEVENT",
+          "UID:series-" + i,
+          "RECURRENCE-ID:20200601T120000Z",
+          "STATUS:CANCELLED",
+          "DTSTART:20200601T120000Z",
+          "END:VEVENT"));
+    }
+    for (int i = 0; i < 2000; i += 100) {
+      ics.append(lines(
+          "BEGIN:VEVENT",
+          "UID:series-" + i,
+          "SUMMARY:Series " + i,
+          "DTSTART:20200501T120000Z",
+          "DURATION:PT30M",
+          "RRULE:FREQ=DAILY",
+          "ATTENDEE:mailto:person" + (i % 17) + "@example.com",
+          "END:VEVENT"));
+    }
+    for (int i = 0; i < 2000; i++) {
+      int start = (i * 7) % (TimeRange.WHOLE_DAY.duration() - 60);
+      ics.append(lines(
+          "BEGIN:VEVENT",
+          "SUMMARY:Event " + i,
+          String.format("DTSTART:20200601T%02d%02d00Z", start / 60, start % 60),
+          "DURATION:PT" + (1 + i % 60) + "M",
+          "ATTENDEE:mailto:person" + (i % 17) + "@example.com",
+          "END:VEVENT"));
+    }
+    ics.append("END:VCALENDAR\r\n");
+    File file = folder.newFile("export.ics");
+    Files.write(file.toPath(), ics.toString().getBytes(StandardCharsets.UTF_8));
+
+    EventStore streamed = new EventStore(folder.newFolder());
+    new IcsImporter(streamed, DAY, ZoneOffset.UTC).importFile(file, 1);
+
+    // Tiny batches and many threads, so chunks and batches interleave.
+    EventStore parallel = new EventStore(folder.newFolder());
+    long added = new IcsImporter(parallel, DAY, ZoneOffset.UTC, 64).importFile(file, 7);
+
+    Assert.assertEquals(2010, added);
+    Assert.assertEquals(sorted(streamed.getEvents()), sorted(parallel.getEvents()));
+    streamed.close();
+    parallel.close();
+  }
+
+  private static Event event(String title, int start, int duration, String person) {
+    return new Event(title, TimeRange.fromStartDuration(start, duration), Arrays.asList(person));
+  }
+
+  private static List<Event> sortedByStart(List<Event> events) {
+    List<Event> sorted = new ArrayList<>(events);
+    Collections.sort(sorted, new Comparator<Event>() {
+      @Override
+      public int compare(Event a, Event b) {
+        return Integer.compare(a.getWhen().start(), b.getWhen().start());
+      }
+    });
+    return sorted;
+  }
+
+  private static List<Event> sorted(List<Event> events) {
+    List<Event> sorted = new ArrayList<>(events);
+    Collections.sort(sorted, new Comparator<Event>() {
+      @Override
+      public int compare(Event a, Event b) {
+        return a.getTitle().compareTo(b.getTitle());
+      }
+    });
+    return sorted;
+  }
+
+  private static String lines(String... lines) {
+    StringBuilder out = new StringBuilder();
+    for (String line : lines) {
+      out.append(line).append("\r\n");
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class IntervalTreeTest {
+  @Test
+  public void findsOverlappingIntervalsInStartOrder() {
+    IntervalTree<String> tree = new IntervalTree<>();
+    tree.insert(30, 40, "c");
+    tree.insert(0, 100, "a");
+    tree.insert(10, 20, "b");
+    tree.insert(50, 60, "d");
+
+    Assert.assertEquals("[0,100)a [10,20)b [30,40)c", collect(tree, 15, 50));
+    Assert.assertEquals("[0,100)a [50,60)d", collect(tree, 55, 1000));
+    Assert.assertEquals("", collect(tree, 100, 200));
+  }
+
+  @Test
+  public void cursorMatchesVisitor() {
+    Random random = new Random(11);
+    IntervalTree<String> tree = new IntervalTree<>();
+    for (int i = 0; i < 2000; i++) {
+      long start = random.nextInt(10000);
+      tree.insert(start, start + random.nextInt(300), "e" + i);
+    }
+
+    for (int trial = 0; trial < 200; trial++) {
+      long from = random.nextInt(10000);
+      long to = from + random.nextInt(1000);
+
+      StringBuilder out = new StringBuilder();
+      IntervalTree.Cursor<String> cursor = tree.overlapping(from, to);
+      while (cursor.advance()) {
+        if (out.length() > 0) {
+          out.append(' ');
+        }
+        out.append('[').append(cursor.start()).append(',').append(cursor.end()).append(')')
+            .append(cursor.value());
+      }
+      Assert.assertFalse(cursor.advance());
+      Assert.assertEquals("trial " + trial, collect(tree, from, to), out.toString());
+    }
+  }
+
+  @Test
+  public void removeOnlyRemovesOneMatchingInterval() {
+    IntervalTree<String> tree = new IntervalTree<>();
+    tree.insert(10, 20, "a");
+    tree.insert(10, 20, "b");
+    tree.insert(10, 20, "a");
+
+    Assert.assertTrue(tree.remove(10, 20, "a"));
+    Assert.assertFalse(tree.remove(10, 20, "c"));
+    Assert.assertEquals(2, tree.size());
+    Assert.assertTrue(tree.remove(10, 20, "b"));
+    Assert.assertTrue(tree.remove(10, 20, "a"));
+    Assert.assertFalse(tree.remove(10, 20, "a"));
+    Assert.assertEquals(0, tree.size());
+  }
+
+  @Test
+  public void matchesLinearScanOnRandomIntervals() {
+    Random random = new Random(7);
+    IntervalTree<Integer> tree = new IntervalTree<>();
+    List<long[]> intervals = new ArrayList<>();
+
+    for (int step = 0; step < 5000; step++) {
+      if (!intervals.isEmpty() && random.nextInt(3) == 0) {
+        long[] removed = intervals.remove(random.nextInt(intervals.size()));
+        Assert.assertTrue(tree.remove(removed[0], removed[1], (int) removed[2]));
+      } else {
+        long start = random.nextInt(10000);
+        long end = start + random.nextInt(500);
+        int value = random.nextInt(5);
+        intervals.add(new long[] {start, end, value});
+        tree.insert(start, end, value);
+      }
+
+      long from = random.nextInt(10000);
+      long to = from + random.nextInt(1000);
+      final long[] counts = new long[2];
+      for (long[] interval : intervals) {
+        if (interval[0] < to && interval[1] > from && interval[1] > interval[0]) {
+          counts[0]++;
+        }
+      }
+      tree.forEachOverlapping(from, to, new IntervalTree.Visitor<Integer>() {
+        @Override
+        public void visit(long start, long end, Integer value) {
+          counts[1]++;
+        }
+      });
+
+      Assert.assertEquals(intervals.size(), tree.size());
+      Assert.assertEquals("step " + step, counts[0], counts[1]);
+    }
+  }
+
+  private static String collect(IntervalTree<String> tree, long from, long to) {
+    final StringBuilder out = new StringBuilder();
+    tree.forEachOverlapping(from, to, new IntervalTree.Visitor<String>() {
+      @Override
+      public void visit(long start, long end, String value) {
+        if (out.length() > 0) {
+          out.append(' ');
+        }
+        out.append('[').append(start).append(',').append(end).append(')').append(value);
+      }
+    });
+    return out.toString();
+  }
+}
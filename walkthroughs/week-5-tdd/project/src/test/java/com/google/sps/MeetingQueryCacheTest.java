@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MeetingQueryCacheTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_1_HOUR = 60;
+
+  @Test
+  public void attendeeOrderDoesNotMatter() {
+    MeetingQueryCache cache = new MeetingQueryCache(new EventIndex(), 10);
+
+    cache.query(new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES));
+    cache.query(new MeetingRequest(Arrays.asList(PERSON_B, PERSON_A), DURATION_30_MINUTES));
+    cache.query(new MeetingRequest(Arrays.asList(PERSON_B, PERSON_A), DURATION_1_HOUR));
+
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvicted() {
+    MeetingQueryCache cache = new MeetingQueryCache(new EventIndex(), 2);
+    MeetingRequest requestA = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    MeetingRequest requestB = new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES);
+    MeetingRequest requestC = new MeetingRequest(Arrays.asList(PERSON_C), DURATION_30_MINUTES);
+
+    cache.query(requestA);
+    cache.query(requestB);
+    cache.query(requestA);
+    cache.query(requestC);
+
+    Assert.assertEquals(1, cache.getEvictions());
+    Assert.assertEquals(2, cache.size());
+
+    // B was used least recently, so it's the one that had to be computed again.
+    cache.query(requestA);
+    Assert.assertEquals(2, cache.getHits());
+    cache.query(requestB);
+    Assert.assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void addingAnEventOnlyInvalidatesItsAttendees() {
+    EventIndex index = new EventIndex();
+    MeetingQueryCache cache = new MeetingQueryCache(index, 10);
+    MeetingRequest requestA = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    MeetingRequest requestB = new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES);
+    requestB.addOptionalAttendee(PERSON_C);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), cache.query(requestA));
+    cache.query(requestB);
+
+    index.add(new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_C)));
+
+    // A's calendar didn't change, so its answer is still cached.
+    cache.query(requestA);
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(0, cache.getInvalidations());
+
+    // C is an optional attendee of B's request, so that answer has to be computed again.
+    Collection<TimeRange> actual = cache.query(requestB);
+    Assert.assertEquals(1, cache.getInvalidations());
+    Assert.assertEquals(new FindMeetingQuery().query(index, requestB), actual);
+  }
+}
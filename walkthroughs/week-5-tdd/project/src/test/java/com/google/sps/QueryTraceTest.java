@@ -0,0 +1,117 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class QueryTraceTest {
+  private static final List<String> PEOPLE = Arrays.asList("A", "B", "C", "D", "E");
+
+  @Test
+  public void tracedQueriesReturnTheSameAnswer() {
+    Random random = new Random(17);
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (int trial = 0; trial < 500; trial++) {
+      List<Event> events = randomEvents(random, 10);
+      MeetingRequest request = new MeetingRequest(PEOPLE.subList(0, random.nextInt(3)),
+          1 + random.nextInt(120));
+      for (String person : PEOPLE.subList(3, 3 + random.nextInt(3))) {
+        request.addOptionalAttendee(person);
+      }
+
+      Collection<TimeRange> expected = query.query(events, request);
+      QueryTrace trace = new QueryTrace();
+      Assert.assertEquals(expected, query.query(events, request, trace));
+      Assert.assertEquals(expected.size(), trace.getSlotsEmitted());
+
+      QueryTrace indexTrace = new QueryTrace();
+      Assert.assertEquals(expected, query.query(new EventIndex(events), request,
+          Collections.<String, WorkingHours>emptyMap(), indexTrace));
+      Assert.assertEquals(expected.size(), indexTrace.getSlotsEmitted());
+      Assert.assertEquals(0, indexTrace.getEventsScanned());
+    }
+  }
+
+  @Test
+  public void countersAddUpAcrossPhases() {
+    // Both groups of attendees are filtered from all ten events.
+    List<Event> events = randomEvents(new Random(1), 10);
+    MeetingRequest request = new MeetingRequest(Arrays.asList("A", "B", "C"), 30);
+    request.addOptionalAttendee("D");
+
+    QueryTrace trace = new QueryTrace();
+    new FindMeetingQuery().query(events, request, trace);
+
+    Assert.assertEquals(20, trace.getEventsScanned());
+    Assert.assertTrue(trace.getRangesMerged() > 0);
+
+    long phases = 0;
+    for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+      phases += trace.getNanos(phase);
+    }
+    Assert.assertEquals(phases, trace.getTotalNanos());
+  }
+
+  @Test
+  public void offRecordsNothing() {
+    new FindMeetingQuery().query(randomEvents(new Random(2), 10),
+        new MeetingRequest(Arrays.asList("A"), 30), QueryTrace.OFF);
+
+    Assert.assertEquals(0, QueryTrace.OFF.getTotalNanos());
+    Assert.assertEquals(0, QueryTrace.OFF.getEventsScanned());
+    Assert.assertEquals(0, QueryTrace.OFF.getSlotsEmitted());
+  }
+
+  @Test
+  public void histogramPercentilesAreBucketUpperBounds() {
+    Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.getPercentile(50));
+
+    for (int i = 0; i < 90; i++) {
+      histogram.record(5);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(1000);
+    }
+
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(7, histogram.getPercentile(50));
+    Assert.assertEquals(7, histogram.getPercentile(90));
+    Assert.assertEquals(1023, histogram.getPercentile(99));
+  }
+
+  private static List<Event> randomEvents(Random random, int count) {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+      int end = start + 1 + random.nextInt(TimeRange.WHOLE_DAY.duration() - start);
+      events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+          Arrays.asList(PEOPLE.get(random.nextInt(PEOPLE.size())))));
+    }
+    return events;
+  }
+}
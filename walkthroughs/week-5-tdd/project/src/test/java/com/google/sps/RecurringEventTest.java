@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class RecurringEventTest {
+  private static final long DAY = EpochRange.MINUTES_PER_DAY;
+  private static final long WEEK = 7 * DAY;
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int DURATION_15_MINUTES = 15;
+
+  private static final Collection<String> ATTENDEES = Arrays.asList("Person A");
+
+  @Test
+  public void onlyOccurrencesInsideTheWindowAreVisited() {
+    RecurringEvent standup = new RecurringEvent("Standup",
+        EpochRange.fromStartDuration(TIME_0900AM, DURATION_15_MINUTES), ATTENDEES,
+        new Recurrence(Recurrence.Frequency.DAILY, 1));
+
+    // The window starts partway through the standup on day 1000 and ends before the one on 1003.
+    long from = 1000 * DAY + TIME_0900AM + 5;
+    long to = 1003 * DAY + TIME_0900AM;
+
+    Assert.assertEquals(
+        "[" + (1000 * DAY + TIME_0900AM) + "," + (1000 * DAY + TIME_0900AM + 15) + ") "
+            + "[" + (1001 * DAY + TIME_0900AM) + "," + (1001 * DAY + TIME_0900AM + 15) + ") "
+            + "[" + (1002 * DAY + TIME_0900AM) + "," + (1002 * DAY + TIME_0900AM + 15) + ")",
+        collect(standup, from, to));
+  }
+
+  @Test
+  public void countUntilAndExceptionsEndOrSkipOccurrences() {
+    EpochRange first = EpochRange.fromStartDuration(TIME_1000AM, 30);
+
+    // Every other week, four times, with the second occurrence cancelled.
+    RecurringEvent counted = new RecurringEvent("1:1", first, ATTENDEES,
+        new Recurrence(Recurrence.Frequency.WEEKLY, 2, 4, Recurrence.NO_UNTIL,
+            Collections.singletonList(2 * WEEK + TIME_1000AM)));
+    Assert.assertEquals(3, countOccurrences(counted, 0, 100 * WEEK));
+    Assert.assertEquals(EpochRange.fromStartEnd(TIME_1000AM, 6 * WEEK + TIME_1000AM + 30),
+        counted.getSpan());
+
+    // Daily until the start of day 10, which still has an occurrence at 10:00 on day 9.
+    RecurringEvent until = new RecurringEvent("Daily", first, ATTENDEES,
+        new Recurrence(Recurrence.Frequency.DAILY, 1, Recurrence.NO_COUNT, 10 * DAY,
+            Collections.<Long>emptyList()));
+    Assert.assertEquals(10, countOccurrences(until, 0, 100 * DAY));
+    Assert.assertEquals(Long.MAX_VALUE,
+        new RecurringEvent("Forever", first, ATTENDEES,
+            new Recurrence(Recurrence.Frequency.DAILY, 1)).getSpan().end());
+  }
+
+  @Test
+  public void matchesExpandingEveryOccurrence() {
+    Random random = new Random(16);
+    for (int trial = 0; trial < 1000; trial++) {
+      Recurrence.Frequency frequency = random.nextBoolean()
+          ? Recurrence.Frequency.DAILY : Recurrence.Frequency.WEEKLY;
+      int interval = 1 + random.nextInt(3);
+      int count = 1 + random.nextInt(30);
+      long firstStart = random.nextInt(10 * (int) DAY);
+      long period = interval * (frequency == Recurrence.Frequency.DAILY ? DAY : WEEK);
+      RecurringEvent event = new RecurringEvent("Event",
+          EpochRange.fromStartDuration(firstStart, 1 + random.nextInt(3 * (int) DAY)), ATTENDEES,
+          new Recurrence(frequency, interval, count, Recurrence.NO_UNTIL,
+              Arrays.asList(firstStart + random.nextInt(count) * period)));
+
+      long from = random.nextInt(200 * (int) DAY);
+      long to = from + random.nextInt(30 * (int) DAY);
+
+      // Expand every occurrence and keep the ones that overlap the window.
+      StringBuilder expected = new StringBuilder();
+      EpochRange window = EpochRange.fromStartEnd(from, to);
+      for (int i = 0; i < count; i++) {
+        long start = firstStart + i * period;
+        EpochRange occurrence = EpochRange.fromStartDuration(start, event.getFirst().duration());
+        if (occurrence.overlaps(window) && !event.getRecurrence().isException(start)) {
+          expected.append(expected.length() > 0 ? " " : "")
+              .append('[').append(start).append(',').append(occurrence.end()).append(')');
+        }
+      }
+
+      Assert.assertEquals("trial " + trial, expected.toString(), collect(event, from, to));
+    }
+  }
+
+  @Test
+  public void indexVisitsBusyTimeInStartOrder() {
+    HorizonIndex index = new HorizonIndex();
+    index.add(new RecurringEvent("Standup",
+        EpochRange.fromStartDuration(TIME_0900AM, DURATION_15_MINUTES), Arrays.asList("Person A"),
+        new Recurrence(Recurrence.Frequency.DAILY, 1)));
+    index.add(new RecurringEvent("1:1", EpochRange.fromStartDuration(TIME_0900AM + 5, 30),
+        Arrays.asList("Person B"), new Recurrence(Recurrence.Frequency.DAILY, 2)));
+    index.add("Lunch", EpochRange.fromStartDuration(DAY + TIME_0900AM + 10, 60),
+        Arrays.asList("Person B"));
+    index.add("Review", EpochRange.fromStartDuration(TIME_0900AM - 60, 30),
+        Arrays.asList("Person A"));
+
+    final StringBuilder out = new StringBuilder();
+    index.forEachBusy(Arrays.asList("Person A", "Person B"), EpochRange.fromStartEnd(0, 3 * DAY),
+        new IntervalTree.Visitor<String>() {
+          @Override
+          public void visit(long start, long end, String title) {
+            out.append(out.length() > 0 ? " " : "").append(title).append('@').append(start);
+          }
+        });
+
+    Assert.assertEquals("Review@" + (TIME_0900AM - 60)
+        + " Standup@" + TIME_0900AM
+        + " 1:1@" + (TIME_0900AM + 5)
+        + " Standup@" + (DAY + TIME_0900AM)
+        + " Lunch@" + (DAY + TIME_0900AM + 10)
+        + " Standup@" + (2 * DAY + TIME_0900AM)
+        + " 1:1@" + (2 * DAY + TIME_0900AM + 5), out.toString());
+  }
+
+  private static String collect(RecurringEvent event, long from, long to) {
+    final StringBuilder out = new StringBuilder();
+    event.forEachOccurrence(from, to, new IntervalTree.Visitor<String>() {
+      @Override
+      public void visit(long start, long end, String title) {
+        out.append(out.length() > 0 ? " " : "").append('[').append(start).append(',')
+            .append(end).append(')');
+      }
+    });
+    return out.toString();
+  }
+
+  private static int countOccurrences(RecurringEvent event, long from, long to) {
+    final int[] count = {0};
+    event.forEachOccurrence(from, to, new IntervalTree.Visitor<String>() {
+      @Override
+      public void visit(long start, long end, String title) {
+        count[0]++;
+      }
+    });
+    return count[0];
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class RoomSearchTest {
+  private static final String PERSON_A = "Person A";
+  private static final String ROOM_1 = "Room 1";
+  private static final String ROOM_2 = "Room 2";
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void pairsSlotsWithFreeRooms() {
+    // Person A is busy from 10 to 11, room 1 is booked from 9 to 10, and room 2 is free all day.
+    //
+    // Person A :           |--A--|
+    // Room 1   :     |--1--|
+    // Room 1   : |-1-|           |------1------|
+    // Room 2   : |--2--------|   |------2------|
+    List<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Booking", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList(ROOM_1)));
+
+    RoomSearch search = new RoomSearch(events, Arrays.asList(ROOM_1, ROOM_2));
+    List<RoomSlot> actual = 
+        search.query(new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES));
+    List<RoomSlot> expected = Arrays.asList(
+        new RoomSlot(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false), ROOM_1),
+        new RoomSlot(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true), ROOM_1),
+        new RoomSlot(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1000AM, false), ROOM_2),
+        new RoomSlot(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true), ROOM_2));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void matchesFindMeetingQueryPerRoom() {
+    Random random = new Random(18);
+    List<String> people = Arrays.asList("A", "B", "C", "D", "E");
+    List<String> rooms = Arrays.asList("R0", "R1", "R2", "R3");
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (int trial = 0; trial < 300; trial++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 12; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int end = start + 1 + random.nextInt(TimeRange.WHOLE_DAY.duration() - start);
+        List<String> attendees = random.nextBoolean()
+            ? Arrays.asList(people.get(random.nextInt(people.size())))
+            : Arrays.asList(rooms.get(random.nextInt(rooms.size())));
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false), attendees));
+      }
+
+      MeetingRequest request = new MeetingRequest(people.subList(0, random.nextInt(3)),
+          1 + random.nextInt(240));
+      for (String person : people.subList(3, 3 + random.nextInt(3))) {
+        request.addOptionalAttendee(person);
+      }
+
+      // With the attendees' optional rule applied across all rooms at once, every room gets the
+      // optional attendees' calendars if any room still has a slot with them.
+      List<RoomSlot> expected = new ArrayList<>();
+      List<String> everyone = new ArrayList<>(request.getAttendees());
+      everyone.addAll(request.getOptionalAttendees());
+      if (request.getAttendees().isEmpty() || !request.getOptionalAttendees().isEmpty()) {
+        addPerRoom(query, events, rooms, everyone, request.getDuration(), expected);
+      }
+      if (expected.isEmpty() && !request.getAttendees().isEmpty()) {
+        addPerRoom(query, events, rooms, request.getAttendees(), request.getDuration(),
+            expected);
+      }
+
+      Assert.assertEquals("trial " + trial, expected,
+          new RoomSearch(events, rooms).query(request));
+    }
+  }
+
+  private static void addPerRoom(FindMeetingQuery query, List<Event> events, List<String> rooms,
+                                 Collection<String> attendees, long duration,
+                                 List<RoomSlot> out) {
+    for (String room : rooms) {
+      List<String> withRoom = new ArrayList<>(attendees);
+      withRoom.add(room);
+      for (TimeRange range : query.query(events, new MeetingRequest(withRoom, duration))) {
+        out.add(new RoomSlot(range, room));
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class TimeRangeListTest {
+  @Test
+  public void mergeJoinsOverlappingAndTouchingRanges() {
+    // |--|  |----|
+    //   |--|   |--|   |--|  ||
+    TimeRangeList list = list(60, 70, 0, 10, 20, 40, 5, 20, 30, 45, 80, 80);
+    list.merge();
+
+    Assert.assertEquals("[[0, 45), [60, 70)]", list.toString());
+  }
+
+  @Test
+  public void insertMergedKeepsListMerged() {
+    TimeRangeList list = new TimeRangeList(1);
+    list.insertMerged(100, 200);
+    list.insertMerged(0, 10);
+    list.insertMerged(300, 400);
+    list.insertMerged(50, 50);
+    Assert.assertEquals("[[0, 10), [100, 200), [300, 400)]", list.toString());
+
+    // Joins with the ranges it touches on both sides.
+    list.insertMerged(10, 100);
+    Assert.assertEquals("[[0, 200), [300, 400)]", list.toString());
+
+    list.insertMerged(250, 260);
+    list.insertMerged(150, 350);
+    Assert.assertEquals("[[0, 400)]", list.toString());
+  }
+
+  @Test
+  public void insertMergedMatchesMergeOnRandomRanges() {
+    Random random = new Random(7);
+    for (int trial = 0; trial < 500; trial++) {
+      TimeRangeList inserted = new TimeRangeList(1);
+      TimeRangeList merged = new TimeRangeList();
+      int count = random.nextInt(50);
+      for (int i = 0; i < count; i++) {
+        int start = random.nextInt(MinuteMask.MINUTES);
+        int end = start + random.nextInt(60);
+        inserted.insertMerged(start, end);
+        merged.add(start, end);
+      }
+      merged.merge();
+
+      Assert.assertEquals("trial " + trial, merged.toString(), inserted.toString());
+    }
+  }
+
+  @Test
+  public void subtractSplitsRanges() {
+    TimeRangeList list = list(0, 100, 200, 300);
+    list.subtract(list(10, 20, 90, 210, 250, 260));
+
+    Assert.assertEquals("[[0, 10), [20, 90), [210, 250), [260, 300)]", list.toString());
+  }
+
+  @Test
+  public void gapsRespectBoundsAndDuration() {
+    TimeRangeList list = list(10, 20, 50, 60, 95, 200);
+    TimeRangeList gaps = new TimeRangeList();
+    list.gaps(0, 100, 15, gaps);
+
+    Assert.assertEquals("[[20, 50), [60, 95)]", gaps.toString());
+  }
+
+  @Test
+  public void toTimeRanges() {
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(0, 10, false), TimeRange.fromStartEnd(20, 30, false)),
+        list(0, 10, 20, 30).toTimeRanges());
+  }
+
+  @Test
+  public void mergeMatchesMinuteMaskOnRandomRanges() {
+    Random random = new Random(3);
+    for (int trial = 0; trial < 500; trial++) {
+      TimeRangeList list = new TimeRangeList();
+      long[] mask = MinuteMask.create();
+      int count = random.nextInt(100);
+      for (int i = 0; i < count; i++) {
+        int start = random.nextInt(MinuteMask.MINUTES);
+        int end = start + random.nextInt(MinuteMask.MINUTES - start + 1);
+        list.add(start, end);
+        MinuteMask.setRange(mask, start, end);
+      }
+      list.merge();
+
+      TimeRangeList expected = new TimeRangeList();
+      for (int start = MinuteMask.nextBusy(mask, 0); start < MinuteMask.MINUTES;
+          start = MinuteMask.nextBusy(mask, MinuteMask.nextFree(mask, start))) {
+        expected.add(start, MinuteMask.nextFree(mask, start));
+      }
+      Assert.assertEquals("trial " + trial, expected.toString(), list.toString());
+    }
+  }
+
+  private static TimeRangeList list(int... bounds) {
+    TimeRangeList list = new TimeRangeList(1);
+    for (int i = 0; i < bounds.length; i += 2) {
+      list.add(bounds[i], bounds[i + 1]);
+    }
+    return list;
+  }
+}
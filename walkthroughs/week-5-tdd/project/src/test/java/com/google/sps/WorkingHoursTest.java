@@ -0,0 +1,83 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class WorkingHoursTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0700AM = TimeRange.getTimeInMinutes(7, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+  private static final int TIME_0500PM = TimeRange.getTimeInMinutes(17, 0);
+  private static final int TIME_1100PM = TimeRange.getTimeInMinutes(23, 0);
+
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void offHoursAreShiftedByTheOffset() {
+    // 9:00 to 17:00 two hours ahead is 7:00 to 15:00 on the calendar.
+    WorkingHours hours = new WorkingHours(TIME_0900AM, TIME_0500PM, 120);
+
+    Assert.assertEquals("[[0, 420), [900, 1440)]", hours.getOffHours().toString());
+    Assert.assertTrue(hours.isWorking(TIME_0700AM));
+    Assert.assertFalse(hours.isWorking(TIME_0700AM - 1));
+  }
+
+  @Test
+  public void workingHoursCanWrapPastMidnight() {
+    // 9:00 to 17:00 ten hours ahead is 23:00 to 7:00 on the calendar.
+    WorkingHours hours = new WorkingHours(TIME_0900AM, TIME_0500PM, 600);
+
+    Assert.assertEquals("[[420, 1380)]", hours.getOffHours().toString());
+    Assert.assertTrue(hours.isWorking(TIME_1100PM));
+    Assert.assertTrue(hours.isWorking(0));
+  }
+
+  @Test
+  public void queryOnlyFindsSharedWorkingHours() {
+    // Person A works 9:00 to 17:00 on the calendar, and Person B works 9:00 to 17:00 six hours
+    // behind, so they only share 15:00 to 17:00.
+    Map<String, WorkingHours> workingHours = new HashMap<>();
+    workingHours.put(PERSON_A, new WorkingHours(TIME_0900AM, TIME_0500PM, 0));
+    workingHours.put(PERSON_B, new WorkingHours(TIME_0900AM, TIME_0500PM, -360));
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_60_MINUTES);
+
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(15, 0), TIME_0500PM, false)),
+        new FindMeetingQuery().query(new EventIndex(), request, workingHours));
+
+    // Without working hours the whole day is free.
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), new FindMeetingQuery().query(
+        new EventIndex(), request, Collections.<String, WorkingHours>emptyMap()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyWorkingHoursAreRejected() {
+    new WorkingHours(TIME_1100AM, TIME_1100AM, 0);
+  }
+}
@@ -0,0 +1,225 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class JsonFeedTest {
+  private static final String JSON = "[\"a\",\"b\"]";
+
+  private JsonFeed feed;
+  private long version;
+
+  @Before
+  public void setUp() {
+    version = 1;
+    feed = new JsonFeed(new JsonFeed.Source() {
+      @Override
+      public long version() {
+        return version;
+      }
+
+      @Override
+      public Object data() {
+        return version == 1 ? Arrays.asList("a", "b") : Arrays.asList("c");
+      }
+    });
+  }
+
+  @Test
+  public void acceptsGzip() {
+    Assert.assertTrue(JsonFeed.acceptsGzip("gzip"));
+    Assert.assertTrue(JsonFeed.acceptsGzip("deflate, GZIP;q=0.5"));
+    Assert.assertTrue(JsonFeed.acceptsGzip("gzip;q=0.01"));
+    Assert.assertFalse(JsonFeed.acceptsGzip(null));
+    Assert.assertFalse(JsonFeed.acceptsGzip(""));
+    Assert.assertFalse(JsonFeed.acceptsGzip("deflate, br"));
+    Assert.assertFalse(JsonFeed.acceptsGzip("gzip;q=0"));
+    Assert.assertFalse(JsonFeed.acceptsGzip("gzip; q=0.000"));
+    Assert.assertFalse(JsonFeed.acceptsGzip("x-gzip"));
+  }
+
+  @Test
+  public void matches() {
+    Assert.assertTrue(JsonFeed.matches("\"abc\"", "\"abc\""));
+    Assert.assertTrue(JsonFeed.matches("\"xyz\", \"abc\"", "\"abc\""));
+    Assert.assertTrue(JsonFeed.matches("W/\"abc\"", "\"abc\""));
+    Assert.assertTrue(JsonFeed.matches("*", "\"abc\""));
+    Assert.assertFalse(JsonFeed.matches("\"abc-gzip\"", "\"abc\""));
+    Assert.assertFalse(JsonFeed.matches("abc", "\"abc\""));
+  }
+
+  @Test
+  public void writesPlainJson() throws IOException {
+    FakeResponse response = write(null, null);
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertNull(response.headers.get("Content-Encoding"));
+    Assert.assertEquals("Accept-Encoding", response.headers.get("Vary"));
+    Assert.assertEquals(JSON, new String(response.body.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void writesGzippedJson() throws IOException {
+    FakeResponse response = write("gzip, deflate", null);
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertEquals("gzip", response.headers.get("Content-Encoding"));
+    Assert.assertEquals(JSON, gunzip(response.body.toByteArray()));
+    Assert.assertNotEquals(write(null, null).headers.get("ETag"), response.headers.get("ETag"));
+  }
+
+  @Test
+  public void matchingEtagIsNotModified() throws IOException {
+    String etag = write(null, null).headers.get("ETag");
+    String gzipEtag = write("gzip", null).headers.get("ETag");
+
+    FakeResponse response = write(null, etag);
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+    Assert.assertEquals(0, response.body.size());
+
+    response = write("gzip", gzipEtag);
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+    Assert.assertEquals(0, response.body.size());
+  }
+
+  @Test
+  public void otherEncodingsEtagIsSentInFull() throws IOException {
+    String etag = write(null, null).headers.get("ETag");
+    String gzipEtag = write("gzip", null).headers.get("ETag");
+
+    // A client that holds the plain copy but now accepts gzip needs the gzipped copy, and the
+    // other way round.
+    FakeResponse response = write("gzip", etag);
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertEquals(JSON, gunzip(response.body.toByteArray()));
+
+    response = write(null, gzipEtag);
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertEquals(JSON, new String(response.body.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void newVersionChangesEtag() throws IOException {
+    String etag = write(null, null).headers.get("ETag");
+
+    version = 2;
+    FakeResponse response = write(null, etag);
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertNotEquals(etag, response.headers.get("ETag"));
+    Assert.assertEquals("[\"c\"]", new String(response.body.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private FakeResponse write(String acceptEncoding, String ifNoneMatch) throws IOException {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Accept-Encoding", acceptEncoding);
+    headers.put("If-None-Match", ifNoneMatch);
+    FakeResponse response = new FakeResponse();
+    feed.write(request(headers), response.proxy());
+    return response;
+  }
+
+  private static String gunzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns a request with the given headers, whose other methods return null.
+   */
+  private static HttpServletRequest request(final Map<String, String> headers) {
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return method.getName().equals("getHeader") ? headers.get(args[0]) : null;
+          }
+        });
+  }
+
+  /**
+   * Records the status, headers and body written to a response.
+   */
+  private static final class FakeResponse implements InvocationHandler {
+    int status = HttpServletResponse.SC_OK;
+    final Map<String, String> headers = new HashMap<>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    HttpServletResponse proxy() {
+      return (HttpServletResponse) Proxy.newProxyInstance(
+          HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+          this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "setStatus":
+          status = (int) args[0];
+          return null;
+        case "setHeader":
+          headers.put((String) args[0], (String) args[1]);
+          return null;
+        case "getOutputStream":
+          return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+              body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+              return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {}
+          };
+        default:
+          return null;
+      }
+    }
+  }
+}